@@ -0,0 +1,302 @@
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark de los dos modos de facetas del indexador (--facets taxonomy y
+ * --facets sortedset) sobre el mismo CSV:
+ *
+ * - Indexación: carga completa (rebuild --force) en cada modo, alternando los
+ * modos en cada ronda para que el calentamiento de la JVM no favorezca a
+ * ninguno. Se informa la mejor ronda (docs/s), la etapa "facetas" de
+ * MetricasIndexacion (facetsConfig.build, donde la taxonomía asigna ordinales
+ * bajo lock) y el tamaño en disco de índices y taxonomías.
+ * - Latencia de facetas: apertura de la vista de LectorFacetas (reader más
+ * taxonomía o estado SortedSet) y, por consulta, búsqueda con FacetsCollector,
+ * conteo y getAllDims, como hace AirbnbSearchApp. Consultas: todo el índice,
+ * los barrios más frecuentes y un rango de precio. Se comprueba además que los
+ * dos modos dan los mismos conteos.
+ *
+ * EJECUCIÓN:
+ * java -cp ".:lucene-10.3.1/modules/*:lucene-10.3.1/modules-thirdparty/*:lib/*"
+ * AirbnbBenchFacetas --input listings.csv --work-dir ./bench_facetas
+ *
+ * ARGUMENTOS CLI:
+ * --input <ruta> : (OBLIGATORIO) CSV (o snapshot) a indexar
+ * --work-dir <carpeta> : (OBLIGATORIO) Carpeta para los índices de cada modo
+ * (work-dir/taxonomy y work-dir/sortedset), que se borran y recrean
+ * --threads <n> : Hilos de trabajo del indexador. Default: el del indexador
+ * --rounds <n> : Cargas por modo. Default: 2
+ * --iterations <n> : Repeticiones medidas de cada consulta. Default: 200
+ */
+public class AirbnbBenchFacetas {
+
+    private static final String[] MODOS = { AirbnbIndexador.FACETAS_TAXONOMIA, AirbnbIndexador.FACETAS_SORTEDSET };
+    private static final int DEFAULT_ROUNDS = 2;
+    private static final int DEFAULT_ITERATIONS = 200;
+    private static final int ITERACIONES_CALENTAMIENTO = 50;
+    private static final int TOP_DIMS = 20;
+    private static final int BARRIOS_CONSULTADOS = 5;
+    private static final double PRECIO_MIN = 50;
+    private static final double PRECIO_MAX = 150;
+
+    public static void main(String[] args) {
+        try {
+            Config config = parseArgs(args);
+            if (config.input == null || config.workDir == null) {
+                System.err.println("Error: --input y --work-dir son obligatorios");
+                System.err.println("Uso: java AirbnbBenchFacetas --input <ruta> --work-dir <carpeta> [--threads <n>]"
+                        + " [--rounds <n>] [--iterations <n>]");
+                System.exit(1);
+            }
+            new AirbnbBenchFacetas().ejecutar(config);
+            System.exit(0);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Configuración CLI
+     */
+    public static class Config {
+        String input;
+        String workDir;
+        int threads; // 0 = el default del indexador
+        int rounds = DEFAULT_ROUNDS;
+        int iterations = DEFAULT_ITERATIONS;
+    }
+
+    private static Config parseArgs(String[] args) {
+        Config config = new Config();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--")) {
+                String value = (i + 1 < args.length && !args[i + 1].startsWith("--"))
+                        ? args[++i]
+                        : "";
+
+                switch (arg) {
+                    case "--input":
+                        config.input = value;
+                        break;
+                    case "--work-dir":
+                        config.workDir = value;
+                        break;
+                    case "--threads":
+                        try {
+                            config.threads = value.isEmpty() ? 0 : Math.max(0, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.threads = 0;
+                        }
+                        break;
+                    case "--rounds":
+                        try {
+                            config.rounds = value.isEmpty() ? DEFAULT_ROUNDS : Math.max(1, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.rounds = DEFAULT_ROUNDS;
+                        }
+                        break;
+                    case "--iterations":
+                        try {
+                            config.iterations = value.isEmpty() ? DEFAULT_ITERATIONS
+                                    : Math.max(1, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.iterations = DEFAULT_ITERATIONS;
+                        }
+                        break;
+                }
+            }
+        }
+        return config;
+    }
+
+    public void ejecutar(Config config) throws Exception {
+        System.out.println("=== Benchmark de facetas: taxonomy vs sortedset ===\n");
+        System.out.println("Input: " + config.input);
+        System.out.println("Rondas de indexación: " + config.rounds + ", iteraciones por consulta: "
+                + config.iterations + "\n");
+
+        // 1) Indexación
+        Map<String, Long> mejorMs = new LinkedHashMap<>();
+        Map<String, String> etapaFacetas = new LinkedHashMap<>();
+        Map<String, String> etapaEscritura = new LinkedHashMap<>();
+        for (int ronda = 1; ronda <= config.rounds; ronda++) {
+            for (String modo : MODOS) {
+                AirbnbIndexador.Config c = new AirbnbIndexador.Config();
+                c.input = config.input;
+                c.indexRoot = raiz(config, modo);
+                c.mode = "rebuild";
+                c.force = true;
+                c.facets = modo;
+                c.progressIntervalS = 0;
+                if (config.threads > 0) {
+                    c.threads = config.threads;
+                }
+                AirbnbIndexador indexador = new AirbnbIndexador(c);
+                long inicio = System.nanoTime();
+                indexador.ejecutar();
+                long ms = (System.nanoTime() - inicio) / 1_000_000;
+                System.out.println("[ronda " + ronda + "] " + modo + ": " + ms + " ms");
+                if (!mejorMs.containsKey(modo) || ms < mejorMs.get(modo)) {
+                    mejorMs.put(modo, ms);
+                    etapaFacetas.put(modo, indexador.metricas().resumen(MetricasIndexacion.Etapa.FACETAS));
+                    etapaEscritura.put(modo, indexador.metricas().resumen(MetricasIndexacion.Etapa.ESCRITURA));
+                }
+            }
+        }
+
+        System.out.println("\n--- Indexación (mejor ronda) ---");
+        for (String modo : MODOS) {
+            long docs;
+            try (LectorFacetas lector = new LectorFacetas(raiz(config, modo));
+                    LectorFacetas.Vista vista = lector.adquirir()) {
+                docs = vista.reader.numDocs();
+            }
+            long ms = Math.max(1, mejorMs.get(modo));
+            System.out.printf("%-10s %8d ms  %10.0f docs/s  %6.1f MB en disco\n", modo, ms, docs * 1000.0 / ms,
+                    tamano(Paths.get(raiz(config, modo))) / (1024.0 * 1024.0));
+            System.out.println("           " + etapaFacetas.get(modo));
+            System.out.println("           " + etapaEscritura.get(modo));
+        }
+
+        // 2) Latencia de facetas
+        System.out.println("\n--- Latencia de facetas (search + conteo + getAllDims(" + TOP_DIMS + ")) ---");
+        Map<String, Map<String, Map<String, Number>>> conteos = new LinkedHashMap<>();
+        for (String modo : MODOS) {
+            try (LectorFacetas lector = new LectorFacetas(raiz(config, modo))) {
+                long inicio = System.nanoTime();
+                LectorFacetas.Vista vista = lector.adquirir();
+                long aperturaNs = System.nanoTime() - inicio;
+                try {
+                    IndexSearcher searcher = new IndexSearcher(vista.reader);
+                    Map<String, Query> consultas = consultas(searcher, vista);
+                    System.out.printf("%s (apertura de la vista: %.1f ms)\n", modo, aperturaNs / 1e6);
+                    for (Map.Entry<String, Query> e : consultas.entrySet()) {
+                        long[] ns = medir(searcher, vista, e.getValue(), config.iterations);
+                        System.out.printf("  %-40s p50 %8.1f us  p99 %8.1f us  media %8.1f us\n", e.getKey(),
+                                percentil(ns, 0.5) / 1e3, percentil(ns, 0.99) / 1e3, media(ns) / 1e3);
+                    }
+                    conteos.put(modo, contar(searcher, vista, new MatchAllDocsQuery()));
+                } finally {
+                    vista.close();
+                }
+            }
+        }
+        boolean iguales = conteos.get(MODOS[0]).equals(conteos.get(MODOS[1]));
+        System.out.println("\nConteos de facetas (todo el índice, todas las etiquetas) idénticos en ambos modos: "
+                + (iguales ? "sí" : "NO"));
+    }
+
+    private static String raiz(Config config, String modo) {
+        return Paths.get(config.workDir, modo).toString();
+    }
+
+    /**
+     * Consultas del benchmark: todo el índice, los barrios más frecuentes y un
+     * rango de precio
+     */
+    private static Map<String, Query> consultas(IndexSearcher searcher, LectorFacetas.Vista vista)
+            throws IOException {
+        Map<String, Query> consultas = new LinkedHashMap<>();
+        consultas.put("*:*", new MatchAllDocsQuery());
+        FacetsCollector fc = searcher.search(new MatchAllDocsQuery(), new FacetsCollectorManager());
+        FacetResult barrios = vista.contar(fc).getTopChildren(BARRIOS_CONSULTADOS, "neighbourhood_cleansed");
+        if (barrios != null) {
+            for (LabelAndValue lv : barrios.labelValues) {
+                consultas.put("neighbourhood_cleansed:" + lv.label,
+                        new TermQuery(new Term("neighbourhood_cleansed", lv.label)));
+            }
+        }
+        consultas.put("price:[" + (int) PRECIO_MIN + " TO " + (int) PRECIO_MAX + "]",
+                DoublePoint.newRangeQuery("price", PRECIO_MIN, PRECIO_MAX));
+        return consultas;
+    }
+
+    /**
+     * Duración (ns) de cada iteración medida, tras el calentamiento
+     */
+    private static long[] medir(IndexSearcher searcher, LectorFacetas.Vista vista, Query query, int iteraciones)
+            throws IOException {
+        for (int i = 0; i < ITERACIONES_CALENTAMIENTO; i++) {
+            ejecutarFacetas(searcher, vista, query);
+        }
+        long[] ns = new long[iteraciones];
+        for (int i = 0; i < iteraciones; i++) {
+            long inicio = System.nanoTime();
+            ejecutarFacetas(searcher, vista, query);
+            ns[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(ns);
+        return ns;
+    }
+
+    private static List<FacetResult> ejecutarFacetas(IndexSearcher searcher, LectorFacetas.Vista vista, Query query)
+            throws IOException {
+        FacetsCollector fc = searcher.search(query, new FacetsCollectorManager());
+        return vista.contar(fc).getAllDims(TOP_DIMS);
+    }
+
+    /**
+     * Conteos completos por dimensión y etiqueta (getAllChildren): con el top-N
+     * de getAllDims, las etiquetas empatadas en el corte pueden ser distintas en
+     * cada modo aunque los conteos coincidan
+     */
+    private static Map<String, Map<String, Number>> contar(IndexSearcher searcher, LectorFacetas.Vista vista,
+            Query query) throws IOException {
+        FacetsCollector fc = searcher.search(query, new FacetsCollectorManager());
+        Facets facets = vista.contar(fc);
+        Map<String, Map<String, Number>> res = new TreeMap<>();
+        for (FacetResult fr : facets.getAllDims(TOP_DIMS)) {
+            Map<String, Number> dim = new TreeMap<>();
+            FacetResult todas = facets.getAllChildren(fr.dim);
+            for (LabelAndValue lv : todas.labelValues) {
+                dim.put(lv.label, lv.value);
+            }
+            res.put(fr.dim, dim);
+        }
+        return res;
+    }
+
+    private static long percentil(long[] ordenados, double p) {
+        int i = (int) Math.ceil(p * ordenados.length) - 1;
+        return ordenados[Math.max(0, Math.min(ordenados.length - 1, i))];
+    }
+
+    private static double media(long[] ns) {
+        long total = 0;
+        for (long n : ns) {
+            total += n;
+        }
+        return (double) total / ns.length;
+    }
+
+    private static long tamano(Path dir) throws IOException {
+        try (Stream<Path> archivos = Files.walk(dir)) {
+            return archivos.filter(Files::isRegularFile).mapToLong(p -> {
+                try {
+                    return Files.size(p);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        }
+    }
+}
@@ -180,13 +180,13 @@ public class AirbnbClasificador {
         System.out.println("Train/Test split: " + (TRAIN_SPLIT * 100) + "% / " + ((1 - TRAIN_SPLIT) * 100) + "%\n");
 
         Path indexPath = Paths.get(indexRoot, AirbnbIndexador.INDEX_PROPERTIES);
-        if (!java.nio.file.Files.exists(indexPath)) {
+        if (!java.nio.file.Files.exists(indexPath)
+                && !java.nio.file.Files.exists(Paths.get(indexRoot, AirbnbIndexador.MANIFIESTO))) {
             throw new IOException("Índice no encontrado: " + indexPath);
         }
 
-        // Abrir índice
-        Directory dir = FSDirectory.open(indexPath);
-        IndexReader reader = DirectoryReader.open(dir);
+        // Abrir índice (con varias ciudades, todos los shards como un MultiReader)
+        IndexReader reader = AirbnbIndexador.abrirIndicePropiedades(indexRoot);
 
         try {
             // Reutilizar analizador y similarity de AirbnbIndexador
@@ -213,7 +213,6 @@ public class AirbnbClasificador {
 
         } finally {
             reader.close();
-            dir.close();
         }
     }
 
@@ -995,7 +994,9 @@ public class AirbnbClasificador {
 
     /**
      * Reconstruye el campo contents desde los campos stored disponibles
-     * (igual que en AirbnbIndexador.crearDocumentoPropiedad)
+     * (igual que en AirbnbIndexador.crearDocumentoPropiedad). El indexador ya no
+     * guarda contents (solo lo indexa), así que es la fuente del texto salvo en
+     * índices antiguos.
      * Usa cache para evitar recomputación
      */
     private String reconstruirContents(Document doc) {
@@ -1037,8 +1038,10 @@ public class AirbnbClasificador {
         if (propertyType != null)
             contents.append(propertyType).append(" ");
 
-        // 6. Amenities (ya están en contents si fueron indexadas, pero no stored)
-        // No podemos recuperarlas si no están stored
+        // 6. Amenities (campo "amenity" stored, un valor por amenidad)
+        for (String amenity : doc.getValues("amenity")) {
+            contents.append(amenity).append(" ");
+        }
 
         // 7. Bathrooms
         String bathrooms = doc.get("bathrooms");
@@ -1396,11 +1399,21 @@ public class AirbnbClasificador {
          * actualCounts);
          */
 
-        // Usar ConfusionMatrixGenerator de Lucene
+        // Usar ConfusionMatrixGenerator de Lucene (evento JFR con la duración de la
+        // evaluación)
+        EventosJfr.ClasificadorEvaluado evento = new EventosJfr.ClasificadorEvaluado();
+        evento.begin();
         ConfusionMatrixGenerator.ConfusionMatrix confusionMatrix;
         try {
             confusionMatrix = ConfusionMatrixGenerator.getConfusionMatrix(testReader, classifier, classField, textField,
                     testReader.numDocs());
+            if (evento.shouldCommit()) {
+                evento.clasificador = classifierName;
+                evento.campoClase = classField;
+                evento.documentos = testReader.numDocs();
+                evento.accuracy = confusionMatrix.getAccuracy();
+                evento.commit();
+            }
         } catch (Exception e) {
             System.err.println("Error generando matriz de confusión para " + classifierName + ": " + e.getMessage());
             e.printStackTrace();
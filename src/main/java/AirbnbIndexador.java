@@ -5,28 +5,52 @@ import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.lucene103.Lucene103Codec;
 import org.apache.lucene.document.*;
 import org.apache.lucene.facet.FacetField;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ObjLongConsumer;
+
+import javax.management.JMException;
 
 /**
  * Indexador Lucene para datos de Airbnb Los Angeles (Jun 2025)
@@ -49,23 +73,123 @@ import java.util.concurrent.atomic.AtomicLong;
  * LUKE:
  * ./lucene-10.3.1/bin/luke.sh "$(pwd)/index_root/index_properties" &
  * ./lucene-10.3.1/bin/luke.sh "$(pwd)/index_root/index_hosts" &
+ * (con varias ciudades: index_root/shards/<ciudad>/index_properties)
  * 
  * ARGUMENTOS CLI:
  * --input <ruta> : (OBLIGATORIO) Ruta al archivo CSV de entrada (ej:
- * example_listings.csv)
+ * example_listings.csv). Puede estar comprimido con gzip (listings.csv.gz) o
+ * zstd (requiere zstd-jni en el classpath); se detecta por su contenido y se
+ * descomprime en un hilo propio mientras se indexa, sin pasar por disco.
+ * También admite un directorio (sus *.csv, *.csv.gz y *.csv.zst, o los de sus
+ * subdirectorios: data/los-angeles/listings.csv.gz) o un glob entre comillas
+ * ("data/listings-*.csv.gz"): cada archivo es una ciudad y se indexa en su
+ * propio shard, index_root/shards/<ciudad>/ (index_properties/ e
+ * index_hosts/), con las taxonomías compartidas en index_root y un
+ * manifest.properties que lista los shards. Las ciudades se cargan en paralelo
+ * repartiéndose --threads, --parse-threads y --ram-buffer-mb; con
+ * --quarantine, cada ciudad escribe su propio archivo (rechazos-<ciudad>.csv).
+ * Un host con listings en varias ciudades aparece en el índice de hosts de
+ * cada una
+ * --concurrent-shards <n> : Con varias ciudades, cuántas se indexan a la vez.
+ * Default: min(ciudades, --threads)
+ * --write-snapshot <ruta> : Además de indexar, guarda las filas ya extraídas
+ * del CSV en un snapshot binario columnar (ver SnapshotColumnar): solo las
+ * columnas que se indexan, con los números ya convertidos y el texto en UTF-8
+ * (con diccionario si se repite). Un snapshot se puede pasar después como
+ * --input (se detecta por su contenido): se mapea en memoria y no se parsea
+ * ningún CSV, así que las recargas para ajustar relevancia o analizadores solo
+ * cuestan lo que cuesta Lucene. Hay que regenerarlo si cambian las columnas que
+ * lee el indexador. No admite --resume ni, al leerlo, --quarantine
  * --index-root <carpeta> : (OBLIGATORIO) Carpeta donde se crearán los índices
  * (index_properties/ e index_hosts/)
  * --mode <modo> : Modo de indexación (build|update|rebuild). Default: build
  * - build: crea nuevos índices (borra existentes si hay)
- * - update: añade documentos a índices existentes (upsert)
+ * - update: añade documentos a índices existentes (upsert). Los listings y
+ * hosts cuyo contenido no ha cambiado (misma huella listing_fingerprint /
+ * host_fingerprint) no se reescriben, y los listings que ya no aparecen en el
+ * CSV se eliminan del índice. Requiere índices creados con esta versión (id
+ * indexado como término); si no, usar rebuild
  * - rebuild: reconstruye completamente los índices (con --force los borra
  * primero)
- * --delimiter <char> : Delimitador CSV. Default: ","
- * --encoding <charset> : Codificación del archivo CSV. Default: "utf-8"
+ * --delimiter <char> : Delimitador CSV (un carácter ASCII). Default: ","
+ * --encoding <charset> : Codificación del archivo CSV (compatible con ASCII).
+ * Default: "utf-8"
  * --id-field <nombre> : Nombre del campo ID en el CSV. Default: "id"
- * --threads <n> : Número de hilos para procesamiento. Default: cores/2
+ * --threads <n> : Número de hilos de trabajo (construcción de documentos +
+ * escritura). Default: cores/2
+ * --parse-threads <n> : Número de hilos lectores. El CSV se divide en bloques
+ * de bytes (resincronizando en inicios de fila reales) que se parsean en
+ * paralelo y alimentan a los workers. Default: cores/4
+ * --ram-buffer-mb <n> : Memoria de indexación de cada IndexWriter antes de
+ * volcar un segmento (flush por RAM). Default: 64
+ * --no-bulk : En build/rebuild, escribir con updateDocument (upsert por id) en
+ * lugar de la carga masiva con addDocuments por lotes. Sirve para comparar el
+ * rendimiento. En ambos casos, como en update, un id repetido en el CSV
+ * conserva la primera fila que llega a un worker (con varios bloques, puede ser
+ * la de cualquiera de ellos) y el resto se cuenta como repetido
+ * --commit-interval-s <n> : Segundos mínimos entre commits durante la carga
+ * (cada commit hace fsync y escribe un segments_N). Los segmentos se vuelcan
+ * por RAM (--ram-buffer-mb) independientemente de los commits. 0 = solo al
+ * final. Default: 60
+ * --merge-profile <perfil> : Política de merges (default|bulk). bulk tolera más
+ * segmentos por nivel y fusiona segmentos mayores, para que la carga haga menos
+ * merges intermedios. Default: bulk en build/rebuild, default en update
+ * --segments-per-tier <n> : Sobrescribe segmentsPerTier del TieredMergePolicy
+ * --max-segment-mb <n> : Sobrescribe el tamaño máximo de segmento fusionado
+ * --force-merge <n> : Al terminar, fusionar cada índice en como máximo n
+ * segmentos (0 = no). Útil para índices de solo lectura. Default: 0
+ * --index-sort <campos> : Ordena físicamente index_properties por los doc
+ * values indicados, separados por comas; '-' delante invierte el orden (ej:
+ * "neighbourhood_cleansed,price" o "-review_scores_rating"). Las búsquedas
+ * ordenadas por un prefijo de este orden terminan en cuanto tienen los primeros
+ * resultados (solo la recogida de resultados: el conteo de facetas del buscador
+ * sigue recorriendo todas las coincidencias, así que crece con ellas). Solo se
+ * fija al crear el índice; update reutiliza el existente
+ * --facets <modo> : Cómo se indexan las facetas (taxonomy|sortedset).
+ * - taxonomy: FacetField con ordinales en taxo_properties/taxo_hosts. Cada
+ * documento pide sus ordinales al DirectoryTaxonomyWriter, que serializa a los
+ * workers, y la búsqueda abre además la taxonomía
+ * - sortedset: SortedSetDocValuesFacetField, las etiquetas en doc values del
+ * propio índice; sin taxonomía ni sincronización entre workers. La búsqueda
+ * cuenta con SortedSetDocValuesFacetCounts (ver LectorFacetas)
+ * Como el orden, solo se fija al crear el índice: update y --resume usan el del
+ * índice existente. Default: taxonomy
+ * --offsets : Indexa description con offsets en los postings
+ * (DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS). El buscador resalta entonces los
+ * resultados con UnifiedHighlighter leyendo las posiciones del índice, sin
+ * volver a analizar cada descripción; el índice crece algo. Como las facetas,
+ * solo se fija al crear el índice: update usa lo que tenga el existente
+ * --stored-fields <modo> : Compresión de los campos stored (speed|compression).
+ * speed usa BEST_SPEED (LZ4); compression usa BEST_COMPRESSION (DEFLATE), que
+ * ocupa bastante menos en description y los demás textos a cambio de leer cada
+ * documento algo más despacio. Se aplica a los segmentos que se escriben o
+ * fusionan en esta carga. Al terminar se informa del tamaño de cada índice
+ * (total y stored) y de la diferencia con el commit anterior. Default: speed
  * --max-errors <n> : Máximo número de errores antes de abortar. Default: 100
  * --log-file <ruta> : Archivo opcional para guardar logs (además de consola)
+ * --progress-interval-s <n> : Cada cuántos segundos se escribe una línea de
+ * progreso con filas/s, docs/s, MB/s y la ocupación de cada etapa (lectura,
+ * parseo, documento, facetas, escritura, commit). 0 = sin progreso. Las mismas
+ * métricas, con histogramas de latencia, se publican por JMX
+ * (AirbnbIndexador:type=Metricas) y se resumen al terminar. Default: 10
+ * --quarantine <ruta> : Archivo de cuarentena: cada fila rechazada se escribe
+ * en cuanto se rechaza, como CSV con la cabecera original precedida de las
+ * columnas _offset (byte de inicio de la fila en el input), _bloque, _fila
+ * (número de fila dentro del bloque), _excepcion y _motivo, seguidas de la
+ * fila cruda tal como estaba en el archivo. Con --resume se añade al existente
+ * (las filas rechazadas tras el último checkpoint pueden aparecer dos veces)
+ * --replay-quarantine <ruta> : Reingresa solo las filas de un archivo de
+ * cuarentena (una vez corregidas) sobre los índices existentes. Equivale a
+ * --input <ruta> --mode update --keep-missing; las columnas _* se ignoran
+ * --keep-missing : En update, no eliminar los listings que faltan en el CSV
+ * (p. ej. si el archivo es un extracto parcial)
+ * --resume : Continúa una carga interrumpida sobre los índices existentes.
+ * Cada commit guarda en sus datos de usuario, por bloque del CSV, el offset
+ * hasta el que todas las filas están indexadas, su número de fila y los
+ * contadores; al reanudar se reutilizan los mismos bloques, las filas ya
+ * indexadas solo se recorren para reconstruir los conjuntos de ids vistos, y
+ * el resto se escribe con upsert (las filas posteriores al checkpoint que
+ * llegaron a escribirse no se duplican). Requiere el mismo --input
  * --dry-run : Simula la indexación sin escribir en los índices
  * --force : Fuerza el borrado completo de índices existentes (solo con --mode
  * rebuild)
@@ -78,7 +202,47 @@ public class AirbnbIndexador {
     private static final String DEFAULT_ENCODING = "utf-8";
     private static final String DEFAULT_ID_FIELD = "id";
     private static final int DEFAULT_MAX_ERRORS = 100;
-    private static final int COMMIT_INTERVAL = 5000;
+    private static final int DEFAULT_COMMIT_INTERVAL_S = 60;
+    private static final int DEFAULT_PROGRESS_INTERVAL_S = 10;
+    private static final double DEFAULT_RAM_BUFFER_MB = 64;
+
+    // Perfil de merges "bulk": más segmentos por nivel antes de fusionar, suelo de
+    // segmento mayor (los flush por RAM ya son grandes) y segmentos fusionados de
+    // hasta 10 GB
+    private static final double BULK_SEGMENTS_PER_TIER = 20;
+    private static final double BULK_FLOOR_SEGMENT_MB = 64;
+    private static final double BULK_MAX_MERGED_SEGMENT_MB = 10 * 1024;
+
+    // Pipeline lector -> workers
+    private static final int TAMANO_LOTE = 256; // filas por lote encolado
+    private static final int LOTES_POR_WORKER = 4; // capacidad de la cola (backpressure)
+    private static final long ESPERA_COLA_MS = 100;
+    private static final int BLOQUES_POR_LECTOR = 4; // bloques CSV por hilo lector (reparto de carga)
+    private static final long TAMANO_MIN_BLOQUE = 8L << 20; // no dividir en bloques menores de 8 MB
+    private static final int SEGMENTOS_HOSTS = 64; // locks independientes del conjunto de host_id
+    private static final int DOCS_POR_ADD = 64; // documentos por addDocuments en modo bulk
+
+    // Huella de contenido de los hosts (doc value host_fingerprint). Incrementar la
+    // versión si cambia cómo se construye el documento de host, para que update
+    // reescriba todos los hosts una vez. Los snapshots de otra versión se siguen
+    // cargando, sin sus huellas (ver abrirSnapshot).
+    public static final String FIELD_HOST_FINGERPRINT = "host_fingerprint";
+    private static final long VERSION_HUELLA_HOST = 2;
+    private static final long HUELLA_DESCONOCIDA = 0;
+
+    // Huella de contenido de los listings (doc value listing_fingerprint), con la
+    // misma convención de versión que la de hosts
+    public static final String FIELD_LISTING_FINGERPRINT = "listing_fingerprint";
+    private static final long VERSION_HUELLA_PROPIEDAD = 3;
+    private static final long HUELLA_AUSENTE = Long.MIN_VALUE; // listing que no está en el índice
+    private static final int TERMINOS_POR_BORRADO = 1024;
+
+    // Claves del checkpoint guardado en los datos de usuario de cada commit
+    private static final String CHECKPOINT_INPUT = "csv.input";
+    private static final String CHECKPOINT_TAMANO = "csv.size";
+    private static final String CHECKPOINT_BLOQUES = "csv.blocks";
+    private static final String CHECKPOINT_PROGRESO = "csv.progress";
+    private static final String CHECKPOINT_COMPLETO = "csv.complete";
 
     // Constantes públicas para nombres de índices (reutilizables en búsquedas)
     public static final String INDEX_PROPERTIES = "index_properties";
@@ -86,33 +250,134 @@ public class AirbnbIndexador {
     public static final String INDEX_TAXO_PROPERTIES = "taxo_properties";
     public static final String INDEX_TAXO_HOSTS = "taxo_hosts";
     public static final String FIELD_CONTENTS = "contents";
+    // Amenidad normalizada (ver normalizarAmenidad): término exacto y doc values
+    // SortedSet multivaluados; la faceta multivaluada es la dimensión "amenity"
+    public static final String FIELD_AMENITY_KEY = "amenity_key";
+
+    // Modos de facetas (--facets). Se distinguen en un índice ya escrito por el
+    // tipo de doc values del campo de facetas (ver modoFacetas)
+    public static final String FACETAS_TAXONOMIA = "taxonomy";
+    public static final String FACETAS_SORTEDSET = "sortedset";
+
+    // Compresión de los campos stored (--stored-fields); cada segmento guarda la
+    // suya, así que se puede cambiar entre cargas
+    public static final String STORED_VELOCIDAD = "speed";
+    public static final String STORED_COMPRESION = "compression";
+    private static final String[] EXTENSIONES_STORED = { "fdt", "fdx", "fdm" };
+
+    // description con offsets en los postings (--offsets): el buscador resalta
+    // con UnifiedHighlighter leyendo las posiciones de los términos del índice
+    public static final String FIELD_DESCRIPTION = "description";
+    private static final FieldType TEXTO_CON_OFFSETS = new FieldType(TextField.TYPE_STORED);
+    static {
+        TEXTO_CON_OFFSETS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TEXTO_CON_OFFSETS.freeze();
+    }
+
+    // Carga multi-ciudad: un shard por archivo bajo index_root/shards, listados en
+    // el manifiesto
+    public static final String DIR_SHARDS = "shards";
+    public static final String MANIFIESTO = "manifest.properties";
+    private static final String MANIFIESTO_SHARDS = "shards";
+    private static final double RAM_BUFFER_MIN_SHARD_MB = 16;
 
     // Configuración de la aplicación
     private final Config config;
 
+    // Shard de una carga multi-ciudad: logger, métricas y taxonomías compartidos.
+    // null en una carga de un solo archivo
+    private final Compartido compartido;
+    private final String nombreShard;
+
     // Writers para los dos índices
     private IndexWriter writerProperties;
     private IndexWriter writerHosts;
     private DirectoryTaxonomyWriter taxoWriterProperties;
     private DirectoryTaxonomyWriter taxoWriterHosts;
+    private TamanoIndice tamanoAntesPropiedades; // último commit antes de esta carga (null si no había)
+    private TamanoIndice tamanoAntesHosts;
     private FacetsConfig facetsConfig;
 
     // Mapeo de columnas del CSV
-    private final Map<String, Integer> headerIndex = new HashMap<>();
+    private CsvSchema esquema;
+    private Columnas columnas;
 
     // Contadores
     private final AtomicInteger totalPropiedades = new AtomicInteger(0);
     private final AtomicInteger totalHosts = new AtomicInteger(0);
     private final AtomicInteger errores = new AtomicInteger(0);
     private final AtomicLong inicioTiempo = new AtomicLong(0);
-
-    // Cache de hosts procesados para evitar duplicados
-    private final Map<String, Document> hostsCache = new HashMap<>();
+    private final AtomicInteger listingsDuplicados = new AtomicInteger(0);
+    private int filasProcesadas;
+    private long tiempoProcesado;
+    private final AtomicLong ultimoCommit = new AtomicLong(0);
+    private final AtomicInteger commitsIntermedios = new AtomicInteger(0);
+    private final Map<String, Long> tiemposFase = new LinkedHashMap<>();
+    private final MetricasIndexacion metricas;
+
+    // Filas rechazadas (--quarantine). null si no se guardan
+    private Cuarentena cuarentena;
+
+    // Snapshot columnar leído como input, o escrito durante la carga
+    // (--write-snapshot). null si no se usa
+    private SnapshotColumnar.Lector snapshotEntrada;
+    // Snapshot escrito con otra versión de las huellas: sus filas se indexan con
+    // HUELLA_DESCONOCIDA y el siguiente update las reescribe una vez
+    private boolean huellasPropiedadObsoletas;
+    private boolean huellasHostObsoletas;
+    private SnapshotColumnar.Escritor snapshotSalida;
+
+    // Checkpoint: avance de cada bloque del CSV y datos fijos de la carga
+    private ProgresoBloque[] progreso;
+    private final Map<String, String> checkpointBase = new HashMap<>();
+
+    // build/rebuild sobre índices recién creados: addDocuments por lotes, sin
+    // borrado por término
+    private boolean bulk;
+
+    // index_properties con IndexSort: sin bloques de addDocuments (los bloques no
+    // se reordenan al ordenar el segmento)
+    private boolean ordenado;
+
+    // --facets sortedset: facetas en doc values, sin taxonomías (taxoWriter* null)
+    private boolean facetasSortedSet;
+
+    // --offsets (o un índice existente que ya los tiene): description con offsets
+    private boolean conOffsets;
+
+    // Amenidades distintas de esta carga (compartido por los workers)
+    private final DiccionarioAmenidades amenidades = new DiccionarioAmenidades();
+
+    // Cache de hosts procesados para evitar duplicados (compartida por los workers)
+    // host_id ya escritos en esta sesión. Los ids numéricos (lo normal) van a un
+    // conjunto de long primitivos; el resto, a un Set<String> de respaldo
+    private final ConcurrentLongHashSet hostsVistos = new ConcurrentLongHashSet(1 << 12, SEGMENTOS_HOSTS);
+    private final Set<String> hostsVistosNoNumericos = ConcurrentHashMap.newKeySet();
+
+    // Modo update: huella (host_fingerprint) de cada host ya indexado, para no
+    // reescribir hosts sin cambios. null en build/rebuild.
+    private LongLongHashMap huellasHosts;
+    private Map<String, Long> huellasHostsNoNumericos;
+    private final AtomicInteger hostsSinCambios = new AtomicInteger(0);
+
+    // id de listing vistos en el CSV (para omitir repetidos y, en update, detectar
+    // los listings eliminados)
+    private final ConcurrentLongHashSet listingsVistos = new ConcurrentLongHashSet(1 << 12, SEGMENTOS_HOSTS);
+    private final Set<String> listingsVistosNoNumericos = ConcurrentHashMap.newKeySet();
+
+    // Modo update: huella (listing_fingerprint) de cada listing ya indexado. null
+    // en build/rebuild.
+    private LongLongHashMap huellasListings;
+    private Map<String, Long> huellasListingsNoNumericos;
+    private final AtomicInteger listingsSinCambios = new AtomicInteger(0);
+    private final AtomicInteger listingsModificados = new AtomicInteger(0);
+    private final AtomicInteger listingsNuevos = new AtomicInteger(0);
+    private int listingsEliminados;
 
     /**
      * Configuración de parámetros CLI
      */
-    public static class Config {
+    public static class Config implements Cloneable {
         String input;
         String indexRoot;
         String mode = DEFAULT_MODE;
@@ -120,14 +385,98 @@ public class AirbnbIndexador {
         String encoding = DEFAULT_ENCODING;
         String idField = DEFAULT_ID_FIELD;
         int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int parseThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
         int maxErrors = DEFAULT_MAX_ERRORS;
+        double ramBufferMb = DEFAULT_RAM_BUFFER_MB;
+        int commitIntervalS = DEFAULT_COMMIT_INTERVAL_S;
+        String mergeProfile; // null = según el modo
+        double segmentsPerTier; // 0 = el del perfil
+        double maxSegmentMb; // 0 = el del perfil
+        int forceMerge;
+        String indexSort;
+        String facets; // null = el del índice existente, o taxonomy
+        String storedFields = STORED_VELOCIDAD;
+        boolean offsets = false; // el índice existente manda en update
+        boolean bulk = true;
         String logFile;
+        int progressIntervalS = DEFAULT_PROGRESS_INTERVAL_S;
+        String quarantineFile;
+        String replayQuarantine;
+        boolean keepMissing = false;
+        boolean resume = false;
         boolean dryRun = false;
         boolean force = false;
+        int concurrentShards; // 0 = según ciudades y hilos
+        String writeSnapshot;
+
+        Config copia() {
+            try {
+                return (Config) clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * Recursos que comparten los shards de una carga multi-ciudad
+     */
+    private static final class Compartido {
+        final Logger logger;
+        final MetricasIndexacion metricas;
+        final DirectoryTaxonomyWriter taxoPropiedades;
+        final DirectoryTaxonomyWriter taxoHosts;
+
+        Compartido(Logger logger, MetricasIndexacion metricas, DirectoryTaxonomyWriter taxoPropiedades,
+                DirectoryTaxonomyWriter taxoHosts) {
+            this.logger = logger;
+            this.metricas = metricas;
+            this.taxoPropiedades = taxoPropiedades;
+            this.taxoHosts = taxoHosts;
+        }
     }
 
     public AirbnbIndexador(Config config) {
+        this(config, null, null);
+    }
+
+    private AirbnbIndexador(Config config, Compartido compartido, String nombreShard) {
         this.config = config;
+        this.compartido = compartido;
+        this.nombreShard = nombreShard;
+        this.metricas = compartido != null ? compartido.metricas : new MetricasIndexacion();
+    }
+
+    /**
+     * Métricas por etapa de esta indexación (las de todas las ciudades en una
+     * carga multi-ciudad)
+     */
+    MetricasIndexacion metricas() {
+        return metricas;
+    }
+
+    /**
+     * Resultado del modo update: hosts y listings omitidos por huella, y
+     * listings reescritos, añadidos y borrados por no estar en el CSV
+     */
+    int hostsSinCambios() {
+        return hostsSinCambios.get();
+    }
+
+    int listingsSinCambios() {
+        return listingsSinCambios.get();
+    }
+
+    int listingsModificados() {
+        return listingsModificados.get();
+    }
+
+    int listingsNuevos() {
+        return listingsNuevos.get();
+    }
+
+    int listingsEliminados() {
+        return listingsEliminados;
     }
 
     public static void main(String[] args) {
@@ -163,32 +512,120 @@ public class AirbnbIndexador {
      * Ejecuta el proceso completo de indexación
      */
     public void ejecutar() throws Exception {
+        if (compartido == null) {
+            List<Path> entradas = expandirEntradas(config.input);
+            if (entradas != null) {
+                ejecutarShards(entradas);
+                return;
+            }
+        }
         inicioTiempo.set(System.currentTimeMillis());
+        EventosJfr.IndexacionEjecutada evento = new EventosJfr.IndexacionEjecutada();
+        evento.begin();
 
-        Logger logger = new Logger(config.logFile);
+        Logger logger = compartido != null ? compartido.logger.conPrefijo("[" + nombreShard + "] ")
+                : new Logger(config.logFile);
         logger.info("=== Iniciando indexación Airbnb ===");
         logger.info("Input: " + config.input);
         logger.info("Index root: " + config.indexRoot);
         logger.info("Mode: " + config.mode);
-        logger.info("Threads: " + config.threads);
+        logger.info("Threads: " + config.threads + " (lectores CSV: " + config.parseThreads + ")");
+        // Al reanudar, las filas posteriores al checkpoint pueden estar ya escritas:
+        // upsert
+        bulk = config.bulk && !"update".equals(config.mode) && !config.resume;
+        logger.info("Escritura: " + (bulk ? "bulk (addDocuments)" : "upsert (updateDocument)") + ", RAM buffer: "
+                + config.ramBufferMb + " MB");
+
+        if (compartido == null) {
+            iniciarMetricas(logger);
+        }
 
         try {
             // Configurar índices
+            long fase = System.currentTimeMillis();
             configurarIndices(logger);
+            fase = registrarFase("configuración", fase);
+
+            // En update, cargar los listings y hosts ya indexados y sus huellas
+            if ("update".equals(config.mode)) {
+                cargarHuellasListings(logger);
+                cargarHuellasHosts(logger);
+                fase = registrarFase("carga de huellas", fase);
+            }
+            if (config.resume) {
+                cargarHostsIndexados(logger);
+            }
 
             // Procesar CSV
             procesarCSV(logger);
+            fase = registrarFase("CSV + commit", fase);
+
+            // En update, eliminar los listings que ya no están en el CSV
+            if (huellasListings != null && !config.keepMissing) {
+                eliminarListingsAusentes(logger);
+                fase = registrarFase("borrado de ausentes", fase);
+            }
+
+            // Fusión final opcional
+            if (config.forceMerge > 0 && !config.dryRun) {
+                forceMerge(logger);
+                fase = registrarFase("force merge", fase);
+            }
 
             // Cerrar índices
             cerrarIndices(logger);
+            registrarFase("cierre", fase);
+            if (compartido == null) {
+                metricas.detenerMuestreo();
+            }
 
             // Resumen final
             long tiempoTotal = System.currentTimeMillis() - inicioTiempo.get();
             logger.info("=== Indexación completada ===");
             logger.info("Propiedades indexadas: " + totalPropiedades.get());
+            if (huellasListings != null) {
+                logger.info("Listings sin cambios: " + listingsSinCambios.get() + ", modificados: "
+                        + listingsModificados.get() + ", nuevos: " + listingsNuevos.get() + ", eliminados: "
+                        + listingsEliminados);
+            }
+            if (listingsDuplicados.get() > 0) {
+                logger.warn("Listings con id repetido en el CSV (se conserva la primera fila): "
+                        + listingsDuplicados.get());
+            }
             logger.info("Hosts indexados: " + totalHosts.get());
+            if (huellasHosts != null) {
+                logger.info("Hosts sin cambios (omitidos): " + hostsSinCambios.get());
+            }
+            logger.info("Hosts únicos vistos: " + (hostsVistos.size() + hostsVistosNoNumericos.size())
+                    + " (numéricos: " + hostsVistos.size() + ", no numéricos: " + hostsVistosNoNumericos.size()
+                    + "). Memoria del conjunto de host_id: " + (hostsVistos.ramBytesUsed() / 1024) + " KB");
+            logger.info("Amenidades distintas: " + amenidades.size());
+            if (!config.dryRun) {
+                Path raiz = Paths.get(config.indexRoot);
+                logger.info("Tamaño " + INDEX_PROPERTIES + " (stored-fields " + config.storedFields + "): "
+                        + TamanoIndice.de(raiz.resolve(INDEX_PROPERTIES)).comparadoCon(tamanoAntesPropiedades));
+                logger.info("Tamaño " + INDEX_HOSTS + " (stored-fields " + config.storedFields + "): "
+                        + TamanoIndice.de(raiz.resolve(INDEX_HOSTS)).comparadoCon(tamanoAntesHosts));
+            }
             logger.info("Errores: " + errores.get());
+            if (cuarentena != null) {
+                logger.info("Filas en cuarentena: " + cuarentena.filas() + " (" + config.quarantineFile + ")");
+            }
             logger.info("Tiempo total: " + tiempoTotal + " ms");
+            if (tiempoProcesado > 0) {
+                logger.info("Throughput " + (bulk ? "bulk" : "upsert") + ": "
+                        + (filasProcesadas * 1000L / tiempoProcesado) + " filas/s (" + filasProcesadas + " filas en "
+                        + tiempoProcesado + " ms)");
+            }
+            logger.info("Commits intermedios: " + commitsIntermedios.get());
+            for (Map.Entry<String, Long> e : tiemposFase.entrySet()) {
+                logger.info("  Fase " + e.getKey() + ": " + e.getValue() + " ms");
+            }
+            if (compartido == null) {
+                for (MetricasIndexacion.Etapa etapa : MetricasIndexacion.Etapa.values()) {
+                    logger.info("  Etapa " + metricas.resumen(etapa));
+                }
+            }
 
             if (errores.get() > config.maxErrors) {
                 logger.error("Superado max-errors (" + config.maxErrors + "). Abortando.");
@@ -196,10 +633,210 @@ public class AirbnbIndexador {
             }
 
         } finally {
+            if (evento.shouldCommit()) {
+                evento.input = config.input;
+                evento.modo = config.mode;
+                evento.propiedades = totalPropiedades.get();
+                evento.hosts = totalHosts.get();
+                evento.errores = errores.get();
+                evento.commit();
+            }
+            if (cuarentena != null) {
+                cuarentena.close();
+            }
+            if (snapshotSalida != null) {
+                snapshotSalida.abortar(); // sin efecto si la carga terminó y ya se cerró
+            }
+            if (snapshotEntrada != null) {
+                snapshotEntrada.close();
+            }
+            if (compartido == null) {
+                detenerMetricas(logger);
+                logger.close();
+            }
+        }
+    }
+
+    /**
+     * Publica las métricas por JMX y arranca la línea de progreso
+     */
+    private void iniciarMetricas(Logger logger) {
+        try {
+            metricas.registrarJmx();
+        } catch (JMException e) {
+            logger.warn("No se pudieron publicar las métricas por JMX: " + e.getMessage());
+        }
+        if (config.progressIntervalS > 0) {
+            metricas.iniciarMuestreo(config.progressIntervalS, logger::info);
+        }
+    }
+
+    private void detenerMetricas(Logger logger) throws InterruptedException {
+        metricas.detenerMuestreo();
+        try {
+            metricas.desregistrarJmx();
+        } catch (JMException e) {
+            logger.warn("No se pudo retirar el MBean de métricas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carga multi-ciudad: indexa cada archivo en su shard
+     * (index_root/shards/<ciudad>) con un AirbnbIndexador propio, varias ciudades
+     * a la vez, y escribe el manifiesto que lista los shards.
+     *
+     * Se comparten el logger (cada línea lleva la ciudad), las métricas (el
+     * progreso y el MBean suman todas las ciudades) y las taxonomías de index_root:
+     * con una sola taxonomía los ordinales de faceta significan lo mismo en todos
+     * los shards, así que la búsqueda cuenta facetas sobre un MultiReader con un
+     * único TaxonomyReader. DirectoryTaxonomyWriter admite addCategory y commit
+     * desde varios hilos. Con --facets sortedset no hay taxonomías: las etiquetas
+     * van en los doc values de cada shard y se unen al contar sobre el MultiReader.
+     *
+     * Los hilos de trabajo, los lectores y la RAM de indexación se reparten entre
+     * las ciudades simultáneas, de modo que el total de hilos no crece con el
+     * número de ciudades: cada hilo de shard toma la siguiente ciudad pendiente
+     * cuando termina la suya.
+     */
+    private void ejecutarShards(List<Path> entradas) throws Exception {
+        inicioTiempo.set(System.currentTimeMillis());
+        Map<String, Path> shards = nombrarShards(entradas);
+        Path raiz = Paths.get(config.indexRoot);
+        Files.createDirectories(raiz);
+
+        int concurrentes = config.concurrentShards > 0 ? config.concurrentShards : config.threads;
+        concurrentes = Math.max(1, Math.min(concurrentes, shards.size()));
+
+        Logger logger = new Logger(config.logFile);
+        logger.info("=== Iniciando indexación Airbnb multi-ciudad ===");
+        logger.info("Input: " + config.input + " (" + shards.size() + " ciudades: " + String.join(", ", shards.keySet())
+                + ")");
+        logger.info("Index root: " + config.indexRoot + " (shards en " + DIR_SHARDS + "/, taxonomías compartidas)");
+        logger.info("Ciudades simultáneas: " + concurrentes + ", por ciudad: "
+                + Math.max(1, config.threads / concurrentes) + " hilos, "
+                + Math.max(1, config.parseThreads / concurrentes) + " lectores CSV");
+        iniciarMetricas(logger);
+
+        List<AirbnbIndexador> indexadores = new ArrayList<>();
+        Map<String, Throwable> fallos = new ConcurrentHashMap<>();
+        DirectoryTaxonomyWriter taxoPropiedades = null;
+        DirectoryTaxonomyWriter taxoHosts = null;
+        try {
+            if ("rebuild".equals(config.mode) && config.force && !config.resume) {
+                deleteDirectory(raiz.resolve(DIR_SHARDS));
+                deleteDirectory(raiz.resolve(INDEX_TAXO_PROPERTIES));
+                deleteDirectory(raiz.resolve(INDEX_TAXO_HOSTS));
+                Files.deleteIfExists(raiz.resolve(MANIFIESTO));
+                logger.info("Shards, taxonomías y manifiesto eliminados (rebuild --force)");
+            }
+            // Todos los shards con el mismo modo de facetas: el indicado o el de los
+            // shards existentes al actualizar o reanudar
+            String facetas = config.facets;
+            if (facetas == null && (config.resume || "update".equals(config.mode))) {
+                facetas = modoFacetasShards(config.indexRoot);
+            }
+            if (facetas == null) {
+                facetas = FACETAS_TAXONOMIA;
+            }
+            if (FACETAS_TAXONOMIA.equals(facetas)) {
+                taxoPropiedades = new DirectoryTaxonomyWriter(FSDirectory.open(raiz.resolve(INDEX_TAXO_PROPERTIES)));
+                taxoHosts = new DirectoryTaxonomyWriter(FSDirectory.open(raiz.resolve(INDEX_TAXO_HOSTS)));
+            }
+            Compartido comun = new Compartido(logger, metricas, taxoPropiedades, taxoHosts);
+
+            for (Map.Entry<String, Path> e : shards.entrySet()) {
+                Config c = config.copia();
+                c.input = e.getValue().toString();
+                c.indexRoot = raiz.resolve(DIR_SHARDS).resolve(e.getKey()).toString();
+                c.threads = Math.max(1, config.threads / concurrentes);
+                c.parseThreads = Math.max(1, config.parseThreads / concurrentes);
+                c.ramBufferMb = Math.max(RAM_BUFFER_MIN_SHARD_MB, config.ramBufferMb / concurrentes);
+                c.facets = facetas;
+                if (config.quarantineFile != null) {
+                    c.quarantineFile = conSufijo(config.quarantineFile, e.getKey());
+                }
+                if (config.writeSnapshot != null) {
+                    c.writeSnapshot = conSufijo(config.writeSnapshot, e.getKey());
+                }
+                indexadores.add(new AirbnbIndexador(c, comun, e.getKey()));
+            }
+
+            AtomicInteger siguiente = new AtomicInteger();
+            List<Thread> hilos = new ArrayList<>();
+            for (int i = 0; i < concurrentes; i++) {
+                Thread t = new Thread(() -> {
+                    int n;
+                    while ((n = siguiente.getAndIncrement()) < indexadores.size()) {
+                        AirbnbIndexador shard = indexadores.get(n);
+                        try {
+                            shard.ejecutar();
+                        } catch (Throwable e) {
+                            fallos.put(shard.nombreShard, e);
+                            logger.error("[" + shard.nombreShard + "] Indexación fallida: " + e);
+                        }
+                    }
+                }, "indexador-shard-" + i);
+                hilos.add(t);
+                t.start();
+            }
+            for (Thread t : hilos) {
+                t.join();
+            }
+
+            if (taxoPropiedades != null) {
+                taxoPropiedades.close();
+                taxoHosts.close();
+            }
+            if (!config.dryRun) {
+                escribirManifiesto(raiz, shards);
+            }
+            detenerMetricas(logger);
+
+            long propiedades = 0, hosts = 0, errs = 0;
+            for (AirbnbIndexador shard : indexadores) {
+                propiedades += shard.totalPropiedades.get();
+                hosts += shard.totalHosts.get();
+                errs += shard.errores.get();
+            }
+            logger.info("=== Indexación multi-ciudad completada ===");
+            logger.info("Ciudades: " + shards.size() + " (fallidas: " + fallos.size() + "), propiedades: "
+                    + propiedades + ", hosts: " + hosts + ", errores: " + errs);
+            logger.info("Tiempo total: " + (System.currentTimeMillis() - inicioTiempo.get()) + " ms");
+            for (MetricasIndexacion.Etapa etapa : MetricasIndexacion.Etapa.values()) {
+                logger.info("  Etapa " + metricas.resumen(etapa));
+            }
+            if (!fallos.isEmpty()) {
+                throw new RuntimeException("Indexación fallida en " + fallos.size() + " ciudad(es): "
+                        + String.join(", ", new TreeSet<>(fallos.keySet())) + ". Reintentar con --resume");
+            }
+        } finally {
+            metricas.detenerMuestreo();
+            if (taxoPropiedades != null) {
+                taxoPropiedades.close();
+            }
+            if (taxoHosts != null) {
+                taxoHosts.close();
+            }
+            try {
+                metricas.desregistrarJmx();
+            } catch (JMException e) {
+                // ya retirado
+            }
             logger.close();
         }
     }
 
+    /**
+     * Guarda la duración de una fase
+     *
+     * @return instante de fin, inicio de la fase siguiente
+     */
+    private long registrarFase(String nombre, long inicio) {
+        long fin = System.currentTimeMillis();
+        tiemposFase.put(nombre, fin - inicio);
+        return fin;
+    }
+
     /**
      * Configura los dos índices (propiedades y hosts)
      */
@@ -214,6 +851,10 @@ public class AirbnbIndexador {
         Path taxoPathProperties = indexRootPath.resolve(INDEX_TAXO_PROPERTIES);
         Path taxoPathHosts = indexRootPath.resolve(INDEX_TAXO_HOSTS);
 
+        // Tamaño antes de tocar nada (build y rebuild --force borran el índice)
+        tamanoAntesPropiedades = TamanoIndice.de(indexPathProperties);
+        tamanoAntesHosts = TamanoIndice.de(indexPathHosts);
+
         // Crear analizadores por campo
         Analyzer analyzer = crearAnalizador();
 
@@ -222,7 +863,10 @@ public class AirbnbIndexador {
 
         // Configurar modo de apertura
         IndexWriterConfig.OpenMode openMode;
-        if ("rebuild".equals(config.mode) && config.force) {
+        if (config.resume) {
+            // Reanudar: nunca borrar lo ya indexado
+            openMode = IndexWriterConfig.OpenMode.CREATE_OR_APPEND;
+        } else if ("rebuild".equals(config.mode) && config.force) {
             // Borrar índices existentes
             deleteDirectory(indexPathProperties);
             deleteDirectory(indexPathHosts);
@@ -245,22 +889,455 @@ public class AirbnbIndexador {
         IndexWriterConfig iwcProperties = new IndexWriterConfig(analyzer);
         iwcProperties.setOpenMode(openMode);
         iwcProperties.setSimilarity(similarity); // Configurar ClassicSimilarity
+        iwcProperties.setRAMBufferSizeMB(config.ramBufferMb); // flush por RAM, no por número de docs
+        iwcProperties.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+        iwcProperties.setMergePolicy(crearMergePolicy());
+        iwcProperties.setCodec(crearCodec());
         Directory dirProperties = FSDirectory.open(indexPathProperties);
+        Sort indexSort = config.indexSort != null ? parseIndexSort(config.indexSort) : null;
+        String facetas = config.facets;
+        boolean offsets = config.offsets;
+        if (openMode == IndexWriterConfig.OpenMode.CREATE_OR_APPEND && DirectoryReader.indexExists(dirProperties)) {
+            // Tampoco se pueden mezclar los dos modos de facetas en un índice
+            String facetasExistentes = modoFacetas(dirProperties);
+            if (facetas != null && facetasExistentes != null && !facetas.equals(facetasExistentes)) {
+                throw new IllegalArgumentException("--facets " + facetas
+                        + " no coincide con las facetas del índice existente (" + facetasExistentes
+                        + "). Usar --mode rebuild");
+            }
+            if (facetasExistentes != null) {
+                facetas = facetasExistentes;
+            }
+            // Lucene no deja cambiar las IndexOptions de un campo ya indexado
+            IndexOptions opcionesExistentes = opcionesDescripcion(dirProperties);
+            if (opcionesExistentes != null) {
+                boolean offsetsExistentes = opcionesExistentes == TEXTO_CON_OFFSETS.indexOptions();
+                if (offsets && !offsetsExistentes) {
+                    throw new IllegalArgumentException(
+                            "--offsets: el índice existente no tiene offsets en description. Usar --mode rebuild");
+                }
+                offsets = offsetsExistentes;
+            }
+            // Un índice ordenado no puede cambiar de orden, y abrirlo sin orden haría
+            // que los segmentos nuevos (y los merges) dejaran de estar ordenados
+            Sort existente = ordenIndice(dirProperties);
+            if (indexSort != null && !indexSort.equals(existente)) {
+                throw new IllegalArgumentException("--index-sort " + config.indexSort
+                        + " no coincide con el orden del índice existente (" + existente + "). Usar --mode rebuild");
+            }
+            indexSort = existente;
+        }
+        if (indexSort != null) {
+            iwcProperties.setIndexSort(indexSort);
+            logger.info("Orden del índice de propiedades: " + indexSort);
+        }
         writerProperties = new IndexWriter(dirProperties, iwcProperties);
+        ordenado = indexSort != null;
+        conOffsets = offsets;
+        if (conOffsets) {
+            logger.info("description con offsets en los postings");
+        }
+        facetasSortedSet = FACETAS_SORTEDSET.equals(facetas);
+        if (facetasSortedSet) {
+            logger.info("Facetas: SortedSetDocValuesFacetField (sin taxonomía)");
+        }
 
-        Directory dirTaxoProperties = FSDirectory.open(taxoPathProperties);
-        taxoWriterProperties = new DirectoryTaxonomyWriter(dirTaxoProperties);
+        if (facetasSortedSet) {
+            taxoWriterProperties = null;
+        } else if (compartido != null) {
+            taxoWriterProperties = compartido.taxoPropiedades;
+        } else {
+            Directory dirTaxoProperties = FSDirectory.open(taxoPathProperties);
+            taxoWriterProperties = new DirectoryTaxonomyWriter(dirTaxoProperties);
+        }
 
         IndexWriterConfig iwcHosts = new IndexWriterConfig(analyzer);
         iwcHosts.setOpenMode(openMode);
         iwcHosts.setSimilarity(similarity); // Configurar ClassicSimilarity
+        iwcHosts.setRAMBufferSizeMB(config.ramBufferMb);
+        iwcHosts.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+        iwcHosts.setMergePolicy(crearMergePolicy());
+        iwcHosts.setCodec(crearCodec());
         Directory dirHosts = FSDirectory.open(indexPathHosts);
         writerHosts = new IndexWriter(dirHosts, iwcHosts);
 
-        Directory dirTaxoHosts = FSDirectory.open(taxoPathHosts);
-        taxoWriterHosts = new DirectoryTaxonomyWriter(dirTaxoHosts);
+        if (facetasSortedSet) {
+            taxoWriterHosts = null;
+        } else if (compartido != null) {
+            taxoWriterHosts = compartido.taxoHosts;
+        } else {
+            Directory dirTaxoHosts = FSDirectory.open(taxoPathHosts);
+            taxoWriterHosts = new DirectoryTaxonomyWriter(dirTaxoHosts);
+        }
+
+        TieredMergePolicy mp = (TieredMergePolicy) iwcProperties.getMergePolicy();
+        logger.info("Índices configurados correctamente (merges: segmentsPerTier=" + mp.getSegmentsPerTier()
+                + ", maxMergedSegmentMB=" + mp.getMaxMergedSegmentMB() + ", commit cada "
+                + (config.commitIntervalS > 0 ? config.commitIntervalS + " s" : "final") + ")");
+    }
+
+    /**
+     * Modo de facetas de un índice ya escrito, por el tipo de doc values del
+     * campo de facetas: SORTED_SET con etiquetas (sortedset) u ordinales de la
+     * taxonomía (taxonomy)
+     *
+     * @return FACETAS_SORTEDSET, FACETAS_TAXONOMIA, o null si no tiene facetas
+     */
+    public static String modoFacetas(IndexReader reader) {
+        FieldInfo campo = FieldInfos.getMergedFieldInfos(reader).fieldInfo(FacetsConfig.DEFAULT_INDEX_FIELD_NAME);
+        if (campo == null || campo.getDocValuesType() == DocValuesType.NONE) {
+            return null;
+        }
+        return campo.getDocValuesType() == DocValuesType.SORTED_SET ? FACETAS_SORTEDSET : FACETAS_TAXONOMIA;
+    }
+
+    private static String modoFacetas(Directory dir) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            return modoFacetas(reader);
+        }
+    }
+
+    /**
+     * Si description se indexó con offsets en los postings (--offsets)
+     */
+    public static boolean conOffsets(IndexReader reader) {
+        FieldInfo campo = FieldInfos.getMergedFieldInfos(reader).fieldInfo(FIELD_DESCRIPTION);
+        return campo != null && campo.getIndexOptions() == TEXTO_CON_OFFSETS.indexOptions();
+    }
+
+    /**
+     * IndexOptions de description en un índice ya escrito (null si ningún
+     * documento la tiene)
+     */
+    private static IndexOptions opcionesDescripcion(Directory dir) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            FieldInfo campo = FieldInfos.getMergedFieldInfos(reader).fieldInfo(FIELD_DESCRIPTION);
+            return campo == null ? null : campo.getIndexOptions();
+        }
+    }
+
+    /**
+     * Orden del último commit de un índice (null si no está ordenado)
+     */
+    private static Sort ordenIndice(Directory dir) throws IOException {
+        for (SegmentCommitInfo sci : SegmentInfos.readLatestCommit(dir)) {
+            return sci.info.getIndexSort();
+        }
+        return null;
+    }
+
+    /**
+     * Codec por defecto con los campos stored en el modo de --stored-fields:
+     * BEST_SPEED (bloques LZ4 pequeños) o BEST_COMPRESSION (DEFLATE sobre
+     * bloques mayores: ocupa menos, cuesta algo más leer cada documento)
+     */
+    private Lucene103Codec crearCodec() {
+        return new Lucene103Codec(STORED_COMPRESION.equals(config.storedFields)
+                ? Lucene103Codec.Mode.BEST_COMPRESSION
+                : Lucene103Codec.Mode.BEST_SPEED);
+    }
+
+    /**
+     * TieredMergePolicy según --merge-profile (bulk por defecto al crear índices
+     * desde cero) y los ajustes explícitos
+     */
+    private TieredMergePolicy crearMergePolicy() {
+        String perfil = config.mergeProfile != null ? config.mergeProfile
+                : "update".equals(config.mode) ? "default" : "bulk";
+        TieredMergePolicy mp = new TieredMergePolicy();
+        if ("bulk".equals(perfil)) {
+            mp.setSegmentsPerTier(BULK_SEGMENTS_PER_TIER);
+            mp.setFloorSegmentMB(BULK_FLOOR_SEGMENT_MB);
+            mp.setMaxMergedSegmentMB(BULK_MAX_MERGED_SEGMENT_MB);
+        }
+        if (config.segmentsPerTier > 0) {
+            mp.setSegmentsPerTier(config.segmentsPerTier);
+        }
+        if (config.maxSegmentMb > 0) {
+            mp.setMaxMergedSegmentMB(config.maxSegmentMb);
+        }
+        return mp;
+    }
+
+    /**
+     * Fusiona cada índice en como máximo config.forceMerge segmentos
+     */
+    private void forceMerge(Logger logger) throws IOException {
+        long inicio = System.currentTimeMillis();
+        writerProperties.forceMerge(config.forceMerge);
+        writerHosts.forceMerge(config.forceMerge);
+        logger.info("Force merge a " + config.forceMerge + " segmento(s): " + (System.currentTimeMillis() - inicio)
+                + " ms");
+    }
+
+    /**
+     * Commit de taxonomías e índices con el checkpoint actual en los datos de
+     * usuario. El avance se toma antes de hacer commit, así que todo lo que cubre
+     * ya está en los IndexWriter; el commit puede incluir además filas
+     * posteriores, que al reanudar se reescriben con upsert.
+     *
+     * Orden: taxonomías primero (los documentos referencian sus ordinales), luego
+     * hosts y por último propiedades, cuyo checkpoint es el que se lee al
+     * reanudar: si el proceso muere entre commits, el de propiedades nunca va por
+     * delante de lo que tienen los demás.
+     */
+    private void commitConCheckpoint(boolean completo) throws IOException {
+        Map<String, String> datos = new HashMap<>(checkpointBase);
+        StringBuilder sb = new StringBuilder();
+        for (ProgresoBloque p : progreso) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(p.serializar());
+        }
+        datos.put(CHECKPOINT_PROGRESO, sb.toString());
+        datos.put(CHECKPOINT_COMPLETO, Boolean.toString(completo));
+
+        // Las filas rechazadas que cubre el checkpoint no se vuelven a leer al
+        // reanudar: su registro en cuarentena debe estar escrito antes
+        if (cuarentena != null) {
+            cuarentena.flush();
+        }
+        EventosJfr.CommitRealizado evento = new EventosJfr.CommitRealizado();
+        evento.begin();
+        long t = System.nanoTime();
+        if (taxoWriterProperties != null) {
+            taxoWriterProperties.commit();
+            taxoWriterHosts.commit();
+        }
+        writerHosts.setLiveCommitData(datos.entrySet());
+        writerHosts.commit();
+        writerProperties.setLiveCommitData(datos.entrySet());
+        writerProperties.commit();
+        metricas.medir(MetricasIndexacion.Etapa.COMMIT, t);
+        if (evento.shouldCommit()) {
+            evento.completo = completo;
+            evento.propiedades = totalPropiedades.get();
+            evento.hosts = totalHosts.get();
+            evento.commit();
+        }
+    }
+
+    /**
+     * Lee y valida el checkpoint del último commit del índice de propiedades
+     */
+    private Map<String, String> leerCheckpoint(Path csvPath) throws IOException {
+        Map<String, String> datos = new HashMap<>();
+        Iterable<Map.Entry<String, String>> commitData = writerProperties.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> e : commitData) {
+                datos.put(e.getKey(), e.getValue());
+            }
+        }
+        if (!datos.containsKey(CHECKPOINT_PROGRESO)) {
+            throw new IllegalArgumentException("El índice no tiene checkpoint de una carga anterior: no se puede "
+                    + "reanudar (--resume)");
+        }
+        String input = csvPath.toAbsolutePath().normalize().toString();
+        if (!input.equals(datos.get(CHECKPOINT_INPUT))
+                || !Long.toString(Files.size(csvPath)).equals(datos.get(CHECKPOINT_TAMANO))) {
+            throw new IllegalArgumentException("El checkpoint corresponde a otro archivo o versión ("
+                    + datos.get(CHECKPOINT_INPUT) + ", " + datos.get(CHECKPOINT_TAMANO) + " bytes)");
+        }
+        return datos;
+    }
+
+    /**
+     * Commit intermedio si han pasado commitIntervalS segundos desde el último.
+     * Lo hace un solo worker (compareAndSet); los demás siguen indexando mientras
+     * tanto. Los documentos que estén en lotes bulk de otros workers entran en el
+     * commit siguiente.
+     */
+    private void commitSiProcede(Logger logger) throws IOException {
+        if (config.commitIntervalS <= 0 || config.dryRun) {
+            return;
+        }
+        long anterior = ultimoCommit.get();
+        long ahora = System.currentTimeMillis();
+        if (ahora - anterior < config.commitIntervalS * 1000L || !ultimoCommit.compareAndSet(anterior, ahora)) {
+            return;
+        }
+        commitConCheckpoint(false);
+        commitsIntermedios.incrementAndGet();
+        logger.debug("Commit realizado (" + (System.currentTimeMillis() - ahora) + " ms). Propiedades: "
+                + totalPropiedades.get() + ", Hosts: " + totalHosts.get());
+    }
+
+    /**
+     * Modo update: lee id (SortedDocValues) y listing_fingerprint
+     * (NumericDocValues) de los documentos vivos del índice de propiedades. Los
+     * listings sin huella se cargan con HUELLA_DESCONOCIDA y se reescriben una vez.
+     *
+     * Un índice anterior (id solo como IntPoint) no admite los documentos nuevos
+     * (otro esquema para "id") ni el upsert por término: se vacía y esta carga lo
+     * migra añadiendo todas las filas del CSV, que es lo que queda tras un update
+     * que borra los ausentes. Con --keep-missing no se puede migrar.
+     */
+    private void cargarHuellasListings(Logger logger) throws IOException {
+        long inicio = System.currentTimeMillis();
+        try (DirectoryReader reader = DirectoryReader.open(writerProperties)) {
+            huellasListings = new LongLongHashMap(reader.numDocs());
+            huellasListingsNoNumericos = new HashMap<>();
+            FieldInfo campoId = FieldInfos.getMergedFieldInfos(reader).fieldInfo("id");
+            if (campoId != null && campoId.getIndexOptions() == IndexOptions.NONE) {
+                if (config.keepMissing) {
+                    throw new IllegalArgumentException(
+                            "El índice de propiedades no tiene el id indexado como término (versión anterior): "
+                                    + "--keep-missing no puede conservarlo. Usar --mode rebuild");
+                }
+                logger.warn("Índice de propiedades de una versión anterior (id sin término): se reescribe entero "
+                        + "desde el CSV (" + reader.numDocs() + " documentos)");
+                if (!config.dryRun) {
+                    writerProperties.deleteAll();
+                }
+                return;
+            }
+            for (LeafReaderContext ctx : reader.leaves()) {
+                LeafReader leaf = ctx.reader();
+                SortedDocValues ids = DocValues.getSorted(leaf, "id");
+                NumericDocValues huellas = leaf.getNumericDocValues(FIELD_LISTING_FINGERPRINT);
+                Bits vivos = leaf.getLiveDocs();
+                for (int doc = ids.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ids.nextDoc()) {
+                    if (vivos != null && !vivos.get(doc)) {
+                        continue;
+                    }
+                    long huella = huellas != null && huellas.advanceExact(doc) ? huellas.longValue()
+                            : HUELLA_DESCONOCIDA;
+                    String id = ids.lookupOrd(ids.ordValue()).utf8ToString();
+                    long idNum = parseIdNumerico(id);
+                    if (idNum != CsvSchema.Largo.SIN_VALOR) {
+                        huellasListings.put(idNum, huella);
+                    } else {
+                        huellasListingsNoNumericos.put(id, huella);
+                    }
+                }
+            }
+        }
+        logger.info("Listings existentes cargados: " + (huellasListings.size() + huellasListingsNoNumericos.size())
+                + " en " + (System.currentTimeMillis() - inicio) + " ms (" + (huellasListings.ramBytesUsed() / 1024)
+                + " KB)");
+    }
+
+    /**
+     * Modo update: borra los listings del índice cuyo id no ha aparecido en el CSV
+     */
+    private void eliminarListingsAusentes(Logger logger) throws IOException {
+        List<Term> ausentes = new ArrayList<>();
+        huellasListings.forEachKey(id -> {
+            if (!listingsVistos.contains(id)) {
+                ausentes.add(new Term("id", Long.toString(id)));
+            }
+        });
+        for (String id : huellasListingsNoNumericos.keySet()) {
+            if (!listingsVistosNoNumericos.contains(id)) {
+                ausentes.add(new Term("id", id));
+            }
+        }
+        listingsEliminados = ausentes.size();
+        if (ausentes.isEmpty()) {
+            return;
+        }
+        if (config.dryRun) {
+            logger.info("DRY-RUN: se eliminarían " + ausentes.size() + " listings ausentes del CSV");
+            return;
+        }
+        for (int i = 0; i < ausentes.size(); i += TERMINOS_POR_BORRADO) {
+            List<Term> lote = ausentes.subList(i, Math.min(ausentes.size(), i + TERMINOS_POR_BORRADO));
+            writerProperties.deleteDocuments(lote.toArray(new Term[0]));
+        }
+        writerProperties.commit();
+        logger.info("Listings ausentes del CSV eliminados: " + ausentes.size());
+    }
+
+    /**
+     * Modo update: lee host_id (SortedDocValues) y host_fingerprint
+     * (NumericDocValues) de los documentos vivos del índice de hosts. Los hosts de
+     * índices anteriores a la huella se cargan con HUELLA_DESCONOCIDA y se
+     * reescriben una vez.
+     */
+    private void cargarHuellasHosts(Logger logger) throws IOException {
+        long inicio = System.currentTimeMillis();
+        huellasHosts = new LongLongHashMap(writerHosts.getDocStats().numDocs);
+        huellasHostsNoNumericos = new HashMap<>();
+        int total = recorrerHostsIndexados((id, huella) -> {
+            long idNum = parseIdNumerico(id);
+            if (idNum != CsvSchema.Largo.SIN_VALOR) {
+                huellasHosts.put(idNum, huella);
+            } else {
+                huellasHostsNoNumericos.put(id, huella);
+            }
+        });
+        logger.info("Hosts existentes cargados: " + total + " en " + (System.currentTimeMillis() - inicio) + " ms ("
+                + (huellasHosts.ramBytesUsed() / 1024) + " KB)");
+    }
+
+    /**
+     * --resume: marca como vistos los hosts cuyo documento está en el último
+     * commit del índice de hosts. No se deducen de las filas anteriores al
+     * checkpoint: un worker marca el host antes de escribirlo, y un commit de
+     * otro worker puede avanzar el checkpoint entre ambos pasos, así que un host
+     * de esas filas puede no haber llegado al índice. La fila posterior que lo
+     * vuelva a traer lo escribe (upsert al reanudar).
+     */
+    private void cargarHostsIndexados(Logger logger) throws IOException {
+        long inicio = System.currentTimeMillis();
+        int total = recorrerHostsIndexados((id, huella) -> {
+            long idNum = parseIdNumerico(id);
+            if (idNum != CsvSchema.Largo.SIN_VALOR) {
+                hostsVistos.add(idNum);
+            } else {
+                hostsVistosNoNumericos.add(id);
+            }
+        });
+        logger.info("Hosts ya indexados (reanudación): " + total + " en " + (System.currentTimeMillis() - inicio)
+                + " ms");
+    }
+
+    /**
+     * Recorre host_id (SortedDocValues) y host_fingerprint (NumericDocValues,
+     * HUELLA_DESCONOCIDA si falta) de los documentos vivos del índice de hosts
+     *
+     * @return número de hosts recorridos
+     */
+    private int recorrerHostsIndexados(ObjLongConsumer<String> visitante) throws IOException {
+        int total = 0;
+        try (DirectoryReader reader = DirectoryReader.open(writerHosts)) {
+            for (LeafReaderContext ctx : reader.leaves()) {
+                LeafReader leaf = ctx.reader();
+                SortedDocValues ids = DocValues.getSorted(leaf, "host_id");
+                NumericDocValues huellas = leaf.getNumericDocValues(FIELD_HOST_FINGERPRINT);
+                Bits vivos = leaf.getLiveDocs();
+                for (int doc = ids.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ids.nextDoc()) {
+                    if (vivos != null && !vivos.get(doc)) {
+                        continue;
+                    }
+                    long huella = huellas != null && huellas.advanceExact(doc) ? huellas.longValue()
+                            : HUELLA_DESCONOCIDA;
+                    visitante.accept(ids.lookupOrd(ids.ordValue()).utf8ToString(), huella);
+                    total++;
+                }
+            }
+        }
+        return total;
+    }
 
-        logger.info("Índices configurados correctamente");
+    /**
+     * Mismas reglas que CsvSchema.Largo: forma canónica (dígitos sin ceros a la
+     * izquierda, '-' opcional), hasta 18 cifras
+     */
+    private static long parseIdNumerico(String s) {
+        String t = s.trim();
+        int i = t.startsWith("-") ? 1 : 0;
+        if (t.length() == i || t.length() - i > 18 || (t.charAt(i) == '0' && (t.length() - i > 1 || i == 1))) {
+            return CsvSchema.Largo.SIN_VALOR;
+        }
+        for (int j = i; j < t.length(); j++) {
+            char c = t.charAt(j);
+            if (c < '0' || c > '9') {
+                return CsvSchema.Largo.SIN_VALOR;
+            }
+        }
+        return Long.parseLong(t);
     }
 
     private void deleteDirectory(Path path) {
@@ -569,16 +1646,278 @@ public class AirbnbIndexador {
     }
 
     /**
-     * Crea la configuración de facetas
-     * Define qué campos son multivaluados o jerárquicos
+     * Raíces de los shards de una carga multi-ciudad (cada una con su
+     * index_properties e index_hosts), según el manifiesto
+     *
+     * @return shards por nombre de ciudad, o null si index_root no tiene
+     *         manifiesto (carga de un solo archivo)
      */
-    public static FacetsConfig createFacetsConfig() {
-        FacetsConfig config = new FacetsConfig();
-        // Configurar property_type como jerárquico (usa "/" como separador de niveles)
-        config.setHierarchical("property_type", true);
-        // Configurar campos multivaluados si es necesario
-        // config.setMultiValued("amenity", true); // Ejemplo si amenity fuera faceta
-        return config;
+    public static Map<String, Path> getShardPaths(String indexRoot) throws IOException {
+        Path manifiesto = Paths.get(indexRoot, MANIFIESTO);
+        if (!Files.exists(manifiesto)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(manifiesto)) {
+            props.load(in);
+        }
+        Map<String, Path> shards = new LinkedHashMap<>();
+        for (String nombre : props.getProperty(MANIFIESTO_SHARDS, "").split(",")) {
+            if (!nombre.isBlank()) {
+                shards.put(nombre.trim(), Paths.get(indexRoot, DIR_SHARDS, nombre.trim()));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Modo de facetas del primer shard existente de index_root (null si no hay)
+     */
+    private static String modoFacetasShards(String indexRoot) throws IOException {
+        Map<String, Path> shards = getShardPaths(indexRoot);
+        if (shards == null) {
+            return null;
+        }
+        for (Path shard : shards.values()) {
+            try (Directory dir = FSDirectory.open(shard.resolve(INDEX_PROPERTIES))) {
+                String modo = DirectoryReader.indexExists(dir) ? modoFacetas(dir) : null;
+                if (modo != null) {
+                    return modo;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Abre el índice de propiedades: el de index_root o, si hay manifiesto, un
+     * MultiReader sobre el de cada shard (que cierra los shards al cerrarse).
+     * Las facetas se cuentan con la taxonomía de index_root en ambos casos, o
+     * con los doc values del propio reader si el índice es --facets sortedset
+     */
+    public static IndexReader abrirIndicePropiedades(String indexRoot) throws IOException {
+        Map<String, Path> shards = getShardPaths(indexRoot);
+        if (shards == null) {
+            return DirectoryReader.open(FSDirectory.open(getPropertiesIndexPath(indexRoot)));
+        }
+        List<IndexReader> readers = new ArrayList<>();
+        try {
+            for (Path shard : shards.values()) {
+                readers.add(DirectoryReader.open(FSDirectory.open(shard.resolve(INDEX_PROPERTIES))));
+            }
+            return new MultiReader(readers.toArray(new IndexReader[0]));
+        } catch (IOException | RuntimeException e) {
+            for (IndexReader r : readers) {
+                r.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Archivos de entrada de una carga multi-ciudad: los de un directorio
+     * (*.csv, *.csv.gz, *.csv.zst, o los de sus subdirectorios si no tiene
+     * ninguno) o los que casan con un glob, ordenados
+     *
+     * @return null si input es un único archivo
+     */
+    private static List<Path> expandirEntradas(String input) throws IOException {
+        boolean glob = input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0
+                || input.indexOf('{') >= 0;
+        Path ruta = glob ? null : Paths.get(input);
+        if (ruta != null && !Files.isDirectory(ruta)) {
+            return null;
+        }
+        List<Path> res = new ArrayList<>();
+        if (glob) {
+            // Directorio base: la parte anterior al primer componente con comodines
+            int comodin = input.length();
+            for (char c : new char[] { '*', '?', '[', '{' }) {
+                int i = input.indexOf(c);
+                if (i >= 0) {
+                    comodin = Math.min(comodin, i);
+                }
+            }
+            int sep = input.lastIndexOf('/', comodin);
+            Path base = Paths.get(sep < 0 ? "." : sep == 0 ? "/" : input.substring(0, sep));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.substring(sep + 1));
+            if (!Files.isDirectory(base)) {
+                throw new IllegalArgumentException("--input " + input + ": no existe el directorio " + base);
+            }
+            try (java.util.stream.Stream<Path> archivos = Files.walk(base)) {
+                archivos.filter(Files::isRegularFile).filter(f -> matcher.matches(base.relativize(f)))
+                        .forEach(res::add);
+            }
+        } else {
+            for (int profundidad = 1; profundidad <= 2 && res.isEmpty(); profundidad++) {
+                try (java.util.stream.Stream<Path> archivos = Files.walk(ruta, profundidad)) {
+                    archivos.filter(Files::isRegularFile).filter(f -> esArchivoCsv(f.getFileName().toString()))
+                            .forEach(res::add);
+                }
+            }
+        }
+        if (res.isEmpty()) {
+            throw new IllegalArgumentException("--input " + input + " no contiene archivos CSV");
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    private static boolean esArchivoCsv(String nombre) {
+        String n = nombre.toLowerCase(Locale.ROOT);
+        return n.endsWith(".csv") || n.endsWith(".csv.gz") || n.endsWith(".csv.zst");
+    }
+
+    /**
+     * Nombre de shard de cada archivo: el del archivo sin extensiones
+     * (listings-paris.csv.gz -> listings-paris) o, si varios archivos se llaman
+     * igual (data/paris/listings.csv.gz), el de su directorio
+     */
+    private static Map<String, Path> nombrarShards(List<Path> archivos) {
+        Map<String, Integer> repetidos = new HashMap<>();
+        for (Path f : archivos) {
+            repetidos.merge(nombreShard(f.getFileName()), 1, Integer::sum);
+        }
+        Map<String, Path> shards = new LinkedHashMap<>();
+        for (Path f : archivos) {
+            String nombre = nombreShard(f.getFileName());
+            if (repetidos.get(nombre) > 1 && f.toAbsolutePath().getParent().getFileName() != null) {
+                nombre = nombreShard(f.toAbsolutePath().getParent().getFileName());
+            }
+            if (shards.put(nombre, f) != null) {
+                throw new IllegalArgumentException("Dos archivos de entrada darían el mismo shard '" + nombre
+                        + "': " + shards.get(nombre) + ", " + f);
+            }
+        }
+        return shards;
+    }
+
+    private static String nombreShard(Path nombreArchivo) {
+        String n = nombreArchivo.toString().toLowerCase(Locale.ROOT);
+        for (String ext : new String[] { ".snap", ".gz", ".zst", ".csv" }) {
+            if (n.endsWith(ext)) {
+                n = n.substring(0, n.length() - ext.length());
+            }
+        }
+        n = n.replaceAll("[^a-z0-9_-]+", "_");
+        return n.isEmpty() ? "_" : n;
+    }
+
+    /**
+     * Ruta con '-sufijo' antes de la extensión (rechazos.csv -> rechazos-la.csv)
+     */
+    private static String conSufijo(String ruta, String sufijo) {
+        int barra = ruta.lastIndexOf(File.separatorChar);
+        int punto = ruta.lastIndexOf('.');
+        return punto > barra + 1 ? ruta.substring(0, punto) + "-" + sufijo + ruta.substring(punto)
+                : ruta + "-" + sufijo;
+    }
+
+    /**
+     * Escribe el manifiesto de shards (reemplazo atómico). En update y --resume
+     * conserva los shards anteriores que no se han vuelto a cargar; solo se
+     * listan shards con índice de propiedades
+     */
+    private void escribirManifiesto(Path raiz, Map<String, Path> cargados) throws IOException {
+        Map<String, String> shards = new TreeMap<>();
+        Map<String, Path> anteriores = getShardPaths(raiz.toString());
+        if (anteriores != null && ("update".equals(config.mode) || config.resume)) {
+            for (String nombre : anteriores.keySet()) {
+                shards.put(nombre, null);
+            }
+        }
+        for (Map.Entry<String, Path> e : cargados.entrySet()) {
+            shards.put(e.getKey(), e.getValue().toAbsolutePath().normalize().toString());
+        }
+        Properties props = new Properties();
+        List<String> nombres = new ArrayList<>();
+        for (Map.Entry<String, String> e : shards.entrySet()) {
+            Path indice = raiz.resolve(DIR_SHARDS).resolve(e.getKey()).resolve(INDEX_PROPERTIES);
+            try (Directory dir = FSDirectory.open(indice)) {
+                if (!DirectoryReader.indexExists(dir)) {
+                    continue;
+                }
+            }
+            nombres.add(e.getKey());
+            if (e.getValue() != null) {
+                props.setProperty("shard." + e.getKey() + ".input", e.getValue());
+            }
+        }
+        props.setProperty(MANIFIESTO_SHARDS, String.join(",", nombres));
+        Path tmp = raiz.resolve(MANIFIESTO + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp)) {
+            props.store(out, "AirbnbIndexador: un shard por ciudad en " + DIR_SHARDS
+                    + "/, taxonomías compartidas en index_root");
+        }
+        Files.move(tmp, raiz.resolve(MANIFIESTO), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Crea la configuración de facetas
+     * Define qué campos son multivaluados o jerárquicos
+     */
+    public static FacetsConfig createFacetsConfig() {
+        FacetsConfig config = new FacetsConfig();
+        // Configurar property_type como jerárquico (usa "/" como separador de niveles)
+        config.setHierarchical("property_type", true);
+        // Amenidades: varias etiquetas por documento
+        config.setMultiValued("amenity", true);
+        return config;
+    }
+
+    /**
+     * SortField sobre los doc values de un campo de index_properties. Lo usan el
+     * orden del índice y las búsquedas ordenadas: para que Lucene pueda terminar
+     * antes la búsqueda, el SortField tiene que ser idéntico (tipo, sentido y
+     * valor para documentos sin el campo, que siempre van al final).
+     *
+     * @param campo       campo con doc values (ver PlantillaPropiedad)
+     * @param descendente true para orden de mayor a menor
+     */
+    public static SortField crearSortField(String campo, boolean descendente) {
+        SortField sf;
+        switch (campo) {
+            case "neighbourhood_cleansed":
+            case "neighbourhood_group_cleansed":
+            case "property_type":
+            case "bedrooms_category":
+                sf = new SortField(campo, SortField.Type.STRING, descendente);
+                sf.setMissingValue(descendente ? SortField.STRING_FIRST : SortField.STRING_LAST);
+                return sf;
+            case "price":
+            case "review_scores_rating":
+                sf = new SortField(campo, SortField.Type.DOUBLE, descendente);
+                sf.setMissingValue(descendente ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+                return sf;
+            case "number_of_reviews":
+            case "bedrooms":
+            case "bathrooms":
+                sf = new SortField(campo, SortField.Type.LONG, descendente);
+                sf.setMissingValue(descendente ? Long.MIN_VALUE : Long.MAX_VALUE);
+                return sf;
+            default:
+                throw new IllegalArgumentException("Campo no ordenable: " + campo);
+        }
+    }
+
+    /**
+     * Parsea una lista de campos separados por comas ('-' = descendente)
+     */
+    public static Sort parseIndexSort(String spec) {
+        List<SortField> campos = new ArrayList<>();
+        for (String parte : spec.split(",")) {
+            String campo = parte.trim();
+            if (campo.isEmpty()) {
+                continue;
+            }
+            boolean descendente = campo.startsWith("-");
+            campos.add(crearSortField(descendente ? campo.substring(1).trim() : campo, descendente));
+        }
+        if (campos.isEmpty()) {
+            throw new IllegalArgumentException("--index-sort vacío");
+        }
+        return new Sort(campos.toArray(new SortField[0]));
     }
 
     /**
@@ -596,371 +1935,1443 @@ public class AirbnbIndexador {
      * 
      * Asume:
      * - Un único archivo CSV (no procesa directorios)
-     * - El archivo viene de config.input (ej: listings.csv)
+     * - El archivo viene de config.input (ej: listings.csv), plano o comprimido
+     * (gzip/zstd, ver EntradaComprimida)
      * - El parser CSV robusto es necesario porque campos como "Los Angeles, CA"
      * y descripciones pueden contener comas dentro de comillas dobles
      * - Maneja filas multi-línea cuando campos contienen saltos de línea dentro de
      * comillas
+     *
+     * Pipeline: CsvChunker divide el archivo en bloques de bytes que empiezan en
+     * inicios de fila reales; config.parseThreads lectores toman bloques, los
+     * recorren mapeados en memoria (CsvMappedReader) detectando fin de fila y
+     * límites de campos en una sola pasada, y dejan lotes de filas en una cola
+     * acotada (si los workers van por detrás, los lectores se bloquean);
+     * config.threads workers decodifican solo las columnas que usan, construyen los
+     * Documents y escriben directamente en los IndexWriter (thread-safe). El orden
+     * entre bloques no se conserva.
+     *
+     * Un archivo comprimido no admite acceso aleatorio: se lee como un único
+     * bloque con un solo lector, alimentado por el hilo de descompresión; los
+     * offsets (checkpoint, cuarentena) son posiciones en el flujo descomprimido.
      */
-    private void procesarCSV(Logger logger) throws IOException {
+    private void procesarCSV(Logger logger) throws IOException, InterruptedException {
+        long inicioProcesado = System.currentTimeMillis();
+        ultimoCommit.set(inicioProcesado);
         Path csvPath = Paths.get(config.input);
         if (!Files.exists(csvPath)) {
             throw new IOException("Input no existe: " + csvPath.toAbsolutePath());
         }
 
         Charset charset = Charset.forName(config.encoding);
+        if (SnapshotColumnar.esSnapshot(csvPath)) {
+            abrirSnapshot(csvPath, logger);
+        }
+        EntradaComprimida.Formato compresion = snapshotEntrada != null ? null : EntradaComprimida.formato(csvPath);
+        if (compresion != null) {
+            logger.info("Entrada comprimida (" + compresion.name().toLowerCase()
+                    + "): descompresión en un hilo propio, un solo bloque");
+        }
 
-        try (BufferedReader br = Files.newBufferedReader(csvPath, charset)) {
-            // Leer cabecera
-            String headerLine = readCompleteCsvRow(br);
-            if (headerLine == null) {
-                logger.warn("Archivo vacío: " + csvPath);
-                return;
+        // Leer cabecera
+        long inicioDatos = 0;
+        if (snapshotEntrada == null) {
+            try (CsvMappedReader csv = abrirLector(csvPath, compresion, charset, 0)) {
+                CsvMappedReader.Row header = csv.next();
+                if (header == null) {
+                    logger.warn("Archivo vacío: " + csvPath);
+                    return;
+                }
+                parseHeader(header);
+                inicioDatos = csv.position();
+
+                boolean esCuarentena = Cuarentena.esCabecera(header);
+                if (config.replayQuarantine != null && !esCuarentena) {
+                    throw new IllegalArgumentException("No es un archivo de cuarentena: " + csvPath);
+                }
+                if (config.quarantineFile != null) {
+                    cuarentena = new Cuarentena(Paths.get(config.quarantineFile), charset, config.delimiter, header,
+                            esCuarentena, config.resume);
+                    logger.info("Cuarentena de filas rechazadas: " + config.quarantineFile);
+                }
             }
+        }
+        if (config.writeSnapshot != null) {
+            snapshotSalida = new SnapshotColumnar.Escritor(Paths.get(config.writeSnapshot), esquema.nombres(),
+                    esquema.usadas(), VERSION_HUELLA_PROPIEDAD, VERSION_HUELLA_HOST);
+            logger.info("Snapshot columnar: " + config.writeSnapshot + " (" + esquema.usadas().size()
+                    + " columnas tipadas)");
+        }
 
-            parseHeader(headerLine);
+        // Dividir el archivo en bloques parseables en paralelo. Al reanudar se usan
+        // los bloques del checkpoint, a los que se refiere el avance guardado
+        int numLectores = Math.max(1, config.parseThreads);
+        List<CsvChunker.Bloque> bloques = new ArrayList<>();
+        Map<String, String> checkpoint = config.resume ? leerCheckpoint(csvPath) : null;
+        if (checkpoint != null) {
+            for (String rango : checkpoint.get(CHECKPOINT_BLOQUES).split(",")) {
+                int guion = rango.indexOf('-');
+                bloques.add(new CsvChunker.Bloque(bloques.size(), Long.parseLong(rango.substring(0, guion)),
+                        Long.parseLong(rango.substring(guion + 1))));
+            }
+        } else if (snapshotEntrada != null) {
+            // Un bloque por grupo del snapshot; los "offsets" son números de fila
+            for (int g = 0; g < snapshotEntrada.numGrupos(); g++) {
+                long primera = snapshotEntrada.primeraFila(g);
+                bloques.add(new CsvChunker.Bloque(g, primera, primera + snapshotEntrada.filas(g)));
+            }
+        } else if (compresion != null) {
+            bloques.add(new CsvChunker.Bloque(0, inicioDatos, Long.MAX_VALUE));
+        } else {
+            CsvChunker.Division division = CsvChunker.dividir(csvPath, charset, config.delimiter, inicioDatos,
+                    esquema.size(), numLectores * BLOQUES_POR_LECTOR, TAMANO_MIN_BLOQUE);
+            for (long corte : division.cortesDescartados) {
+                logger.warn("No se pudo resincronizar el corte en offset " + corte
+                        + ": el bloque anterior absorbe esas filas");
+            }
+            bloques.addAll(division.bloques);
+        }
+        numLectores = Math.min(numLectores, bloques.size());
+        logger.info((snapshotEntrada != null ? "Grupos del snapshot: " : "Bloques CSV: ") + bloques.size()
+                + " (lectores: " + numLectores + ")");
+
+        // Avance por bloque para los checkpoints
+        checkpointBase.put(CHECKPOINT_INPUT, csvPath.toAbsolutePath().normalize().toString());
+        checkpointBase.put(CHECKPOINT_TAMANO, Long.toString(Files.size(csvPath)));
+        StringBuilder rangos = new StringBuilder();
+        for (CsvChunker.Bloque bloque : bloques) {
+            if (rangos.length() > 0) {
+                rangos.append(',');
+            }
+            rangos.append(bloque.inicio).append('-').append(bloque.fin);
+        }
+        checkpointBase.put(CHECKPOINT_BLOQUES, rangos.toString());
+        progreso = new ProgresoBloque[bloques.size()];
+        long filasPrevias = 0; // filas ya recorridas (numeración dentro de cada bloque)
+        if (checkpoint != null) {
+            String[] marcas = checkpoint.get(CHECKPOINT_PROGRESO).split(",");
+            for (int i = 0; i < progreso.length; i++) {
+                progreso[i] = ProgresoBloque.parse(marcas[i]);
+                filasPrevias += progreso[i].filas;
+                totalPropiedades.addAndGet((int) progreso[i].propiedades);
+                totalHosts.addAndGet((int) progreso[i].hosts);
+                errores.addAndGet((int) progreso[i].errores);
+            }
+            logger.info("Reanudando desde checkpoint: " + filasPrevias + " filas ya indexadas"
+                    + ("true".equals(checkpoint.get(CHECKPOINT_COMPLETO)) ? " (el CSV ya estaba completo)" : ""));
+        } else {
+            for (int i = 0; i < progreso.length; i++) {
+                progreso[i] = new ProgresoBloque(bloques.get(i).inicio);
+            }
+        }
 
-            // Procesar filas
-            String row;
-            int count = 0;
-            int commitCounter = 0;
+        int numWorkers = Math.max(1, config.threads);
+        BlockingQueue<LoteFilas> cola = new ArrayBlockingQueue<>(numWorkers * LOTES_POR_WORKER);
+        // Lotes reciclables: los que caben en la cola más uno en uso por cada hilo
+        int numLotes = numWorkers * LOTES_POR_WORKER + numWorkers + numLectores;
+        BlockingQueue<LoteFilas> libres = new ArrayBlockingQueue<>(numLotes);
+        for (int i = 0; i < numLotes; i++) {
+            libres.add(new LoteFilas(TAMANO_LOTE, snapshotEntrada != null, charset));
+        }
+        AtomicBoolean abortar = new AtomicBoolean(false);
+        AtomicReference<Throwable> fallo = new AtomicReference<>();
+        long erroresPrevios = errores.get();
+        AtomicInteger count = new AtomicInteger((int) (filasPrevias - erroresPrevios)); // filas sin error
+        AtomicInteger siguienteBloque = new AtomicInteger(0);
+
+        List<Thread> lectores = new ArrayList<>();
+        for (int i = 0; i < numLectores; i++) {
+            lectores.add(new Thread(
+                    () -> leerBloques(csvPath, compresion, charset, bloques, siguienteBloque, cola, libres, abortar,
+                            fallo, logger),
+                    "indexador-lector-" + i));
+        }
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            workers.add(new Thread(() -> consumirLotes(cola, libres, count, abortar, fallo, logger),
+                    "indexador-worker-" + i));
+        }
 
-            while ((row = readCompleteCsvRow(br)) != null) {
-                try {
-                    List<String> cols = parseCsvLine(row, config.delimiter);
-                    procesarFila(cols, logger);
-                    count++;
-                    commitCounter++;
-
-                    // Commit periódico
-                    if (commitCounter >= COMMIT_INTERVAL) {
-                        writerProperties.commit();
-                        writerHosts.commit();
-                        commitCounter = 0;
-                        logger.debug("Commit realizado. Propiedades: " + totalPropiedades.get() + ", Hosts: "
-                                + totalHosts.get());
-                    }
+        for (Thread lector : lectores) {
+            lector.start();
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread lector : lectores) {
+            lector.join();
+        }
+        // Todos los bloques leídos: una marca FIN por worker
+        for (int i = 0; i < numWorkers; i++) {
+            encolar(cola, LoteFilas.FIN, abortar);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
 
-                } catch (Exception e) {
-                    errores.incrementAndGet();
-                    logger.error("Error procesando fila " + count + ": " + e.getMessage());
+        Throwable error = fallo.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error != null) {
+            throw new RuntimeException(error);
+        }
 
-                    if (errores.get() > config.maxErrors) {
-                        throw new RuntimeException("Demasiados errores. Abortando.");
+        // Commit final del archivo
+        commitConCheckpoint(true);
+        if (snapshotSalida != null) {
+            snapshotSalida.close();
+            logger.info("Snapshot escrito: " + config.writeSnapshot + " (" + snapshotSalida.filas() + " filas, "
+                    + (snapshotSalida.bytes() >> 20) + " MB)");
+        }
+
+        filasProcesadas = count.get() - (int) (filasPrevias - erroresPrevios); // solo esta ejecución
+        tiempoProcesado = System.currentTimeMillis() - inicioProcesado;
+        logger.info("Archivo procesado: " + count.get() + " filas");
+    }
+
+    /**
+     * Lote de filas consecutivas de un bloque del CSV (límites de campos ya
+     * detectados, sin decodificar) que viaja de los lectores a los workers.
+     *
+     * Los lotes y sus Row se reciclan: el worker devuelve el lote a la cola de
+     * libres al terminarlo y el lector lo vuelve a llenar, así que en régimen
+     * estable leer filas no reserva memoria.
+     */
+    private static class LoteFilas {
+        static final LoteFilas FIN = new LoteFilas(0, false, null);
+
+        final CsvSchema.Valores[] filas; // las de crudas o las de guardadas
+        final CsvMappedReader.Row[] crudas; // filas del CSV (null si el input es un snapshot)
+        final SnapshotColumnar.Fila[] guardadas; // filas del snapshot (null si es un CSV)
+        int numFilas;
+        int bloque;
+        long primeraFila; // número de fila dentro del bloque (1 = primera)
+        long secuencia; // orden del lote dentro del bloque (desde 0 en cada ejecución)
+        long fin; // offset tras la última fila del lote
+
+        // Escrito por el worker que procesa el lote
+        int propiedades;
+        int hosts;
+        int errores;
+
+        /**
+         * @param snapshot true si las filas vienen de un snapshot columnar
+         */
+        LoteFilas(int capacidad, boolean snapshot, Charset charset) {
+            crudas = snapshot ? null : new CsvMappedReader.Row[capacidad];
+            guardadas = snapshot ? new SnapshotColumnar.Fila[capacidad] : null;
+            filas = snapshot ? guardadas : crudas;
+            for (int i = 0; i < capacidad; i++) {
+                if (snapshot) {
+                    guardadas[i] = new SnapshotColumnar.Fila();
+                } else {
+                    crudas[i] = new CsvMappedReader.Row(charset);
+                }
+            }
+        }
+
+        /**
+         * Offset de la fila i en el CSV (en un snapshot, su número de fila)
+         */
+        long offset(int i) {
+            return crudas != null ? crudas[i].offset() : guardadas[i].offset();
+        }
+
+        /**
+         * Prepara un lote reciclado para las filas de 'bloque' desde primeraFila
+         */
+        void iniciar(int bloque, long primeraFila) {
+            this.bloque = bloque;
+            this.primeraFila = primeraFila;
+            numFilas = 0;
+            propiedades = 0;
+            hosts = 0;
+            errores = 0;
+        }
+    }
+
+    /**
+     * Hilo lector: toma bloques pendientes, agrupa sus filas en lotes y los encola
+     */
+    private void leerBloques(Path csvPath, EntradaComprimida.Formato compresion, Charset charset,
+            List<CsvChunker.Bloque> bloques,
+            AtomicInteger siguienteBloque, BlockingQueue<LoteFilas> cola, BlockingQueue<LoteFilas> libres,
+            AtomicBoolean abortar, AtomicReference<Throwable> fallo, Logger logger) {
+        try {
+            // Filas de este hilo para el snapshot (--write-snapshot)
+            SnapshotColumnar.Grupo grupo = snapshotSalida != null ? snapshotSalida.nuevoGrupo() : null;
+            int i;
+            while (!abortar.get() && (i = siguienteBloque.getAndIncrement()) < bloques.size()) {
+                if (snapshotEntrada != null) {
+                    leerGrupo(bloques.get(i), cola, libres, abortar);
+                } else {
+                    leerBloque(csvPath, compresion, charset, bloques.get(i), cola, libres, abortar, grupo, logger);
+                }
+            }
+            if (grupo != null && !abortar.get()) {
+                snapshotSalida.escribir(grupo);
+            }
+        } catch (Throwable t) {
+            fallo.compareAndSet(null, t);
+            abortar.set(true);
+        }
+    }
+
+    private void leerBloque(Path csvPath, EntradaComprimida.Formato compresion, Charset charset,
+            CsvChunker.Bloque bloque, BlockingQueue<LoteFilas> cola, BlockingQueue<LoteFilas> libres,
+            AtomicBoolean abortar, SnapshotColumnar.Grupo grupo, Logger logger)
+            throws IOException, InterruptedException {
+        // El lector no se limita a bloque.fin: la última fila del bloque se lee
+        // completa aunque el corte hubiera caído dentro de ella
+        EventosJfr.BloqueCsvParseado evento = new EventosJfr.BloqueCsvParseado();
+        evento.begin();
+        try (CsvMappedReader csv = abrirLector(csvPath, compresion, charset, bloque.inicio)) {
+            // Al reanudar, las filas anteriores al checkpoint ya están indexadas: solo
+            // se marcan sus ids de listing como vistos (duplicados y listings ausentes)
+            ProgresoBloque avance = progreso[bloque.indice];
+            if (avance.offset > bloque.inicio) {
+                CsvMappedReader.Row row = new CsvMappedReader.Row(charset);
+                while (!abortar.get() && csv.position() < avance.offset && csv.next(row)) {
+                    marcarVistos(row);
+                }
+            }
+            long primeraFila = avance.filas + 1;
+            long secuencia = 0;
+            long posicionMedida = csv.position(); // bytes ya contados en las métricas
+            long filasLeidas = 0;
+            LoteFilas lote = null;
+            while (!abortar.get() && csv.position() < bloque.fin) {
+                if (lote == null) {
+                    lote = libres.poll(ESPERA_COLA_MS, TimeUnit.MILLISECONDS);
+                    if (lote == null) {
+                        continue;
+                    }
+                    lote.iniciar(bloque.indice, primeraFila);
+                }
+                long t = System.nanoTime();
+                CsvMappedReader.Row fila = lote.crudas[lote.numFilas];
+                if (!csv.next(fila)) {
+                    break;
+                }
+                metricas.medir(MetricasIndexacion.Etapa.LECTURA, t);
+                filasLeidas++;
+                if (grupo != null) {
+                    grupo.anadir(fila, huellaPropiedad(fila), huellaHost(fila));
+                    if (grupo.lleno()) {
+                        snapshotSalida.escribir(grupo);
                     }
                 }
+                if (++lote.numFilas == TAMANO_LOTE) {
+                    lote.secuencia = secuencia++;
+                    lote.fin = csv.position();
+                    metricas.bytes(lote.fin - posicionMedida);
+                    posicionMedida = lote.fin;
+                    encolar(cola, lote, abortar);
+                    primeraFila += TAMANO_LOTE;
+                    lote = null;
+                }
+            }
+            if (lote != null) {
+                if (lote.numFilas > 0) {
+                    lote.secuencia = secuencia;
+                    lote.fin = csv.position();
+                    metricas.bytes(lote.fin - posicionMedida);
+                    encolar(cola, lote, abortar);
+                } else {
+                    libres.offer(lote);
+                }
+            }
+            if (!abortar.get() && csv.position() > bloque.fin) {
+                logger.warn("El " + bloque + " termina en offset " + csv.position()
+                        + ": las filas entre " + bloque.fin + " y " + csv.position()
+                        + " no se resincronizaron y pueden procesarse dos veces");
             }
+            if (evento.shouldCommit()) {
+                evento.bloque = bloque.indice;
+                evento.inicio = bloque.inicio;
+                evento.fin = csv.position();
+                evento.filas = filasLeidas;
+                evento.bytes = csv.position() - bloque.inicio;
+                evento.commit();
+            }
+        }
+    }
 
-            // Commit final del archivo
-            writerProperties.commit();
-            writerHosts.commit();
+    /**
+     * Reparte en lotes las filas de un grupo del snapshot de entrada (bloque.inicio
+     * y bloque.fin son números de fila). Las filas solo apuntan al grupo mapeado:
+     * no se lee ni se copia nada hasta que el worker pide cada valor.
+     */
+    private void leerGrupo(CsvChunker.Bloque bloque, BlockingQueue<LoteFilas> cola, BlockingQueue<LoteFilas> libres,
+            AtomicBoolean abortar) throws IOException, InterruptedException {
+        EventosJfr.BloqueCsvParseado evento = new EventosJfr.BloqueCsvParseado();
+        evento.begin();
+        SnapshotColumnar.GrupoMapeado grupo = snapshotEntrada.grupo(bloque.indice);
+        long bytesPorFila = snapshotEntrada.bytes(bloque.indice) / Math.max(1, grupo.filas());
+        long fila = bloque.inicio;
+
+        // Al reanudar, marcar como vistas las filas ya indexadas (como leerBloque)
+        ProgresoBloque avance = progreso[bloque.indice];
+        if (avance.offset > fila) {
+            SnapshotColumnar.Fila vista = new SnapshotColumnar.Fila();
+            for (; !abortar.get() && fila < avance.offset; fila++) {
+                vista.apuntar(grupo, (int) (fila - bloque.inicio), fila);
+                marcarVistos(vista);
+            }
+        }
+        long primeraFila = avance.filas + 1;
+        long secuencia = 0;
+        LoteFilas lote = null;
+        while (!abortar.get() && fila < bloque.fin) {
+            if (lote == null) {
+                lote = libres.poll(ESPERA_COLA_MS, TimeUnit.MILLISECONDS);
+                if (lote == null) {
+                    continue;
+                }
+                lote.iniciar(bloque.indice, primeraFila);
+            }
+            long t = System.nanoTime();
+            lote.guardadas[lote.numFilas].apuntar(grupo, (int) (fila - bloque.inicio), fila);
+            fila++;
+            metricas.medir(MetricasIndexacion.Etapa.LECTURA, t);
+            if (++lote.numFilas == TAMANO_LOTE || fila == bloque.fin) {
+                lote.secuencia = secuencia++;
+                lote.fin = fila;
+                metricas.bytes(lote.numFilas * bytesPorFila);
+                encolar(cola, lote, abortar);
+                primeraFila += lote.numFilas;
+                lote = null;
+            }
+        }
+        if (lote != null) {
+            libres.offer(lote);
+        }
+        if (evento.shouldCommit()) {
+            evento.bloque = bloque.indice;
+            evento.inicio = bloque.inicio;
+            evento.fin = fila;
+            evento.filas = fila - bloque.inicio;
+            evento.bytes = snapshotEntrada.bytes(bloque.indice);
+            evento.commit();
+        }
+    }
 
-            logger.info("Archivo procesado: " + count + " filas");
+    /**
+     * Abre un snapshot como input: el esquema sale de la cabecera guardada y se
+     * comprueba que el snapshot tiene todas las columnas que se leen, con su tipo
+     */
+    private void abrirSnapshot(Path path, Logger logger) throws IOException {
+        if (config.quarantineFile != null || config.replayQuarantine != null) {
+            throw new IllegalArgumentException("Un snapshot no conserva las filas crudas: no admite --quarantine "
+                    + "ni --replay-quarantine");
+        }
+        snapshotEntrada = new SnapshotColumnar.Lector(path);
+        huellasPropiedadObsoletas = snapshotEntrada.versionHuellaPropiedad() != VERSION_HUELLA_PROPIEDAD;
+        huellasHostObsoletas = snapshotEntrada.versionHuellaHost() != VERSION_HUELLA_HOST;
+        if (huellasPropiedadObsoletas || huellasHostObsoletas) {
+            logger.warn("El snapshot " + path + " es de otra versión de las huellas: se indexa sin ellas y el "
+                    + "siguiente --mode update reescribirá esos documentos una vez (regenerarlo con --write-snapshot "
+                    + "lo evita)");
         }
+        esquema = new CsvSchema(snapshotEntrada.cabecera());
+        columnas = new Columnas(esquema, config.idField);
+        List<CsvSchema.Columna> guardadas = snapshotEntrada.columnas();
+        for (CsvSchema.Columna c : esquema.usadas()) {
+            if (!guardadas.contains(c)) {
+                throw new IllegalArgumentException("El snapshot " + path + " no tiene la columna "
+                        + esquema.nombres()[c.slot] + " (" + c.tipo.name().toLowerCase()
+                        + "): regenerarlo desde el CSV con --write-snapshot");
+            }
+        }
+        logger.info("Input: snapshot columnar (" + snapshotEntrada.filas() + " filas en "
+                + snapshotEntrada.numGrupos() + " grupos), sin parseo de CSV");
     }
 
     /**
-     * Lee una fila CSV completa que puede abarcar múltiples líneas.
-     * Acumula líneas hasta que todas las comillas estén cerradas.
+     * Lector desde el offset 'inicio' (hasta el final del archivo), mapeado en
+     * memoria o, si el archivo está comprimido, sobre el flujo descomprimido
      */
-    private String readCompleteCsvRow(BufferedReader br) throws IOException {
-        String line = br.readLine();
-        if (line == null)
-            return null;
+    private CsvMappedReader abrirLector(Path csvPath, EntradaComprimida.Formato compresion, Charset charset,
+            long inicio) throws IOException {
+        if (compresion == null) {
+            return new CsvMappedReader(csvPath, charset, config.delimiter, inicio, -1);
+        }
+        return new CsvMappedReader(EntradaComprimida.abrir(csvPath, compresion), charset, config.delimiter, inicio);
+    }
 
-        // Si no hay comillas, es una fila simple de una línea
-        int quoteCount = countUnescapedQuotes(line);
-        if (quoteCount % 2 == 0) {
-            return line;
+    /**
+     * Marca como visto el listing de una fila indexada en una ejecución anterior
+     * (mismas reglas que procesarFila). Los hosts vistos salen del índice de
+     * hosts (cargarHostsIndexados), no de estas filas
+     */
+    private void marcarVistos(CsvSchema.Valores cols) {
+        long idNum = columnas.idLargo.get(cols);
+        if (idNum != CsvSchema.Largo.SIN_VALOR) {
+            listingsVistos.add(idNum);
+        } else {
+            String idStr = columnas.id.get(cols);
+            if (idStr != null && !idStr.isBlank()) {
+                listingsVistosNoNumericos.add(idStr.trim());
+            }
+        }
+    }
+
+    /**
+     * Avance de un bloque del CSV para el checkpoint: offset hasta el que todas
+     * las filas están escritas en los IndexWriter, número de filas y contadores
+     * de esas filas. Varios workers terminan lotes del mismo bloque en cualquier
+     * orden; los que llegan adelantados esperan en pendientes hasta que se
+     * completa el hueco.
+     */
+    private static class ProgresoBloque {
+        long offset;
+        long filas;
+        long propiedades;
+        long hosts;
+        long errores;
+
+        private long siguiente; // secuencia del lote que extiende el avance
+        private final TreeMap<Long, long[]> pendientes = new TreeMap<>();
+
+        ProgresoBloque(long offset) {
+            this.offset = offset;
         }
 
-        // Hay comillas sin cerrar, acumular líneas hasta cerrar todas las comillas
-        StringBuilder row = new StringBuilder(line);
-        while (quoteCount % 2 != 0) {
-            line = br.readLine();
-            if (line == null) {
-                // Fin de archivo sin cerrar comillas - devolver lo que tenemos
-                break;
+        synchronized void completar(long secuencia, long fin, long filas, long propiedades, long hosts,
+                long errores) {
+            pendientes.put(secuencia, new long[] { fin, filas, propiedades, hosts, errores });
+            long[] lote;
+            while ((lote = pendientes.remove(siguiente)) != null) {
+                this.offset = lote[0];
+                this.filas += lote[1];
+                this.propiedades += lote[2];
+                this.hosts += lote[3];
+                this.errores += lote[4];
+                siguiente++;
             }
-            row.append('\n').append(line);
-            quoteCount += countUnescapedQuotes(line);
         }
 
-        return row.toString();
+        /**
+         * offset:filas:propiedades:hosts:errores
+         */
+        synchronized String serializar() {
+            return offset + ":" + filas + ":" + propiedades + ":" + hosts + ":" + errores;
+        }
+
+        static ProgresoBloque parse(String s) {
+            String[] partes = s.split(":");
+            ProgresoBloque p = new ProgresoBloque(Long.parseLong(partes[0]));
+            p.filas = Long.parseLong(partes[1]);
+            p.propiedades = Long.parseLong(partes[2]);
+            p.hosts = Long.parseLong(partes[3]);
+            p.errores = Long.parseLong(partes[4]);
+            return p;
+        }
     }
 
     /**
-     * Cuenta comillas no escapadas en una línea (ignora comillas escapadas "")
+     * Encola un lote esperando mientras la cola esté llena (backpressure), salvo
+     * que se aborte el proceso
      */
-    private int countUnescapedQuotes(String line) {
-        if (line == null)
-            return 0;
-        int count = 0;
-        for (int i = 0; i < line.length(); i++) {
-            if (line.charAt(i) == '"') {
-                // Verificar si es una comilla escapada (dos comillas consecutivas)
-                if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    i++; // Saltar la siguiente comilla también
-                } else {
-                    count++;
+    private static void encolar(BlockingQueue<LoteFilas> cola, LoteFilas lote, AtomicBoolean abortar)
+            throws InterruptedException {
+        while (!abortar.get()) {
+            if (cola.offer(lote, ESPERA_COLA_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Worker: parsea cada fila del lote, construye los documentos y los escribe en
+     * los índices
+     */
+    private void consumirLotes(BlockingQueue<LoteFilas> cola, BlockingQueue<LoteFilas> libres, AtomicInteger count,
+            AtomicBoolean abortar, AtomicReference<Throwable> fallo, Logger logger) {
+        // Plantillas de documento propias del worker
+        EstadoWorker w = new EstadoWorker(new LoteDocumentos(bulk && !ordenado ? DOCS_POR_ADD : 1, conOffsets));
+        try {
+            while (!abortar.get()) {
+                LoteFilas lote = cola.poll(ESPERA_COLA_MS, TimeUnit.MILLISECONDS);
+                if (lote == null) {
+                    continue;
+                }
+                if (lote == LoteFilas.FIN) {
+                    return;
+                }
+
+                w.lote = lote;
+                long numFila = lote.primeraFila;
+                for (int i = 0; i < lote.numFilas; i++) {
+                    CsvSchema.Valores cols = lote.filas[i];
+                    if (abortar.get()) {
+                        return;
+                    }
+                    w.fila = i;
+                    try {
+                        procesarFila(cols, w, logger);
+                    } catch (Exception e) {
+                        int totalErrores = errores.incrementAndGet();
+                        lote.errores++;
+                        logger.error("Error procesando fila " + numFila + " del bloque " + lote.bloque
+                                + " (offset " + lote.offset(i) + "): " + e.getMessage());
+                        if (cuarentena != null) {
+                            // Sin cuarentena con un snapshot de entrada: siempre hay fila cruda
+                            cuarentena.registrar(lote.crudas[i], lote.bloque, numFila, e);
+                        }
+
+                        if (totalErrores > config.maxErrors) {
+                            fallo.compareAndSet(null, new RuntimeException("Demasiados errores. Abortando."));
+                            abortar.set(true);
+                            return;
+                        }
+                        numFila++;
+                        continue;
+                    }
+                    numFila++;
+                    count.incrementAndGet();
                 }
+                // El lote cuenta para el checkpoint solo cuando todos sus documentos
+                // están en el IndexWriter
+                escribirLote(w, logger);
+                progreso[lote.bloque].completar(lote.secuencia, lote.fin, lote.numFilas, lote.propiedades,
+                        lote.hosts, lote.errores);
+                // Commit periódico por tiempo (una comprobación por lote de filas)
+                commitSiProcede(logger);
+                // Los Documents ya no referencian la fila: el lote puede reutilizarse
+                libres.offer(lote);
             }
+        } catch (Throwable t) {
+            fallo.compareAndSet(null, t);
+            abortar.set(true);
         }
-        return count;
     }
 
     /**
      * Parsea la cabecera del CSV
      */
-    private void parseHeader(String header) {
-        List<String> cols = parseCsvLine(header, config.delimiter);
-        headerIndex.clear();
-        for (int i = 0; i < cols.size(); i++) {
-            headerIndex.put(cols.get(i), i);
+    private void parseHeader(CsvMappedReader.Row header) {
+        esquema = new CsvSchema(header);
+        columnas = new Columnas(esquema, config.idField);
+    }
+
+    /**
+     * Accesores tipados de las columnas que se indexan, compilados una sola vez a
+     * partir de la cabecera (ver CsvSchema)
+     */
+    private static class Columnas {
+        final CsvSchema.Texto id;
+        final CsvSchema.Entero idNumerico;
+        final CsvSchema.Largo idLargo;
+        final CsvSchema.Texto hostSinceTexto;
+        final CsvSchema.Largo hostIdNumerico;
+        final CsvSchema.Texto listingUrl;
+        final CsvSchema.Texto name;
+        final CsvSchema.Texto description;
+        final CsvSchema.Texto neighborhoodOverview;
+        final CsvSchema.Texto neighbourhoodCleansed;
+        final CsvSchema.Texto neighbourhoodGroupCleansed;
+        final CsvSchema.Decimal latitude;
+        final CsvSchema.Decimal longitude;
+        final CsvSchema.Texto propertyType;
+        final CsvSchema.Texto amenities;
+        final CsvSchema.Precio price;
+        final CsvSchema.Entero numberOfReviews;
+        final CsvSchema.Decimal reviewScoresRating;
+        final CsvSchema.Decimal bathrooms;
+        final CsvSchema.Texto bathroomsText;
+        final CsvSchema.Entero bedrooms;
+        final CsvSchema.Texto hostId;
+        final CsvSchema.Texto hostUrl;
+        final CsvSchema.Texto hostName;
+        final CsvSchema.Fecha hostSince;
+        final CsvSchema.Texto hostLocation;
+        final CsvSchema.Texto hostNeighbourhood;
+        final CsvSchema.Texto hostAbout;
+        final CsvSchema.Texto hostResponseTime;
+        final CsvSchema.Flag hostIsSuperhost;
+
+        Columnas(CsvSchema esquema, String idField) {
+            id = esquema.texto(idField);
+            idNumerico = esquema.entero(idField);
+            idLargo = esquema.largo(idField);
+            hostSinceTexto = esquema.texto("host_since");
+            hostIdNumerico = esquema.largo("host_id");
+            listingUrl = esquema.texto("listing_url");
+            name = esquema.texto("name");
+            description = esquema.texto("description");
+            neighborhoodOverview = esquema.texto("neighborhood_overview");
+            neighbourhoodCleansed = esquema.texto("neighbourhood_cleansed");
+            neighbourhoodGroupCleansed = esquema.texto("neighbourhood_group_cleansed");
+            latitude = esquema.decimal("latitude");
+            longitude = esquema.decimal("longitude");
+            propertyType = esquema.texto("property_type");
+            amenities = esquema.texto("amenities");
+            price = esquema.precio("price");
+            numberOfReviews = esquema.entero("number_of_reviews");
+            reviewScoresRating = esquema.decimal("review_scores_rating");
+            bathrooms = esquema.decimal("bathrooms");
+            bathroomsText = esquema.texto("bathrooms_text");
+            bedrooms = esquema.entero("bedrooms");
+            hostId = esquema.texto("host_id");
+            hostUrl = esquema.texto("host_url");
+            hostName = esquema.texto("host_name");
+            hostSince = esquema.fecha("host_since");
+            hostLocation = esquema.texto("host_location");
+            hostNeighbourhood = esquema.texto("host_neighbourhood");
+            hostAbout = esquema.texto("host_about");
+            hostResponseTime = esquema.texto("host_response_time");
+            hostIsSuperhost = esquema.flag("host_is_superhost");
         }
     }
 
     /**
      * Procesa una fila del CSV: crea documentos para propiedades y hosts
      */
-    private void procesarFila(List<String> cols, Logger logger) throws IOException {
-        if (cols == null || cols.isEmpty())
+    private void procesarFila(CsvSchema.Valores cols, EstadoWorker w, Logger logger) throws IOException {
+        if (cols == null || cols.size() == 0)
             return;
+        long t = System.nanoTime();
 
         // Extraer ID de propiedad (obligatorio)
-        String idStr = get(cols, config.idField);
+        String idStr = columnas.id.get(cols);
         if (idStr == null || idStr.isBlank()) {
             throw new IllegalArgumentException("Campo 'id' obligatorio faltante");
         }
 
+        idStr = idStr.trim();
+
+        // Marcar el listing como visto antes de construir el documento, para que un
+        // error en la fila no lo haga desaparecer del índice en update
+        long idNum = columnas.idLargo.get(cols);
+        boolean listingNuevo = idNum != CsvSchema.Largo.SIN_VALOR ? listingsVistos.add(idNum)
+                : listingsVistosNoNumericos.add(idStr);
+
+        // Id repetido en el CSV: se conserva la primera fila que lo marca como visto.
+        // Bulk: el documento ya se añadió (o está en el lote de otro worker), así
+        // que no hay upsert posible. Update: la primera fila de un id nuevo se añade
+        // sin borrado previo, y un updateDocument de la repetida aplicado antes que
+        // ese add dejaría dos documentos vivos. Upsert: las repeticiones de bloques
+        // distintos se escribirían en paralelo y ganaría la última en aplicarse
+        if (!listingNuevo) {
+            listingsDuplicados.incrementAndGet();
+            if (logger.debugActivo()) {
+                logger.debug("Listing ID=" + idStr + " repetido en el CSV, se omite");
+            }
+            procesarHost(cols, w, logger);
+            return;
+        }
+
+        // Update: omitir listings sin cambios; los que no estaban en el índice se
+        // añaden sin borrado previo
+        long huellaPropiedad = huellaPropiedad(w.lote, w.fila);
+        boolean anadir = false;
+        if (huellasListings != null) {
+            long anterior = idNum != CsvSchema.Largo.SIN_VALOR ? huellasListings.get(idNum, HUELLA_AUSENTE)
+                    : huellasListingsNoNumericos.getOrDefault(idStr, HUELLA_AUSENTE);
+            if (anterior == huellaPropiedad && huellaPropiedad != HUELLA_DESCONOCIDA) {
+                listingsSinCambios.incrementAndGet();
+                metricas.medir(MetricasIndexacion.Etapa.PARSEO, t);
+                procesarHost(cols, w, logger);
+                return;
+            }
+            if (anterior == HUELLA_AUSENTE) {
+                listingsNuevos.incrementAndGet();
+                anadir = true;
+            } else {
+                listingsModificados.incrementAndGet();
+            }
+        }
+
         // Crear documento de propiedad
-        Document docProperty = crearDocumentoPropiedad(cols);
+        t = metricas.medir(MetricasIndexacion.Etapa.PARSEO, t);
+        EventosJfr.DocumentoConstruido evento = new EventosJfr.DocumentoConstruido();
+        evento.begin();
+        Document docProperty = crearDocumentoPropiedad(cols, w.docs.plantilla(), idStr, huellaPropiedad);
+        t = metricas.medir(MetricasIndexacion.Etapa.DOCUMENTO, t);
         if (docProperty != null) {
-            // Upsert por ID
-            Term termId = new Term("id", idStr);
             // Construir facetas
-            Document docBuilt = facetsConfig.build(taxoWriterProperties, docProperty);
+            Document docBuilt = construirFacetas(taxoWriterProperties, docProperty);
+            t = metricas.medir(MetricasIndexacion.Etapa.FACETAS, t);
+            if (evento.shouldCommit()) {
+                evento.tipo = "propiedad";
+                evento.id = idStr;
+                evento.commit();
+            }
+
+            if (config.dryRun) {
+                if (logger.debugActivo()) {
+                    logger.debug("DRY-RUN: Upsert propiedad ID=" + idStr);
+                }
+            } else if (bulk) {
+                w.docs.anadir(docBuilt, idStr, w.fila);
+                if (w.docs.lleno()) {
+                    escribirLote(w, logger);
+                }
+            } else if (anadir) {
+                writerProperties.addDocument(docBuilt);
+                metricas.medir(MetricasIndexacion.Etapa.ESCRITURA, t);
+                metricas.documentos(1);
+                totalPropiedades.incrementAndGet();
+                w.lote.propiedades++;
+            } else {
+                // Upsert por ID
+                writerProperties.updateDocument(new Term("id", idStr), docBuilt);
+                metricas.medir(MetricasIndexacion.Etapa.ESCRITURA, t);
+                metricas.documentos(1);
+                totalPropiedades.incrementAndGet();
+                w.lote.propiedades++;
+            }
+        }
+
+        procesarHost(cols, w, logger);
+    }
+
+    /**
+     * Escribe el host de la fila si es la primera vez que aparece en esta sesión
+     * (y, en update, si ha cambiado)
+     */
+    private void procesarHost(CsvSchema.Valores cols, EstadoWorker w, Logger logger) throws IOException {
+
+        // Verificar si ya procesamos este host en esta sesión (add atómico: solo
+        // un worker escribe cada host aunque dos filas lleguen a la vez). El host_id
+        // numérico se comprueba sin decodificar la columna.
+        boolean hostNuevo;
+        long hostIdNum = columnas.hostIdNumerico.get(cols);
+        if (hostIdNum != CsvSchema.Largo.SIN_VALOR) {
+            hostNuevo = hostsVistos.add(hostIdNum);
+        } else {
+            // host_id obligatorio para hosts
+            String hostIdTexto = columnas.hostId.get(cols);
+            hostNuevo = hostIdTexto != null && !hostIdTexto.isBlank() && hostsVistosNoNumericos.add(hostIdTexto);
+        }
+        if (hostNuevo) {
+            // Update: omitir hosts cuyo contenido no ha cambiado desde la última
+            // indexación
+            long huella = huellaHost(w.lote, w.fila);
+            if (huellasHosts != null && huella != HUELLA_DESCONOCIDA && huellaAnterior(cols, hostIdNum) == huella) {
+                hostsSinCambios.incrementAndGet();
+                return;
+            }
+
+            EventosJfr.DocumentoConstruido evento = new EventosJfr.DocumentoConstruido();
+            evento.begin();
+            long t = System.nanoTime();
+            Document docHost = crearDocumentoHost(cols, w.plantillaHost, huella);
+            t = metricas.medir(MetricasIndexacion.Etapa.DOCUMENTO, t);
+            if (docHost != null) {
+                String hostId = w.plantillaHost.hostId.stringValue();
+                // Construir facetas
+                Document docBuilt = construirFacetas(taxoWriterHosts, docHost);
+                t = metricas.medir(MetricasIndexacion.Etapa.FACETAS, t);
+                if (evento.shouldCommit()) {
+                    evento.tipo = "host";
+                    evento.id = hostId;
+                    evento.commit();
+                }
+
+                if (config.dryRun) {
+                    if (logger.debugActivo()) {
+                        logger.debug("DRY-RUN: Upsert host ID=" + hostId);
+                    }
+                } else {
+                    if (bulk) {
+                        // hostsVistos garantiza una sola escritura por host
+                        writerHosts.addDocument(docBuilt);
+                    } else {
+                        Term termHostId = new Term("host_id", hostId);
+                        writerHosts.updateDocument(termHostId, docBuilt);
+                    }
+                    metricas.medir(MetricasIndexacion.Etapa.ESCRITURA, t);
+                    metricas.documentos(1);
+                    totalHosts.incrementAndGet();
+                    w.lote.hosts++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe los documentos pendientes del lote con un solo addDocuments. Si un
+     * documento es inválido IndexWriter descarta el lote entero, así que se
+     * reintenta documento a documento para perder solo el erróneo.
+     */
+    private void escribirLote(EstadoWorker w, Logger logger) throws IOException {
+        LoteDocumentos lote = w.docs;
+        if (lote.docs.isEmpty()) {
+            return;
+        }
+        try {
+            long t = System.nanoTime();
+            if (lote.docs.size() == 1) {
+                writerProperties.addDocument(lote.docs.get(0));
+            } else {
+                writerProperties.addDocuments(lote.docs);
+            }
+            metricas.medir(MetricasIndexacion.Etapa.ESCRITURA, t);
+            metricas.documentos(lote.docs.size());
+            totalPropiedades.addAndGet(lote.docs.size());
+            w.lote.propiedades += lote.docs.size();
+        } catch (IllegalArgumentException e) {
+            for (int i = 0; i < lote.docs.size(); i++) {
+                try {
+                    writerProperties.addDocument(lote.docs.get(i));
+                    totalPropiedades.incrementAndGet();
+                    w.lote.propiedades++;
+                } catch (IllegalArgumentException e2) {
+                    errores.incrementAndGet();
+                    w.lote.errores++;
+                    logger.error("Error escribiendo propiedad ID=" + lote.ids[i] + ": " + e2.getMessage());
+                    if (cuarentena != null) {
+                        int fila = lote.filas[i];
+                        cuarentena.registrar(w.lote.crudas[fila], w.lote.bloque, w.lote.primeraFila + fila, e2);
+                    }
+                }
+            }
+            if (errores.get() > config.maxErrors) {
+                throw new RuntimeException("Demasiados errores. Abortando.");
+            }
+        } finally {
+            lote.docs.clear();
+        }
+    }
+
+    /**
+     * Estado propio de cada worker: plantillas de documento y lote de filas en
+     * curso (al que se atribuyen los documentos escritos, para el checkpoint)
+     */
+    private static class EstadoWorker {
+        final LoteDocumentos docs;
+        final PlantillaHost plantillaHost = new PlantillaHost();
+        LoteFilas lote;
+        int fila; // posición en el lote de la fila en curso
+
+        EstadoWorker(LoteDocumentos docs) {
+            this.docs = docs;
+        }
+    }
+
+    /**
+     * Documentos de propiedad de un worker pendientes de escribir. En modo bulk se
+     * acumulan hasta DOCS_POR_ADD (o hasta el final del lote de filas) y se
+     * escriben con un addDocuments; como
+     * IndexWriter no consume los Field hasta entonces, cada documento del lote
+     * usa su propia plantilla. Fuera de bulk tiene una sola plantilla y nunca
+     * acumula documentos.
+     */
+    private static class LoteDocumentos {
+        final PlantillaPropiedad[] plantillas;
+        final String[] ids;
+        final int[] filas; // posición de cada documento en el lote de filas
+        final List<Document> docs;
+
+        LoteDocumentos(int capacidad, boolean offsets) {
+            plantillas = new PlantillaPropiedad[capacidad];
+            for (int i = 0; i < capacidad; i++) {
+                plantillas[i] = new PlantillaPropiedad(offsets);
+            }
+            ids = new String[capacidad];
+            filas = new int[capacidad];
+            docs = new ArrayList<>(capacidad);
+        }
+
+        /**
+         * Plantilla libre para el siguiente documento
+         */
+        PlantillaPropiedad plantilla() {
+            return plantillas[docs.size()];
+        }
+
+        void anadir(Document doc, String id, int fila) {
+            ids[docs.size()] = id;
+            filas[docs.size()] = fila;
+            docs.add(doc);
+        }
+
+        boolean lleno() {
+            return docs.size() == plantillas.length;
+        }
+    }
+
+    /**
+     * Huella de la fila i del lote: calculada de la fila del CSV o, con un
+     * snapshot de entrada, la guardada en él (HUELLA_DESCONOCIDA si es de otra
+     * versión)
+     */
+    private long huellaPropiedad(LoteFilas lote, int i) {
+        if (lote.crudas != null) {
+            return huellaPropiedad(lote.crudas[i]);
+        }
+        return huellasPropiedadObsoletas ? HUELLA_DESCONOCIDA : lote.guardadas[i].huellaPropiedad();
+    }
+
+    private long huellaHost(LoteFilas lote, int i) {
+        if (lote.crudas != null) {
+            return huellaHost(lote.crudas[i]);
+        }
+        return huellasHostObsoletas ? HUELLA_DESCONOCIDA : lote.guardadas[i].huellaHost();
+    }
+
+    /**
+     * Huella de contenido de un listing: hash de los bytes crudos de todas las
+     * columnas que se indexan en el documento de propiedad
+     */
+    private long huellaPropiedad(CsvMappedReader.Row cols) {
+        long h = CsvMappedReader.Row.HASH_INICIAL ^ VERSION_HUELLA_PROPIEDAD;
+        h = cols.hash(columnas.id.slot, h);
+        h = cols.hash(columnas.listingUrl.slot, h);
+        h = cols.hash(columnas.name.slot, h);
+        h = cols.hash(columnas.description.slot, h);
+        h = cols.hash(columnas.neighborhoodOverview.slot, h);
+        h = cols.hash(columnas.neighbourhoodCleansed.slot, h);
+        h = cols.hash(columnas.neighbourhoodGroupCleansed.slot, h);
+        h = cols.hash(columnas.latitude.slot, h);
+        h = cols.hash(columnas.longitude.slot, h);
+        h = cols.hash(columnas.propertyType.slot, h);
+        h = cols.hash(columnas.amenities.slot, h);
+        h = cols.hash(columnas.price.slot, h);
+        h = cols.hash(columnas.numberOfReviews.slot, h);
+        h = cols.hash(columnas.reviewScoresRating.slot, h);
+        h = cols.hash(columnas.bathrooms.slot, h);
+        h = cols.hash(columnas.bathroomsText.slot, h);
+        h = cols.hash(columnas.bedrooms.slot, h);
+        h = cols.hash(columnas.hostId.slot, h);
+        return h == HUELLA_DESCONOCIDA || h == HUELLA_AUSENTE ? 1 : h;
+    }
+
+    /**
+     * Huella de contenido de un host: hash de los bytes crudos de todas las
+     * columnas de host que se indexan
+     */
+    private long huellaHost(CsvMappedReader.Row cols) {
+        long h = CsvMappedReader.Row.HASH_INICIAL ^ VERSION_HUELLA_HOST;
+        h = cols.hash(columnas.hostId.slot, h);
+        h = cols.hash(columnas.hostUrl.slot, h);
+        h = cols.hash(columnas.hostName.slot, h);
+        h = cols.hash(columnas.hostSince.slot, h);
+        h = cols.hash(columnas.hostLocation.slot, h);
+        h = cols.hash(columnas.hostNeighbourhood.slot, h);
+        h = cols.hash(columnas.hostAbout.slot, h);
+        h = cols.hash(columnas.hostResponseTime.slot, h);
+        h = cols.hash(columnas.hostIsSuperhost.slot, h);
+        return h == HUELLA_DESCONOCIDA ? 1 : h;
+    }
+
+    /**
+     * Huella con la que el host está en el índice (modo update), o
+     * HUELLA_DESCONOCIDA si es nuevo
+     */
+    private long huellaAnterior(CsvSchema.Valores cols, long hostIdNum) {
+        if (hostIdNum != CsvSchema.Largo.SIN_VALOR) {
+            return huellasHosts.get(hostIdNum, HUELLA_DESCONOCIDA);
+        }
+        Long huella = huellasHostsNoNumericos.get(columnas.hostId.get(cols));
+        return huella == null ? HUELLA_DESCONOCIDA : huella;
+    }
+
+    /**
+     * Campos reutilizables de un documento de propiedad. Cada worker tiene su propia
+     * plantilla: por fila se vacía el Document, se actualizan los valores de los
+     * Field con setXxxValue y se vuelven a añadir solo los que tienen valor.
+     * IndexWriter consume el documento dentro de updateDocument, así que la
+     * plantilla puede reutilizarse en la fila siguiente. Los FacetField son
+     * inmutables y se siguen creando por fila.
+     */
+    private static class PlantillaPropiedad {
+        final Document doc = new Document();
+        final HtmlTexto html = new HtmlTexto();
+
+        final IntPoint id = new IntPoint("id", 0);
+        final StringField idTermino = new StringField("id", "", Field.Store.YES);
+        final SortedDocValuesField idDv = new SortedDocValuesField("id", new BytesRef());
+        final BytesRefBuilder idBytes = new BytesRefBuilder();
+        final NumericDocValuesField huella = new NumericDocValuesField(FIELD_LISTING_FINGERPRINT, 0L);
+        final StringField listingUrl = new StringField("listing_url", "", Field.Store.YES);
+        final TextField name = new TextField("name", "", Field.Store.YES);
+        final Field description; // TextField stored, con offsets si --offsets
+        final TextField neighborhoodOverview = new TextField("neighborhood_overview", "", Field.Store.YES);
+
+        final StoredField neighbourhoodOriginal = new StoredField("neighbourhood_cleansed_original", "");
+        final StringField neighbourhood = new StringField("neighbourhood_cleansed", "", Field.Store.YES);
+        final SortedDocValuesField neighbourhoodDv = new SortedDocValuesField("neighbourhood_cleansed",
+                new BytesRef());
+        final BytesRefBuilder neighbourhoodBytes = new BytesRefBuilder();
+
+        final StoredField neighbourhoodGroupOriginal = new StoredField("neighbourhood_group_cleansed_original", "");
+        final StringField neighbourhoodGroup = new StringField("neighbourhood_group_cleansed", "", Field.Store.YES);
+        final SortedDocValuesField neighbourhoodGroupDv = new SortedDocValuesField("neighbourhood_group_cleansed",
+                new BytesRef());
+        final BytesRefBuilder neighbourhoodGroupBytes = new BytesRefBuilder();
+
+        final LatLonPoint location = new LatLonPoint("location", 0, 0);
+        final StoredField latitude = new StoredField("latitude", 0d);
+        final StoredField longitude = new StoredField("longitude", 0d);
+        final LatLonDocValuesField locationDv = new LatLonDocValuesField("location", 0, 0);
+
+        final StoredField propertyTypeOriginal = new StoredField("property_type_original", "");
+        final StringField propertyType = new StringField("property_type", "", Field.Store.YES);
+        final SortedDocValuesField propertyTypeDv = new SortedDocValuesField("property_type", new BytesRef());
+        final BytesRefBuilder propertyTypeBytes = new BytesRefBuilder();
+
+        final List<TextField> amenities = new ArrayList<>(); // crece según el máximo de amenidades por fila
+        final List<StringField> amenityKeys = new ArrayList<>();
+        final List<SortedSetDocValuesField> amenityKeysDv = new ArrayList<>();
+        final Set<Amenidad> amenidadesFila = new HashSet<>(); // sin repetir amenidad en un documento
+
+        final DoublePoint price = new DoublePoint("price", 0d);
+        final StoredField priceStored = new StoredField("price", 0d);
+        final DoubleDocValuesField priceDv = new DoubleDocValuesField("price", 0d);
+
+        final IntPoint numReviews = new IntPoint("number_of_reviews", 0);
+        final StoredField numReviewsStored = new StoredField("number_of_reviews", 0);
+        final NumericDocValuesField numReviewsDv = new NumericDocValuesField("number_of_reviews", 0L);
+
+        final DoublePoint rating = new DoublePoint("review_scores_rating", 0d);
+        final StoredField ratingStored = new StoredField("review_scores_rating", 0d);
+        final DoubleDocValuesField ratingDv = new DoubleDocValuesField("review_scores_rating", 0d);
+
+        final IntPoint bathrooms = new IntPoint("bathrooms", 0);
+        final StoredField bathroomsStored = new StoredField("bathrooms", 0);
+        final NumericDocValuesField bathroomsDv = new NumericDocValuesField("bathrooms", 0L);
+        final TextField bathroomsText = new TextField("bathrooms_text", "", Field.Store.YES);
+
+        final IntPoint bedrooms = new IntPoint("bedrooms", 0);
+        final StoredField bedroomsStored = new StoredField("bedrooms", 0);
+        final NumericDocValuesField bedroomsDv = new NumericDocValuesField("bedrooms", 0L);
+        final StringField bedroomsCategory = new StringField("bedrooms_category", "", Field.Store.YES);
+        final SortedDocValuesField bedroomsCategoryDv = new SortedDocValuesField("bedrooms_category",
+                new BytesRef());
+        final BytesRefBuilder bedroomsCategoryBytes = new BytesRefBuilder();
+
+        final StringField hostId = new StringField("host_id", "", Field.Store.YES);
+        final SortedDocValuesField hostIdDv = new SortedDocValuesField("host_id", new BytesRef());
+        final BytesRefBuilder hostIdBytes = new BytesRefBuilder();
+
+        // Solo indexado: repite name, description, etc., que ya están stored
+        final TextField contents = new TextField(FIELD_CONTENTS, "", Field.Store.NO);
+        final StringBuilder contentsBuilder = new StringBuilder(1024);
+
+        PlantillaPropiedad(boolean offsets) {
+            description = offsets ? new Field(FIELD_DESCRIPTION, "", TEXTO_CON_OFFSETS)
+                    : new TextField(FIELD_DESCRIPTION, "", Field.Store.YES);
+        }
 
-            if (config.dryRun) {
-                logger.debug("DRY-RUN: Upsert propiedad ID=" + idStr);
-            } else {
-                writerProperties.updateDocument(termId, docBuilt);
-                totalPropiedades.incrementAndGet();
+        TextField amenity(int i) {
+            while (amenities.size() <= i) {
+                amenities.add(new TextField("amenity", "", Field.Store.YES));
             }
+            return amenities.get(i);
         }
 
-        // Extraer host_id (obligatorio para hosts)
-        String hostId = get(cols, "host_id");
-        if (hostId != null && !hostId.isBlank()) {
-            // Verificar si ya procesamos este host en esta sesión
-            if (!hostsCache.containsKey(hostId)) {
-                Document docHost = crearDocumentoHost(cols);
-                if (docHost != null) {
-                    hostsCache.put(hostId, docHost);
-                    // Construir facetas
-                    Document docBuilt = facetsConfig.build(taxoWriterHosts, docHost);
-
-                    if (config.dryRun) {
-                        logger.debug("DRY-RUN: Upsert host ID=" + hostId);
-                    } else {
-                        Term termHostId = new Term("host_id", hostId);
-                        writerHosts.updateDocument(termHostId, docBuilt);
-                        totalHosts.incrementAndGet();
-                    }
-                }
+        StringField amenityKey(int i) {
+            while (amenityKeys.size() <= i) {
+                amenityKeys.add(new StringField(FIELD_AMENITY_KEY, "", Field.Store.NO));
+                amenityKeysDv.add(new SortedSetDocValuesField(FIELD_AMENITY_KEY, new BytesRef()));
             }
+            return amenityKeys.get(i);
         }
     }
 
     /**
-     * Crea un documento Lucene para una propiedad
+     * Campos reutilizables de un documento de host (ver PlantillaPropiedad)
+     */
+    private static class PlantillaHost {
+        final Document doc = new Document();
+        final HtmlTexto html = new HtmlTexto();
+
+        final StringField hostId = new StringField("host_id", "", Field.Store.NO);
+        final SortedDocValuesField hostIdDv = new SortedDocValuesField("host_id", new BytesRef());
+        final BytesRefBuilder hostIdBytes = new BytesRefBuilder();
+        final StringField hostUrl = new StringField("host_url", "", Field.Store.YES);
+        final TextField hostName = new TextField("host_name", "", Field.Store.YES);
+
+        final LongPoint hostSince = new LongPoint("host_since", 0L);
+        final StoredField hostSinceStored = new StoredField("host_since", 0L);
+        final StoredField hostSinceOriginal = new StoredField("host_since_original", "");
+        final NumericDocValuesField hostSinceDv = new NumericDocValuesField("host_since", 0L);
+
+        final TextField hostLocation = new TextField("host_location", "", Field.Store.NO);
+        final TextField hostNeighbourhood = new TextField("host_neighbourhood", "", Field.Store.YES);
+        final TextField hostAbout = new TextField("host_about", "", Field.Store.YES);
+
+        final StoredField responseTimeOriginal = new StoredField("host_response_time_original", "");
+        final StringField responseTime = new StringField("host_response_time", "", Field.Store.YES);
+        final SortedDocValuesField responseTimeDv = new SortedDocValuesField("host_response_time", new BytesRef());
+        final BytesRefBuilder responseTimeBytes = new BytesRefBuilder();
+
+        final IntPoint isSuperhost = new IntPoint("host_is_superhost", 0);
+        final StoredField isSuperhostStored = new StoredField("host_is_superhost", 0);
+        final NumericDocValuesField isSuperhostDv = new NumericDocValuesField("host_is_superhost", 0L);
+
+        final NumericDocValuesField huella = new NumericDocValuesField(FIELD_HOST_FINGERPRINT, 0L);
+
+        final TextField contents = new TextField(FIELD_CONTENTS, "", Field.Store.NO);
+        final StringBuilder contentsBuilder = new StringBuilder(512);
+    }
+
+    /**
+     * Campo de faceta según --facets: FacetField (ordinal de la taxonomía) o
+     * SortedSetDocValuesFacetField (etiqueta en doc values)
+     */
+    private Field faceta(String dim, String valor) {
+        return facetasSortedSet ? new SortedSetDocValuesFacetField(dim, valor) : new FacetField(dim, valor);
+    }
+
+    /**
+     * facetsConfig.build del documento. Sin taxonomía no hay ordinales que pedir
+     * (ni el lock del DirectoryTaxonomyWriter): solo se traducen los campos
      */
-    private Document crearDocumentoPropiedad(List<String> cols) {
-        Document doc = new Document();
+    private Document construirFacetas(DirectoryTaxonomyWriter taxoWriter, Document doc) throws IOException {
+        return facetasSortedSet ? facetsConfig.build(doc) : facetsConfig.build(taxoWriter, doc);
+    }
 
-        // ID (IntPoint, no stored como punto, pero sí como StoredField para
-        // recuperación)
-        String idStr = get(cols, config.idField);
-        Integer id = parseInteger(idStr);
-        if (id == null) {
+    /**
+     * Rellena la plantilla de propiedad con una fila
+     *
+     * @return el Document de la plantilla, o null si la fila no tiene id numérico
+     */
+    private Document crearDocumentoPropiedad(CsvSchema.Valores cols, PlantillaPropiedad p, String idStr,
+            long huella) {
+        Document doc = p.doc;
+        doc.clear();
+
+        // ID (IntPoint para rangos + StringField stored como término del upsert +
+        // docvalues para cargar los ids existentes en update)
+        int id = columnas.idNumerico.get(cols);
+        if (id == CsvSchema.Entero.SIN_VALOR) {
             return null; // ID obligatorio
         }
-        doc.add(new IntPoint("id", id));
+        p.id.setIntValue(id);
+        doc.add(p.id);
+        p.idTermino.setStringValue(idStr);
+        doc.add(p.idTermino);
+        setBytes(p.idDv, p.idBytes, idStr);
+        doc.add(p.idDv);
+
+        // Huella de contenido para omitir el listing en próximos update sin cambios
+        p.huella.setLongValue(huella);
+        doc.add(p.huella);
 
         // listing_url (StringField, stored - URL)
-        String listingUrl = get(cols, "listing_url");
+        String listingUrl = columnas.listingUrl.get(cols);
         if (listingUrl != null && !listingUrl.isBlank()) {
-            doc.add(new StringField("listing_url", listingUrl.trim(), Field.Store.YES));
+            p.listingUrl.setStringValue(listingUrl.trim());
+            doc.add(p.listingUrl);
         }
 
         // name (TextField, stored)
-        addTextField(doc, "name", get(cols, "name"), true);
+        String name = columnas.name.get(cols);
+        addTextField(doc, p.name, name);
 
         // description (TextField con EnglishAnalyzer, stored)
-        addTextField(doc, "description", htmlToText(get(cols, "description")), true);
+        String description = p.html.convertir(columnas.description.get(cols));
+        addTextField(doc, p.description, description);
 
         // neighborhood_overview (TextField con EnglishAnalyzer, stored)
-        addTextField(doc, "neighborhood_overview", htmlToText(get(cols, "neighborhood_overview")), true);
+        String neighborhoodOverview = p.html.convertir(columnas.neighborhoodOverview.get(cols));
+        addTextField(doc, p.neighborhoodOverview, neighborhoodOverview);
 
         // neighbourhood_cleansed (FacetField para facetado + StringField para búsqueda)
         // Normalizar a lowercase para evitar problemas de case-sensitivity con
         // KeywordAnalyzer
-        String neighbourhood = get(cols, "neighbourhood_cleansed");
+        String neighbourhood = columnas.neighbourhoodCleansed.get(cols);
         if (neighbourhood != null && !neighbourhood.isBlank()) {
             String neighbourhoodNormalized = neighbourhood.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("neighbourhood_cleansed_original", neighbourhood.trim()));
-            doc.add(new FacetField("neighbourhood_cleansed", neighbourhoodNormalized));
-            doc.add(new StringField("neighbourhood_cleansed", neighbourhoodNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("neighbourhood_cleansed",
-                    new org.apache.lucene.util.BytesRef(neighbourhoodNormalized)));
+            p.neighbourhoodOriginal.setStringValue(neighbourhood.trim());
+            doc.add(p.neighbourhoodOriginal);
+            doc.add(faceta("neighbourhood_cleansed", neighbourhoodNormalized));
+            p.neighbourhood.setStringValue(neighbourhoodNormalized);
+            doc.add(p.neighbourhood);
+            setBytes(p.neighbourhoodDv, p.neighbourhoodBytes, neighbourhoodNormalized);
+            doc.add(p.neighbourhoodDv);
         }
 
         // neighbourhood_group_cleansed (StringField + FacetField para clasificación)
         // Normalizar a lowercase para consistencia
-        String neighbourhoodGroup = get(cols, "neighbourhood_group_cleansed");
+        String neighbourhoodGroup = columnas.neighbourhoodGroupCleansed.get(cols);
         if (neighbourhoodGroup != null && !neighbourhoodGroup.isBlank()) {
             String neighbourhoodGroupNormalized = neighbourhoodGroup.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("neighbourhood_group_cleansed_original", neighbourhoodGroup.trim()));
-            doc.add(new FacetField("neighbourhood_group_cleansed", neighbourhoodGroupNormalized));
-            doc.add(new StringField("neighbourhood_group_cleansed", neighbourhoodGroupNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("neighbourhood_group_cleansed",
-                    new org.apache.lucene.util.BytesRef(neighbourhoodGroupNormalized)));
+            p.neighbourhoodGroupOriginal.setStringValue(neighbourhoodGroup.trim());
+            doc.add(p.neighbourhoodGroupOriginal);
+            doc.add(faceta("neighbourhood_group_cleansed", neighbourhoodGroupNormalized));
+            p.neighbourhoodGroup.setStringValue(neighbourhoodGroupNormalized);
+            doc.add(p.neighbourhoodGroup);
+            setBytes(p.neighbourhoodGroupDv, p.neighbourhoodGroupBytes, neighbourhoodGroupNormalized);
+            doc.add(p.neighbourhoodGroupDv);
         }
 
         // latitude / longitude (LatLonPoint + Stored + DocValues)
-        Double lat = parseDouble(get(cols, "latitude"));
-        Double lon = parseDouble(get(cols, "longitude"));
-        if (lat != null && lon != null) {
-            doc.add(new LatLonPoint("location", lat, lon));
-            doc.add(new StoredField("latitude", lat));
-            doc.add(new StoredField("longitude", lon));
-            doc.add(new LatLonDocValuesField("location", lat, lon));
+        double lat = columnas.latitude.get(cols);
+        double lon = columnas.longitude.get(cols);
+        if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+            p.location.setLocationValue(lat, lon);
+            doc.add(p.location);
+            p.latitude.setDoubleValue(lat);
+            doc.add(p.latitude);
+            p.longitude.setDoubleValue(lon);
+            doc.add(p.longitude);
+            p.locationDv.setLocationValue(lat, lon);
+            doc.add(p.locationDv);
         }
 
         // property_type (FacetField jerárquico para facetado + StringField para
         // búsqueda)
         // Normalizar a lowercase para evitar problemas de case-sensitivity con
         // KeywordAnalyzer
-        String propertyType = get(cols, "property_type");
+        String propertyType = columnas.propertyType.get(cols);
         if (propertyType != null && !propertyType.isBlank()) {
             String propertyTypeNormalized = propertyType.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("property_type_original", propertyType.trim()));
+            p.propertyTypeOriginal.setStringValue(propertyType.trim());
+            doc.add(p.propertyTypeOriginal);
 
             // Faceta jerárquica: categoría principal / valor específico
             // Ejemplo: "home/entire home", "home/private room in home", "condo/entire
             // condo"
             String category = classifyPropertyType(propertyType);
             String hierarchicalPath = category + "/" + propertyTypeNormalized;
-            doc.add(new FacetField("property_type", hierarchicalPath));
+            doc.add(faceta("property_type", hierarchicalPath));
 
             // También mantener la faceta simple para compatibilidad
-            doc.add(new FacetField("property_type_simple", propertyTypeNormalized));
-            doc.add(new StringField("property_type", propertyTypeNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("property_type",
-                    new org.apache.lucene.util.BytesRef(propertyTypeNormalized)));
+            doc.add(faceta("property_type_simple", propertyTypeNormalized));
+            p.propertyType.setStringValue(propertyTypeNormalized);
+            doc.add(p.propertyType);
+            setBytes(p.propertyTypeDv, p.propertyTypeBytes, propertyTypeNormalized);
+            doc.add(p.propertyTypeDv);
         }
 
-        // amenities (TextField multivaluado)
-        String amenitiesRaw = get(cols, "amenities");
-        if (amenitiesRaw != null && !amenitiesRaw.isBlank()) {
-            // Parsear y indexar cada amenidad individual como campo multivaluado
-            List<String> amenList = parseAmenities(amenitiesRaw);
-            for (String amenity : amenList) {
-                doc.add(new TextField("amenity", amenity, Field.Store.YES));
+        // amenities (TextField multivaluado para búsqueda textual + clave del
+        // diccionario como StringField, doc value SortedSet y faceta multivaluada)
+        String amenitiesRaw = columnas.amenities.get(cols);
+        List<String> amenList = parseAmenities(amenitiesRaw);
+        p.amenidadesFila.clear();
+        int claves = 0;
+        for (int i = 0; i < amenList.size(); i++) {
+            TextField amenity = p.amenity(i);
+            amenity.setStringValue(amenList.get(i));
+            doc.add(amenity);
+            Amenidad a = amenidades.get(amenList.get(i));
+            if (p.amenidadesFila.add(a)) {
+                StringField key = p.amenityKey(claves);
+                key.setStringValue(a.clave);
+                doc.add(key);
+                SortedSetDocValuesField keyDv = p.amenityKeysDv.get(claves);
+                keyDv.setBytesValue(a.bytes);
+                doc.add(keyDv);
+                doc.add(faceta("amenity", a.clave));
+                claves++;
             }
         }
 
         // price (DoublePoint, stored + docvalues + FacetField para facetado)
-        Double price = parsePrice(get(cols, "price"));
-        if (price != null) {
-            doc.add(new DoublePoint("price", price));
-            doc.add(new StoredField("price", price));
-            doc.add(new DoubleDocValuesField("price", price));
+        double price = columnas.price.get(cols);
+        if (!Double.isNaN(price)) {
+            p.price.setDoubleValue(price);
+            doc.add(p.price);
+            p.priceStored.setDoubleValue(price);
+            doc.add(p.priceStored);
+            p.priceDv.setDoubleValue(price);
+            doc.add(p.priceDv);
             // Añadir faceta de rango de precio (barato, asequible, caro)
             String priceRangeLabel = getPriceRangeLabel(price);
-            doc.add(new FacetField("price_range", priceRangeLabel));
+            doc.add(faceta("price_range", priceRangeLabel));
         }
 
         // number_of_reviews (IntPoint, stored + docvalues + FacetField para facetado)
-        Integer numReviews = parseInteger(get(cols, "number_of_reviews"));
-        if (numReviews != null) {
-            doc.add(new IntPoint("number_of_reviews", numReviews));
-            doc.add(new StoredField("number_of_reviews", numReviews));
-            doc.add(new NumericDocValuesField("number_of_reviews", numReviews));
+        int numReviews = columnas.numberOfReviews.get(cols);
+        if (numReviews != CsvSchema.Entero.SIN_VALOR) {
+            p.numReviews.setIntValue(numReviews);
+            doc.add(p.numReviews);
+            p.numReviewsStored.setIntValue(numReviews);
+            doc.add(p.numReviewsStored);
+            p.numReviewsDv.setLongValue(numReviews);
+            doc.add(p.numReviewsDv);
             // Añadir faceta de rango de reseñas (0, 1-5, 6-34, 35-110, 111+)
             String reviewsRangeLabel = getReviewsRangeLabel(numReviews);
-            doc.add(new FacetField("reviews_range", reviewsRangeLabel));
+            doc.add(faceta("reviews_range", reviewsRangeLabel));
         }
 
         // review_scores_rating (DoublePoint, stored + docvalues + FacetField para
         // facetado)
-        Double rating = parseDouble(get(cols, "review_scores_rating"));
-        if (rating != null) {
-            doc.add(new DoublePoint("review_scores_rating", rating));
-            doc.add(new StoredField("review_scores_rating", rating));
-            doc.add(new DoubleDocValuesField("review_scores_rating", rating));
+        double rating = columnas.reviewScoresRating.get(cols);
+        if (!Double.isNaN(rating)) {
+            p.rating.setDoubleValue(rating);
+            doc.add(p.rating);
+            p.ratingStored.setDoubleValue(rating);
+            doc.add(p.ratingStored);
+            p.ratingDv.setDoubleValue(rating);
+            doc.add(p.ratingDv);
             // Añadir faceta de rango de rating (0-2, 2-3, 3-4, 4-4.5, 4.5-5)
             String ratingRangeLabel = getRatingRangeLabel(rating);
-            doc.add(new FacetField("rating_range", ratingRangeLabel));
+            doc.add(faceta("rating_range", ratingRangeLabel));
         }
 
         // bathrooms (IntPoint, stored + docvalues)
-        Double bathrooms = parseDouble(get(cols, "bathrooms"));
-        if (bathrooms != null) {
-            int bathroomsInt = bathrooms.intValue();
-            doc.add(new IntPoint("bathrooms", bathroomsInt));
-            doc.add(new StoredField("bathrooms", bathroomsInt));
-            doc.add(new NumericDocValuesField("bathrooms", bathroomsInt));
+        double bathrooms = columnas.bathrooms.get(cols);
+        if (!Double.isNaN(bathrooms)) {
+            int bathroomsInt = (int) bathrooms;
+            p.bathrooms.setIntValue(bathroomsInt);
+            doc.add(p.bathrooms);
+            p.bathroomsStored.setIntValue(bathroomsInt);
+            doc.add(p.bathroomsStored);
+            p.bathroomsDv.setLongValue(bathroomsInt);
+            doc.add(p.bathroomsDv);
         }
 
         // bathrooms_text (TextField, stored)
-        addTextField(doc, "bathrooms_text", get(cols, "bathrooms_text"), true);
+        String bathroomsText = columnas.bathroomsText.get(cols);
+        addTextField(doc, p.bathroomsText, bathroomsText);
 
         // bedrooms (IntPoint, stored + docvalues)
-        Integer bedrooms = parseInteger(get(cols, "bedrooms"));
-        if (bedrooms != null) {
-            doc.add(new IntPoint("bedrooms", bedrooms));
-            doc.add(new StoredField("bedrooms", bedrooms));
-            doc.add(new NumericDocValuesField("bedrooms", bedrooms));
+        int bedrooms = columnas.bedrooms.get(cols);
+        if (bedrooms != CsvSchema.Entero.SIN_VALOR) {
+            p.bedrooms.setIntValue(bedrooms);
+            doc.add(p.bedrooms);
+            p.bedroomsStored.setIntValue(bedrooms);
+            doc.add(p.bedroomsStored);
+            p.bedroomsDv.setLongValue(bedrooms);
+            doc.add(p.bedroomsDv);
 
             // bedrooms_category (StringField para clasificación - requerido por
             // documentación)
             // Discretizar en categorías: "0", "1", "2", "3", "4", "5+"
             String bedroomsCategory = discretizarBedrooms(bedrooms);
-            doc.add(new StringField("bedrooms_category", bedroomsCategory, Field.Store.YES));
-            doc.add(new SortedDocValuesField("bedrooms_category",
-                    new org.apache.lucene.util.BytesRef(bedroomsCategory)));
+            p.bedroomsCategory.setStringValue(bedroomsCategory);
+            doc.add(p.bedroomsCategory);
+            setBytes(p.bedroomsCategoryDv, p.bedroomsCategoryBytes, bedroomsCategory);
+            doc.add(p.bedroomsCategoryDv);
         }
 
         // host_id (join lógico - StringField, stored + docvalues)
-        String hostId = get(cols, "host_id");
+        String hostId = columnas.hostId.get(cols);
         if (hostId != null && !hostId.isBlank()) {
-            doc.add(new StringField("host_id", hostId, Field.Store.YES));
-            doc.add(new SortedDocValuesField("host_id", new org.apache.lucene.util.BytesRef(hostId)));
+            p.hostId.setStringValue(hostId);
+            doc.add(p.hostId);
+            setBytes(p.hostIdDv, p.hostIdBytes, hostId);
+            doc.add(p.hostIdDv);
         }
 
         // =================================================================================
         // MEGA FIELD (contents) - "General search query"
         // =================================================================================
-        StringBuilder contents = new StringBuilder();
+        StringBuilder contents = p.contentsBuilder;
+        contents.setLength(0);
 
         // 1. Name
-        String name = get(cols, "name");
         if (name != null)
             contents.append(name).append(" ");
 
         // 2. Description
-        String description = get(cols, "description");
         if (description != null)
-            contents.append(htmlToText(description)).append(" ");
+            contents.append(description).append(" ");
 
         // 3. Neighborhood Overview
-        String neighborhoodOverview = get(cols, "neighborhood_overview");
         if (neighborhoodOverview != null)
-            contents.append(htmlToText(neighborhoodOverview)).append(" ");
+            contents.append(neighborhoodOverview).append(" ");
 
         // 4. Neighbourhood Cleansed
         if (neighbourhood != null)
@@ -971,148 +3382,154 @@ public class AirbnbIndexador {
             contents.append(propertyType).append(" ");
 
         // 6. Amenities
-        if (amenitiesRaw != null) {
-            // Ya tenemos la lista parseada si se usó arriba, pero para asegurar:
-            List<String> amenList = parseAmenities(amenitiesRaw);
-            for (String am : amenList) {
-                contents.append(am).append(" ");
-            }
+        for (String am : amenList) {
+            contents.append(am).append(" ");
         }
 
         // 7. Bathrooms (con contexto)
-        if (bathrooms != null) {
+        if (!Double.isNaN(bathrooms)) {
             // Ej: "3 bathrooms" o "3.5 bathrooms"
             contents.append(bathrooms).append(" bathrooms ");
         }
         // También agregar el texto original de baños si existe
-        String bathroomsText = get(cols, "bathrooms_text");
         if (bathroomsText != null)
             contents.append(bathroomsText).append(" ");
 
         // 8. Bedrooms (con contexto)
-        if (bedrooms != null) {
+        if (bedrooms != CsvSchema.Entero.SIN_VALOR) {
             contents.append(bedrooms).append(" bedrooms ");
         }
 
         // 9. Price (con contexto)
-        if (price != null) {
+        if (!Double.isNaN(price)) {
             contents.append("price ").append(price).append(" ");
         }
 
         // 10. Number of reviews (con contexto)
-        if (numReviews != null) {
+        if (numReviews != CsvSchema.Entero.SIN_VALOR) {
             contents.append(numReviews).append(" reviews ");
         }
 
         // 11. Review Scores Rating (con contexto)
-        if (rating != null) {
+        if (!Double.isNaN(rating)) {
             contents.append("rating ").append(rating).append(" ");
         }
 
         // Agregar el mega field al documento
         // Usamos TextField para que sea tokenizado y analizado (EnglishAnalyzer por
         // defecto o Standard)
-        // IMPORTANTE: Debe estar stored (Store.YES) para que los clasificadores puedan
-        // leerlo
-        doc.add(new TextField("contents", contents.toString(), Field.Store.YES));
+        // No se guarda (Store.NO): los clasificadores lo reconstruyen desde los
+        // campos stored (AirbnbClasificador.reconstruirContents)
+        p.contents.setStringValue(contents.toString());
+        doc.add(p.contents);
 
         return doc;
     }
 
     /**
-     * Crea un documento Lucene para un host
+     * Rellena la plantilla de host con una fila
+     *
+     * @return el Document de la plantilla, o null si la fila no tiene host_id
      */
-    private Document crearDocumentoHost(List<String> cols) {
-        Document doc = new Document();
+    private Document crearDocumentoHost(CsvSchema.Valores cols, PlantillaHost p, long huella) {
+        Document doc = p.doc;
+        doc.clear();
 
         // host_id (StringField, no stored como campo principal, pero sí docvalues)
-        String hostId = get(cols, "host_id");
+        String hostId = columnas.hostId.get(cols);
         if (hostId == null || hostId.isBlank()) {
             return null; // host_id obligatorio
         }
-        doc.add(new StringField("host_id", hostId, Field.Store.NO));
-        doc.add(new SortedDocValuesField("host_id", new org.apache.lucene.util.BytesRef(hostId)));
+        p.hostId.setStringValue(hostId);
+        doc.add(p.hostId);
+        setBytes(p.hostIdDv, p.hostIdBytes, hostId);
+        doc.add(p.hostIdDv);
 
         // host_url (StringField, stored - URL)
-        String hostUrl = get(cols, "host_url");
+        String hostUrl = columnas.hostUrl.get(cols);
         if (hostUrl != null && !hostUrl.isBlank()) {
-            doc.add(new StringField("host_url", hostUrl.trim(), Field.Store.YES));
+            p.hostUrl.setStringValue(hostUrl.trim());
+            doc.add(p.hostUrl);
         }
 
         // host_name (TextField, stored)
-        addTextField(doc, "host_name", get(cols, "host_name"), true);
+        String hostName = columnas.hostName.get(cols);
+        addTextField(doc, p.hostName, hostName);
 
         // host_since (LongPoint + Stored - epoch millis + original)
-        String hostSinceStr = get(cols, "host_since");
-        Long hostSince = parseDate(hostSinceStr);
-        if (hostSince != null) {
-            doc.add(new LongPoint("host_since", hostSince));
-            doc.add(new StoredField("host_since", hostSince));
+        int hostSinceDia = columnas.hostSince.get(cols);
+        if (hostSinceDia != CsvSchema.Fecha.SIN_VALOR) {
+            long hostSince = epochDayAMillis(hostSinceDia);
+            p.hostSince.setLongValue(hostSince);
+            doc.add(p.hostSince);
+            p.hostSinceStored.setLongValue(hostSince);
+            doc.add(p.hostSinceStored);
             // Guardar también el valor original
-            if (hostSinceStr != null) {
-                doc.add(new StoredField("host_since_original", hostSinceStr));
-            }
-            doc.add(new NumericDocValuesField("host_since", hostSince));
+            p.hostSinceOriginal.setStringValue(columnas.hostSinceTexto.get(cols));
+            doc.add(p.hostSinceOriginal);
+            p.hostSinceDv.setLongValue(hostSince);
+            doc.add(p.hostSinceDv);
         }
 
         // host_location (TextField con EnglishAnalyzer, no stored)
-        addTextField(doc, "host_location", get(cols, "host_location"), false);
+        String hostLocation = columnas.hostLocation.get(cols);
+        addTextField(doc, p.hostLocation, hostLocation);
 
         // host_neighbourhood (TextField, stored)
-        addTextField(doc, "host_neighbourhood", get(cols, "host_neighbourhood"), true);
+        String hostNeighbourhood = columnas.hostNeighbourhood.get(cols);
+        addTextField(doc, p.hostNeighbourhood, hostNeighbourhood);
 
         // host_about (TextField con EnglishAnalyzer, stored)
-        addTextField(doc, "host_about", htmlToText(get(cols, "host_about")), true);
+        String hostAbout = p.html.convertir(columnas.hostAbout.get(cols));
+        addTextField(doc, p.hostAbout, hostAbout);
 
         // host_response_time (FacetField para facetado + StringField para búsqueda)
         // Normalizar a lowercase para evitar problemas de case-sensitivity con
         // KeywordAnalyzer
-        String responseTime = get(cols, "host_response_time");
+        String responseTime = columnas.hostResponseTime.get(cols);
         if (responseTime != null && !responseTime.isBlank()) {
             String responseTimeNormalized = responseTime.trim().toLowerCase();
             // Guardar valor original para stored field
-            doc.add(new StoredField("host_response_time_original", responseTime.trim()));
-            doc.add(new FacetField("host_response_time", responseTimeNormalized));
-            doc.add(new StringField("host_response_time", responseTimeNormalized, Field.Store.YES));
-            doc.add(new SortedDocValuesField("host_response_time",
-                    new org.apache.lucene.util.BytesRef(responseTimeNormalized)));
+            p.responseTimeOriginal.setStringValue(responseTime.trim());
+            doc.add(p.responseTimeOriginal);
+            doc.add(faceta("host_response_time", responseTimeNormalized));
+            p.responseTime.setStringValue(responseTimeNormalized);
+            doc.add(p.responseTime);
+            setBytes(p.responseTimeDv, p.responseTimeBytes, responseTimeNormalized);
+            doc.add(p.responseTimeDv);
         }
 
         // host_is_superhost (IntPoint + Stored + DocValues)
         // t/f -> 1/0
-        String superhostStr = get(cols, "host_is_superhost");
-        int isSuperhost = 0;
-        if (superhostStr != null && (superhostStr.equalsIgnoreCase("t") || superhostStr.equalsIgnoreCase("true"))) {
-            isSuperhost = 1;
-        }
-        doc.add(new IntPoint("host_is_superhost", isSuperhost));
-        doc.add(new StoredField("host_is_superhost", isSuperhost));
-        doc.add(new NumericDocValuesField("host_is_superhost", isSuperhost));
+        int isSuperhost = columnas.hostIsSuperhost.get(cols) == 1 ? 1 : 0;
+        p.isSuperhost.setIntValue(isSuperhost);
+        doc.add(p.isSuperhost);
+        p.isSuperhostStored.setIntValue(isSuperhost);
+        doc.add(p.isSuperhostStored);
+        p.isSuperhostDv.setLongValue(isSuperhost);
+        doc.add(p.isSuperhostDv);
 
         // =================================================================================
         // MEGA FIELD (contents) - "General search query" for HOSTS
         // =================================================================================
-        StringBuilder contents = new StringBuilder();
+        StringBuilder contents = p.contentsBuilder;
+        contents.setLength(0);
 
         // 1. Host Name
-        String hostName = get(cols, "host_name");
         if (hostName != null)
             contents.append(hostName).append(" ");
 
         // 2. Host Location
-        String hostLocation = get(cols, "host_location");
         if (hostLocation != null)
             contents.append(hostLocation).append(" ");
 
         // 3. Host Neighbourhood
-        String hostNeighbourhood = get(cols, "host_neighbourhood");
         if (hostNeighbourhood != null)
             contents.append(hostNeighbourhood).append(" ");
 
         // 4. Host About
-        String hostAbout = get(cols, "host_about");
         if (hostAbout != null)
-            contents.append(htmlToText(hostAbout)).append(" ");
+            contents.append(hostAbout).append(" ");
 
         // 5. Host Response Time
         if (responseTime != null)
@@ -1123,10 +3540,13 @@ public class AirbnbIndexador {
             contents.append("superhost ");
         }
 
-        // Agregar el mega field al documento
-        // IMPORTANTE: Debe estar stored (Store.YES) para que los clasificadores puedan
-        // leerlo
-        doc.add(new TextField("contents", contents.toString(), Field.Store.YES));
+        // Agregar el mega field al documento (solo indexado, como el de propiedades)
+        p.contents.setStringValue(contents.toString());
+        doc.add(p.contents);
+
+        // Huella de contenido para omitir el host en próximos update sin cambios
+        p.huella.setLongValue(huella);
+        doc.add(p.huella);
 
         return doc;
     }
@@ -1145,13 +3565,20 @@ public class AirbnbIndexador {
     }
 
     /**
-     * Cierra los índices
+     * Cierra los índices. Las taxonomías compartidas de una carga multi-ciudad
+     * las cierra ejecutarShards cuando terminan todos los shards
      */
     private void cerrarIndices(Logger logger) throws IOException {
         if (writerProperties != null) {
             writerProperties.commit();
             writerProperties.close();
         }
+        if (compartido != null || facetasSortedSet) {
+            writerHosts.commit();
+            writerHosts.close();
+            logger.info("Índices de propiedades y hosts cerrados");
+            return;
+        }
         if (taxoWriterProperties != null) {
             taxoWriterProperties.commit();
             taxoWriterProperties.close();
@@ -1209,6 +3636,85 @@ public class AirbnbIndexador {
                         } catch (NumberFormatException e) {
                             config.threads = Runtime.getRuntime().availableProcessors() / 2;
                         }
+                        config.threads = Math.max(1, config.threads);
+                        break;
+                    case "--parse-threads":
+                        try {
+                            config.parseThreads = value.isEmpty()
+                                    ? Runtime.getRuntime().availableProcessors() / 4
+                                    : Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            config.parseThreads = Runtime.getRuntime().availableProcessors() / 4;
+                        }
+                        config.parseThreads = Math.max(1, config.parseThreads);
+                        break;
+                    case "--ram-buffer-mb":
+                        try {
+                            config.ramBufferMb = value.isEmpty() ? DEFAULT_RAM_BUFFER_MB : Double.parseDouble(value);
+                        } catch (NumberFormatException e) {
+                            config.ramBufferMb = DEFAULT_RAM_BUFFER_MB;
+                        }
+                        if (config.ramBufferMb <= 0) {
+                            config.ramBufferMb = DEFAULT_RAM_BUFFER_MB;
+                        }
+                        break;
+                    case "--commit-interval-s":
+                        try {
+                            config.commitIntervalS = value.isEmpty() ? DEFAULT_COMMIT_INTERVAL_S
+                                    : Math.max(0, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.commitIntervalS = DEFAULT_COMMIT_INTERVAL_S;
+                        }
+                        break;
+                    case "--merge-profile":
+                        if (!value.equals("default") && !value.equals("bulk")) {
+                            throw new IllegalArgumentException("--merge-profile debe ser default o bulk: " + value);
+                        }
+                        config.mergeProfile = value;
+                        break;
+                    case "--segments-per-tier":
+                        try {
+                            config.segmentsPerTier = value.isEmpty() ? 0 : Double.parseDouble(value);
+                        } catch (NumberFormatException e) {
+                            config.segmentsPerTier = 0;
+                        }
+                        break;
+                    case "--max-segment-mb":
+                        try {
+                            config.maxSegmentMb = value.isEmpty() ? 0 : Double.parseDouble(value);
+                        } catch (NumberFormatException e) {
+                            config.maxSegmentMb = 0;
+                        }
+                        break;
+                    case "--force-merge":
+                        try {
+                            config.forceMerge = value.isEmpty() ? 0 : Math.max(0, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.forceMerge = 0;
+                        }
+                        break;
+                    case "--index-sort":
+                        config.indexSort = value.isEmpty() ? null : value;
+                        break;
+                    case "--facets":
+                        if (!value.equals(FACETAS_TAXONOMIA) && !value.equals(FACETAS_SORTEDSET)) {
+                            throw new IllegalArgumentException("--facets debe ser " + FACETAS_TAXONOMIA + " o "
+                                    + FACETAS_SORTEDSET + ": " + value);
+                        }
+                        config.facets = value;
+                        break;
+                    case "--stored-fields":
+                        if (!value.equals(STORED_VELOCIDAD) && !value.equals(STORED_COMPRESION)) {
+                            throw new IllegalArgumentException("--stored-fields debe ser " + STORED_VELOCIDAD + " o "
+                                    + STORED_COMPRESION + ": " + value);
+                        }
+                        config.storedFields = value;
+                        break;
+                    case "--offsets":
+                        config.offsets = true;
+                        break;
+                    case "--no-bulk":
+                        config.bulk = false;
                         break;
                     case "--max-errors":
                         try {
@@ -1220,119 +3726,78 @@ public class AirbnbIndexador {
                     case "--log-file":
                         config.logFile = value;
                         break;
+                    case "--progress-interval-s":
+                        try {
+                            config.progressIntervalS = value.isEmpty() ? DEFAULT_PROGRESS_INTERVAL_S
+                                    : Math.max(0, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.progressIntervalS = DEFAULT_PROGRESS_INTERVAL_S;
+                        }
+                        break;
+                    case "--quarantine":
+                        config.quarantineFile = value.isEmpty() ? null : value;
+                        break;
+                    case "--replay-quarantine":
+                        config.replayQuarantine = value.isEmpty() ? null : value;
+                        break;
+                    case "--keep-missing":
+                        config.keepMissing = true;
+                        break;
+                    case "--resume":
+                        config.resume = true;
+                        break;
                     case "--dry-run":
                         config.dryRun = true;
                         break;
                     case "--force":
                         config.force = true;
                         break;
+                    case "--write-snapshot":
+                        config.writeSnapshot = value.isEmpty() ? null : value;
+                        break;
+                    case "--concurrent-shards":
+                        try {
+                            config.concurrentShards = value.isEmpty() ? 0 : Math.max(0, Integer.parseInt(value));
+                        } catch (NumberFormatException e) {
+                            config.concurrentShards = 0;
+                        }
+                        break;
                 }
             }
         }
-        return config;
-    }
-
-    /**
-     * Parsea una línea CSV respetando comillas
-     */
-    private static List<String> parseCsvLine(String line, String delimiter) {
-        List<String> out = new ArrayList<>();
-        if (line == null)
-            return out;
-
-        StringBuilder cur = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    cur.append('"');
-                    i++;
-                } else {
-                    inQuotes = !inQuotes;
-                }
-            } else if (delimiter.equals(String.valueOf(c)) && !inQuotes) {
-                out.add(cur.toString());
-                cur.setLength(0);
-            } else {
-                cur.append(c);
+        // Reingreso de cuarentena: upsert de esas filas sin tocar el resto del índice
+        if (config.replayQuarantine != null) {
+            if (config.input != null) {
+                throw new IllegalArgumentException("--replay-quarantine sustituye a --input: usar solo uno");
             }
+            config.input = config.replayQuarantine;
+            config.mode = "update";
+            config.keepMissing = true;
         }
-        out.add(cur.toString());
-        return out;
-    }
-
-    /**
-     * Obtiene el valor de una columna por nombre
-     */
-    private String get(List<String> cols, String name) {
-        Integer idx = headerIndex.get(name);
-        if (idx == null || idx < 0 || idx >= cols.size())
-            return null;
-        String v = cols.get(idx);
-        return (v == null || v.isEmpty()) ? null : v;
-    }
-
-    /**
-     * Parsea un entero
-     */
-    private static Integer parseInteger(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        try {
-            return (int) Double.parseDouble(s.trim());
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    /**
-     * Parsea un double
-     */
-    private static Double parseDouble(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        try {
-            return Double.parseDouble(s.trim());
-        } catch (Exception e) {
-            return null;
+        if (config.quarantineFile != null && config.input != null
+                && Paths.get(config.quarantineFile).toAbsolutePath().normalize()
+                        .equals(Paths.get(config.input).toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("--quarantine no puede ser el mismo archivo que se lee");
         }
-    }
-
-    /**
-     * Parsea un precio (limpia $ y comas)
-     */
-    private static Double parsePrice(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        String clean = s.replace("$", "").replace(",", "").trim();
-        return parseDouble(clean);
-    }
-
-    /**
-     * Parsea una fecha a epoch millis
-     */
-    private static Long parseDate(String s) {
-        if (s == null || s.isBlank())
-            return null;
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
-            return sdf.parse(s.trim()).getTime();
-        } catch (ParseException e) {
-            return null;
+        if (config.writeSnapshot != null) {
+            if (config.resume) {
+                throw new IllegalArgumentException(
+                        "--write-snapshot necesita recorrer todo el CSV: no admite --resume");
+            }
+            if (config.input != null && Paths.get(config.writeSnapshot).toAbsolutePath().normalize()
+                    .equals(Paths.get(config.input).toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("--write-snapshot no puede ser el mismo archivo que se lee");
+            }
         }
+        return config;
     }
 
     /**
-     * Limpia HTML básico de texto
+     * Convierte días desde epoch a epoch millis de la medianoche en la zona horaria
+     * por defecto (mismo valor que daba SimpleDateFormat("yyyy-MM-dd").parse)
      */
-    private static String htmlToText(String s) {
-        if (s == null)
-            return null;
-        return s.replace("<br />", " ")
-                .replace("<br>", " ")
-                .replace("&nbsp;", " ");
+    private static long epochDayAMillis(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     /**
@@ -1389,65 +3854,478 @@ public class AirbnbIndexador {
     }
 
     /**
-     * Añade un TextField al documento
+     * Clave de una amenidad: minúsculas y espacios colapsados ("Free  parking
+     * on premises" -> "free parking on premises"). La usan el indexador y las
+     * búsquedas por amenidad exacta
+     */
+    public static String normalizarAmenidad(String amenidad) {
+        return amenidad.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * Diccionario de amenidades de una carga: cada valor del CSV se normaliza
+     * una sola vez y todas las filas comparten la misma clave (String) y sus
+     * bytes UTF-8 para los doc values. Las amenidades se repiten muchísimo (unos
+     * pocos miles de valores distintos en millones de apariciones), así que la
+     * búsqueda en el mapa sustituye a normalizar y codificar en cada fila.
+     * Thread-safe.
+     */
+    private static final class DiccionarioAmenidades {
+        private final ConcurrentHashMap<String, Amenidad> porValor = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Amenidad> porClave = new ConcurrentHashMap<>();
+
+        Amenidad get(String valor) {
+            Amenidad a = porValor.get(valor);
+            if (a == null) {
+                a = porClave.computeIfAbsent(normalizarAmenidad(valor), Amenidad::new);
+                porValor.putIfAbsent(valor, a);
+            }
+            return a;
+        }
+
+        int size() {
+            return porClave.size();
+        }
+    }
+
+    /**
+     * Entrada del diccionario (única por clave: se compara por identidad)
+     */
+    private static final class Amenidad {
+        final String clave;
+        final BytesRef bytes;
+
+        Amenidad(String clave) {
+            this.clave = clave;
+            this.bytes = new BytesRef(clave);
+        }
+    }
+
+    /**
+     * Tamaño del último commit de un índice: total y la parte de campos stored
+     * (.fdt/.fdx/.fdm, también dentro de los .cfs de segmentos compuestos)
+     */
+    private static final class TamanoIndice {
+        final long total;
+        final long stored;
+
+        private TamanoIndice(long total, long stored) {
+            this.total = total;
+            this.stored = stored;
+        }
+
+        /**
+         * @return el tamaño, o null si en la carpeta no hay índice
+         */
+        static TamanoIndice de(Path ruta) throws IOException {
+            if (!Files.isDirectory(ruta)) {
+                return null;
+            }
+            try (Directory dir = FSDirectory.open(ruta)) {
+                if (!DirectoryReader.indexExists(dir)) {
+                    return null;
+                }
+                long total = 0;
+                long stored = 0;
+                for (SegmentCommitInfo sci : SegmentInfos.readLatestCommit(dir)) {
+                    total += sci.sizeInBytes();
+                    if (sci.info.getUseCompoundFile()) {
+                        try (Directory cfs = sci.info.getCodec().compoundFormat().getCompoundReader(dir, sci.info)) {
+                            stored += bytesStored(cfs, Arrays.asList(cfs.listAll()));
+                        }
+                    } else {
+                        stored += bytesStored(dir, sci.files());
+                    }
+                }
+                return new TamanoIndice(total, stored);
+            }
+        }
+
+        private static long bytesStored(Directory dir, Collection<String> archivos) throws IOException {
+            long bytes = 0;
+            for (String archivo : archivos) {
+                String extension = IndexFileNames.getExtension(archivo);
+                for (String e : EXTENSIONES_STORED) {
+                    if (e.equals(extension)) {
+                        bytes += dir.fileLength(archivo);
+                    }
+                }
+            }
+            return bytes;
+        }
+
+        /**
+         * "X MB (stored Y MB), antes Z MB (delta)"
+         */
+        String comparadoCon(TamanoIndice antes) {
+            String s = mb(total) + " (stored " + mb(stored) + ")";
+            if (antes == null) {
+                return s;
+            }
+            return s + ", antes " + mb(antes.total) + " (stored " + mb(antes.stored) + "), delta "
+                    + (total >= antes.total ? "+" : "-") + mb(Math.abs(total - antes.total)) + " (stored "
+                    + (stored >= antes.stored ? "+" : "-") + mb(Math.abs(stored - antes.stored)) + ")";
+        }
+
+        private static String mb(long bytes) {
+            return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Añade un TextField reutilizable al documento si el valor no está vacío
      */
-    private static void addTextField(Document doc, String field, String value, boolean store) {
+    private static void addTextField(Document doc, Field field, String value) {
         if (value == null || value.isBlank())
             return;
-        doc.add(new TextField(field, value, store ? Field.Store.YES : Field.Store.NO));
+        field.setStringValue(value);
+        doc.add(field);
+    }
+
+    /**
+     * Actualiza un SortedDocValuesField reutilizable codificando el valor en un
+     * BytesRefBuilder propio del campo (sin crear BytesRef por fila)
+     */
+    private static void setBytes(SortedDocValuesField field, BytesRefBuilder bytes, String value) {
+        bytes.copyChars(value);
+        field.setBytesValue(bytes.get());
+    }
+
+    /**
+     * Archivo de cuarentena: CSV con la cabecera del input precedida de
+     * COLUMNAS y una línea por fila rechazada (metadatos + bytes crudos de la
+     * fila). Cada registro se escribe en cuanto se rechaza la fila, así que el
+     * archivo sirve aunque la carga aborte; como conserva la cabecera original,
+     * se puede corregir y reingresar con --replay-quarantine.
+     *
+     * Si el input es a su vez un archivo de cuarentena, sus columnas de
+     * metadatos se descartan al copiar las filas. Thread-safe.
+     */
+    private static class Cuarentena implements Closeable {
+        static final String[] COLUMNAS = { "_offset", "_bloque", "_fila", "_excepcion", "_motivo" };
+
+        private final OutputStream out;
+        private final Charset charset;
+        private final byte delimitador;
+        private final int camposOmitidos;
+        private int filas;
+
+        Cuarentena(Path ruta, Charset charset, String delimiter, CsvMappedReader.Row header, boolean entradaCuarentena,
+                boolean anadir) throws IOException {
+            this.charset = charset;
+            this.delimitador = (byte) delimiter.charAt(0);
+            this.camposOmitidos = entradaCuarentena ? COLUMNAS.length : 0;
+            boolean conCabecera = !anadir || !Files.exists(ruta) || Files.size(ruta) == 0;
+            this.out = new BufferedOutputStream(new FileOutputStream(ruta.toFile(), anadir));
+            if (conCabecera) {
+                ByteArrayOutputStream linea = new ByteArrayOutputStream();
+                for (String columna : COLUMNAS) {
+                    campo(linea, columna);
+                }
+                fila(linea, header.bytes(camposOmitidos));
+                out.write(linea.toByteArray());
+            }
+        }
+
+        /**
+         * true si la cabecera empieza por las columnas de cuarentena
+         */
+        static boolean esCabecera(CsvMappedReader.Row header) {
+            if (header.size() <= COLUMNAS.length) {
+                return false;
+            }
+            for (int i = 0; i < COLUMNAS.length; i++) {
+                if (!COLUMNAS[i].equals(header.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Registra una fila rechazada
+         *
+         * @param fila número de fila dentro del bloque
+         */
+        void registrar(CsvMappedReader.Row row, int bloque, long fila, Throwable causa) throws IOException {
+            ByteArrayOutputStream linea = new ByteArrayOutputStream();
+            campo(linea, Long.toString(row.offset()));
+            campo(linea, Integer.toString(bloque));
+            campo(linea, Long.toString(fila));
+            campo(linea, causa.getClass().getName());
+            String motivo = causa.getMessage() == null ? "" : causa.getMessage().replaceAll("[\\r\\n]+", " ");
+            campo(linea, "\"" + motivo.replace("\"", "\"\"") + "\"");
+            fila(linea, row.bytes(camposOmitidos));
+            byte[] bytes = linea.toByteArray();
+            synchronized (this) {
+                out.write(bytes);
+                filas++;
+            }
+        }
+
+        synchronized int filas() {
+            return filas;
+        }
+
+        synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private void campo(ByteArrayOutputStream linea, String valor) {
+            linea.writeBytes(valor.getBytes(charset));
+            linea.write(delimitador);
+        }
+
+        /**
+         * Añade la fila cruda, terminada en salto de línea (la última fila del
+         * archivo puede no tenerlo)
+         */
+        private static void fila(ByteArrayOutputStream linea, byte[] bytes) {
+            linea.writeBytes(bytes);
+            if (bytes.length == 0 || bytes[bytes.length - 1] != '\n') {
+                linea.write('\n');
+            }
+        }
     }
 
     /**
-     * Clase simple para logging
+     * Logger asíncrono. Los hilos que registran un mensaje solo lo dejan en un
+     * buffer circular acotado (reservan hueco con un compareAndSet, sin locks ni
+     * espera); un único hilo escritor vacía el buffer por tandas hacia consola y
+     * archivo y hace un flush por tanda, no por mensaje.
+     *
+     * Si el buffer se llena los mensajes se descartan en lugar de frenar la
+     * indexación, y se cuentan por nivel (igual que los que llegan tras close()).
+     * Los DEBUG se descartan ya a partir de 3/4 de ocupación, para dejar hueco a
+     * los avisos y errores. close() vacía lo pendiente e informa de los descartes.
      */
     private static class Logger {
+        private static final int CAPACIDAD = 1 << 14; // mensajes en el buffer (potencia de 2)
+        private static final int LIMITE_DEBUG = CAPACIDAD / 4 * 3;
+        private static final int TANDA_MAX = 1024;
+        private static final long PAUSA_NS = TimeUnit.MILLISECONDS.toNanos(5);
+        private static final String[] NIVELES = { "INFO", "WARN", "ERROR", "DEBUG" };
+        private static final int INFO = 0, WARN = 1, ERROR = 2, DEBUG = 3;
+        // Valor de 'escritura' cuando el escritor ha terminado: no se reservan más
+        // posiciones
+        private static final long TERMINADO = Long.MIN_VALUE;
+
+        private final AtomicReferenceArray<String> buffer;
+        private final AtomicLong escritura; // siguiente posición a reservar
+        private volatile long lectura; // siguiente posición a vaciar (solo la avanza el escritor)
+        private final AtomicLong[] descartados;
+        private volatile boolean cerrado;
+
+        private final PrintWriter out;
+        private final PrintWriter err;
         private final PrintWriter logWriter;
+        private final Thread escritor;
+
+        // Vista con prefijo (conPrefijo): publica en el buffer de 'base'
+        private final Logger base;
+        private final String prefijo;
 
         public Logger(String logFile) throws IOException {
+            base = null;
+            prefijo = null;
+            buffer = new AtomicReferenceArray<>(CAPACIDAD);
+            escritura = new AtomicLong();
+            descartados = new AtomicLong[NIVELES.length];
             if (logFile != null && !logFile.isEmpty()) {
-                logWriter = new PrintWriter(new FileWriter(logFile, true));
+                logWriter = new PrintWriter(new BufferedWriter(new FileWriter(logFile, true)));
             } else {
                 logWriter = null;
             }
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset())));
+            err = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err, System.err.charset())));
+            for (int i = 0; i < descartados.length; i++) {
+                descartados[i] = new AtomicLong();
+            }
+            escritor = new Thread(this::escribir, "indexador-logger");
+            escritor.setDaemon(true);
+            escritor.start();
+        }
+
+        private Logger(Logger base, String prefijo) {
+            this.base = base;
+            this.prefijo = prefijo;
+            buffer = null;
+            escritura = null;
+            descartados = null;
+            out = base.out;
+            err = base.err;
+            logWriter = base.logWriter;
+            escritor = base.escritor;
+        }
+
+        /**
+         * Logger que antepone 'prefijo' a cada mensaje y comparte buffer, hilo
+         * escritor y archivo con este. Cerrarlo no hace nada: se cierra el original
+         */
+        public Logger conPrefijo(String prefijo) {
+            return new Logger(this, prefijo);
         }
 
         public void info(String msg) {
-            String fullMsg = "[INFO] " + msg;
-            System.out.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
-            }
+            publicar(INFO, msg, CAPACIDAD);
         }
 
         public void warn(String msg) {
-            String fullMsg = "[WARN] " + msg;
-            System.err.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
-            }
+            publicar(WARN, msg, CAPACIDAD);
         }
 
         public void error(String msg) {
-            String fullMsg = "[ERROR] " + msg;
-            System.err.println(fullMsg);
-            if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
-            }
+            publicar(ERROR, msg, CAPACIDAD);
         }
 
         public void debug(String msg) {
-            String fullMsg = "[DEBUG] " + msg;
-            // System.out.println(fullMsg);
             if (logWriter != null) {
-                logWriter.println(fullMsg);
-                logWriter.flush();
+                publicar(DEBUG, msg, LIMITE_DEBUG);
+            }
+        }
+
+        /**
+         * true si los mensajes DEBUG se guardan (hay archivo de log). Permite no
+         * construir el mensaje en los caminos por documento.
+         */
+        public boolean debugActivo() {
+            return logWriter != null;
+        }
+
+        /**
+         * Mensajes descartados por buffer lleno o por llegar con el logger cerrado
+         */
+        public long descartados() {
+            if (base != null) {
+                return base.descartados();
+            }
+            long total = 0;
+            for (AtomicLong d : descartados) {
+                total += d.get();
+            }
+            return total;
+        }
+
+        /**
+         * Reserva una posición del buffer si la ocupación no supera 'limite' y deja
+         * el mensaje (el primer carácter codifica el nivel)
+         */
+        private void publicar(int nivel, String msg, int limite) {
+            if (base != null) {
+                base.publicar(nivel, prefijo + msg, limite);
+                return;
+            }
+            String entrada = (char) ('0' + nivel) + msg;
+            while (true) {
+                long pos = escritura.get();
+                if (pos == TERMINADO || cerrado || pos - lectura >= limite) {
+                    descartados[nivel].incrementAndGet();
+                    return;
+                }
+                if (escritura.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet((int) pos & (CAPACIDAD - 1), entrada);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Hilo escritor: vacía el buffer por tandas hasta que se cierra. Termina
+         * con un compareAndSet de 'escritura' a TERMINADO: un productor que leyó
+         * cerrado == false antes de close() y reserva después, o gana ese
+         * compareAndSet (y el escritor sigue vaciando hasta escribir su mensaje) o
+         * lo pierde y cuenta el mensaje como descartado.
+         */
+        private void escribir() {
+            while (true) {
+                boolean fin = cerrado; // leído antes de vaciar: lo publicado antes de close() se escribe
+                int escritos = vaciar();
+                if (escritos == 0) {
+                    if (fin && escritura.compareAndSet(lectura, TERMINADO)) {
+                        return;
+                    }
+                    LockSupport.parkNanos(PAUSA_NS);
+                }
+            }
+        }
+
+        /**
+         * Escribe hasta TANDA_MAX mensajes consecutivos ya publicados
+         *
+         * @return mensajes escritos
+         */
+        private int vaciar() {
+            long pos = lectura;
+            int n = 0;
+            boolean outUsado = false, errUsado = false;
+            while (n < TANDA_MAX) {
+                int slot = (int) pos & (CAPACIDAD - 1);
+                String entrada = buffer.get(slot);
+                if (entrada == null) {
+                    break; // vacío, o reservado y aún no publicado
+                }
+                buffer.lazySet(slot, null);
+                int nivel = entrada.charAt(0) - '0';
+                String linea = "[" + NIVELES[nivel] + "] " + entrada.substring(1);
+                if (nivel == INFO) {
+                    out.println(linea);
+                    outUsado = true;
+                } else if (nivel != DEBUG) {
+                    err.println(linea);
+                    errUsado = true;
+                }
+                if (logWriter != null) {
+                    logWriter.println(linea);
+                }
+                pos++;
+                n++;
+                lectura = pos;
+            }
+            if (n > 0) {
+                if (outUsado) {
+                    out.flush();
+                }
+                if (errUsado) {
+                    err.flush();
+                }
+                if (logWriter != null) {
+                    logWriter.flush();
+                }
             }
+            return n;
         }
 
         public void close() {
+            if (base != null) {
+                return;
+            }
+            cerrado = true;
+            LockSupport.unpark(escritor);
+            try {
+                escritor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long total = descartados();
+            if (total > 0) {
+                StringBuilder sb = new StringBuilder("[WARN] Logger: " + total
+                        + " mensajes descartados por buffer lleno (");
+                for (int i = 0; i < NIVELES.length; i++) {
+                    sb.append(i > 0 ? ", " : "").append(NIVELES[i]).append(": ").append(descartados[i].get());
+                }
+                String linea = sb.append(')').toString();
+                err.println(linea);
+                if (logWriter != null) {
+                    logWriter.println(linea);
+                }
+            }
+            out.flush();
+            err.flush();
             if (logWriter != null) {
                 logWriter.close();
             }
@@ -28,12 +28,10 @@ import org.apache.lucene.facet.FacetResult;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
 import org.apache.lucene.facet.LabelAndValue;
-import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
-import org.apache.lucene.facet.taxonomy.TaxonomyReader;
-import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause;
@@ -42,16 +40,22 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.similarities.Similarity;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.search.uhighlight.WholeBreakIterator;
 import org.apache.lucene.analysis.TokenStream;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -234,6 +238,21 @@ public class AirbnbSearchApp extends Application {
     private static final int FACET_DIMS_INITIAL_LIMIT = 20;
     private static final int FACET_DIMS_ALL_LIMIT = 1000;
 
+    // ========== Sort Options ==========
+    // Etiqueta -> campos de orden (formato de --index-sort del indexador); null = relevancia
+    private static final Map<String, String> SORT_OPTIONS = new LinkedHashMap<>();
+    static {
+        SORT_OPTIONS.put("Relevancia", null);
+        SORT_OPTIONS.put("Precio (menor a mayor)", "price");
+        SORT_OPTIONS.put("Precio (mayor a menor)", "-price");
+        SORT_OPTIONS.put("Valoración (mayor a menor)", "-review_scores_rating");
+        SORT_OPTIONS.put("Nº de reseñas (mayor a menor)", "-number_of_reviews");
+    }
+    // Facetas cuyo valor coincide con los doc values del campo homónimo: con un
+    // único valor seleccionado, ese campo es constante en los resultados
+    private static final String[] SORT_FIXABLE_FACET_DIMS = { "neighbourhood_cleansed",
+            "neighbourhood_group_cleansed" };
+
     // ========== Numeric Query Constants ==========
     private static final double DOUBLE_EPSILON = 0.01;
     private static final int INT_EPSILON = 1;
@@ -266,12 +285,15 @@ public class AirbnbSearchApp extends Application {
     private TextField lonField;
     private TextField radiusField;
     private Label statusLabel;
+    private ComboBox<String> sortCombo;
     // Contenedor para grupos de facetas (similar a la columna de filtros de un buscador web)
     private VBox facetsContainer;
     private TableView<PropertyResult> resultsTable;
     private TableColumn<PropertyResult, String> descriptionCol;
     private final ObservableList<PropertyResult> resultsData = FXCollections.observableArrayList();
     private HostServices hostServices;
+    // index_properties y su estado de facetas, compartidos entre búsquedas
+    private LectorFacetas lectorFacetas;
 
     @Override
     public void start(Stage primaryStage) {
@@ -287,6 +309,7 @@ public class AirbnbSearchApp extends Application {
                 indexRoot = rawArgs.get(i + 1);
             }
         }
+        lectorFacetas = new LectorFacetas(indexRoot);
 
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(ROOT_PADDING));
@@ -332,7 +355,19 @@ public class AirbnbSearchApp extends Application {
             }
         });
 
-        simpleRow.getChildren().addAll(new Label("Consulta:"), simpleQueryField, searchButton, clearButton, hideDescriptionCheck);
+        sortCombo = new ComboBox<>(FXCollections.observableArrayList(SORT_OPTIONS.keySet()));
+        sortCombo.setValue("Relevancia");
+        // Reordenar relanza la búsqueda conservando las facetas marcadas
+        sortCombo.setOnAction(e -> {
+            if (selectedFacets().isEmpty()) {
+                executeSearch();
+            } else {
+                applyFacetSelection();
+            }
+        });
+
+        simpleRow.getChildren().addAll(new Label("Consulta:"), simpleQueryField, searchButton, clearButton,
+                new Label("Ordenar:"), sortCombo, hideDescriptionCheck);
         HBox.setHgrow(simpleQueryField, Priority.ALWAYS);
 
         // Sección de búsqueda avanzada (inspirada en BusquedasLucene)
@@ -385,7 +420,7 @@ public class AirbnbSearchApp extends Application {
         HBox amenityRow = new HBox(FIELD_GROUP_SPACING);
         amenityRow.setAlignment(Pos.CENTER_LEFT);
         amenityField = new TextField();
-        amenityField.setPromptText("amenity (ej: pool, wifi, parking)");
+        amenityField.setPromptText("amenity (ej: pool, wifi; exactas: =Pool AND =Wifi)");
         amenityRow.getChildren().addAll(new Label("Amenidad:"), amenityField);
         HBox.setHgrow(amenityField, Priority.ALWAYS);
         
@@ -841,7 +876,7 @@ public class AirbnbSearchApp extends Application {
         // Sin facetas activas al pulsar "Buscar"
         runSearchInBackground(queryText, neighbourhood, minPriceText, maxPriceText, 
                 ratingText, reviewsText, bedroomsText, bathroomsText,
-                amenityText, propertyTypeText, latText, lonText, radiusText, null);
+                amenityText, propertyTypeText, latText, lonText, radiusText, null, selectedSortSpec());
     }
 
     /**
@@ -863,7 +898,8 @@ public class AirbnbSearchApp extends Application {
                                        String latText,
                                        String lonText,
                                        String radiusText,
-                                       Map<String, List<String>> activeFacets) {
+                                       Map<String, List<String>> activeFacets,
+                                       String sortSpec) {
         new Thread(() -> {
             long start = System.currentTimeMillis();
             List<PropertyResult> results = new ArrayList<>();
@@ -871,13 +907,24 @@ public class AirbnbSearchApp extends Application {
             String luceneQueryText = "";
             String errorMessage = null;
             long totalHits = 0;
+            boolean totalHitsLowerBound = false;
+            boolean earlyTerminated = false;
+            long hitsMillis = 0;
+            long facetsMillis = 0;
+            EventosJfr.BusquedaEjecutada event = new EventosJfr.BusquedaEjecutada();
+            event.begin();
+            long phaseStart = System.nanoTime();
+            LectorFacetas.Vista vista = null;
 
             try {
                 Analyzer analyzer = AirbnbIndexador.crearAnalizador();
                 Similarity similarity = AirbnbIndexador.crearSimilarity();
 
-                IndexReader reader = DirectoryReader.open(
-                        FSDirectory.open(AirbnbIndexador.getPropertiesIndexPath(indexRoot)));
+                // Un índice o, con varias ciudades, un MultiReader sobre sus shards. La
+                // vista se reutiliza entre búsquedas mientras el índice no cambie, con
+                // la taxonomía o el estado de facetas SortedSet ya abiertos
+                vista = lectorFacetas.adquirir();
+                IndexReader reader = vista.reader;
                 IndexSearcher searcher = new IndexSearcher(reader);
                 searcher.setSimilarity(similarity);
 
@@ -956,10 +1003,11 @@ public class AirbnbSearchApp extends Application {
                     }
                 }
 
-                // 8) Filtro por amenidad (amenity) - búsqueda textual
+                // 8) Filtro por amenidad: búsqueda textual con QueryParser sobre "amenity";
+                // las amenidades exactas ("=Pool AND =Wifi") se resuelven con los bitsets
+                // de la vista
                 if (amenityText != null && !amenityText.isEmpty()) {
-                    QueryParser amenityParser = new QueryParser("amenity", analyzer);
-                    Query amenityQuery = amenityParser.parse(amenityText);
+                    Query amenityQuery = vista.amenidades().consulta(amenityText, analyzer);
                     queryBuilder.add(amenityQuery, BooleanClause.Occur.MUST);
                 }
 
@@ -989,266 +1037,321 @@ public class AirbnbSearchApp extends Application {
 
                 Query baseQuery = queryBuilder.build();
 
-                try (TaxonomyReader taxoReader = new DirectoryTaxonomyReader(
-                        FSDirectory.open(AirbnbIndexador.getTaxoPropertiesIndexPath(indexRoot)))) {
-                    // IMPORTANTE: createFacetsConfig() ya tiene config.setHierarchical("property_type", true)
-                    // Esto es necesario para que Lucene trate property_type como jerárquico
-                    FacetsConfig fconfig = AirbnbIndexador.createFacetsConfig();
-                    
-                    // Primero obtener todas las facetas disponibles para poder expandir categorías
-                    FacetsCollector fcInitial = new FacetsCollector();
-                    searcher.search(baseQuery, fcInitial);
-                    Facets facetsInitial = new FastTaxonomyFacetCounts(taxoReader, fconfig, fcInitial);
-                    List<FacetResult> allDimsInitial = facetsInitial.getAllDims(FACET_DIMS_INITIAL_LIMIT);
-                    Map<String, List<LabelAndValue>> availableFacets = new LinkedHashMap<>();
-                    if (allDimsInitial != null) {
-                        for (FacetResult fr : allDimsInitial) {
-                            if (fr != null && fr.dim != null) {
-                                availableFacets.put(fr.dim, Arrays.asList(fr.labelValues));
+                // Orden de resultados (null = relevancia). Si coincide con el orden del
+                // índice, la búsqueda termina en cuanto tiene los MAX_RESULTS primeros
+                Sort sort = null;
+                boolean sortedByIndex = false;
+                if (sortSpec != null) {
+                    Set<String> fixedFields = new HashSet<>();
+                    if (neighbourhood != null && !neighbourhood.isEmpty()) {
+                        fixedFields.add("neighbourhood_cleansed");
+                    }
+                    if (activeFacets != null) {
+                        for (String dim : SORT_FIXABLE_FACET_DIMS) {
+                            List<String> labels = activeFacets.get(dim);
+                            if (labels != null && labels.size() == 1) {
+                                fixedFields.add(dim);
                             }
                         }
                     }
+                    sort = alignWithIndexSort(AirbnbIndexador.parseIndexSort(sortSpec), reader, fixedFields);
+                    sortedByIndex = isIndexSortPrefix(sort, reader);
+                }
+                long now = System.nanoTime();
+                event.preparacion = now - phaseStart;
+                phaseStart = now;
+
+                // IMPORTANTE: createFacetsConfig() ya tiene config.setHierarchical("property_type", true)
+                // Esto es necesario para que Lucene trate property_type como jerárquico
+                FacetsConfig fconfig = lectorFacetas.config();
+                
+                // Primero obtener todas las facetas disponibles para poder expandir categorías
+                FacetsCollector fcInitial = searcher.search(baseQuery, new FacetsCollectorManager());
+                Facets facetsInitial = vista.contar(fcInitial);
+                List<FacetResult> allDimsInitial = facetsInitial.getAllDims(FACET_DIMS_INITIAL_LIMIT);
+                Map<String, List<LabelAndValue>> availableFacets = new LinkedHashMap<>();
+                if (allDimsInitial != null) {
+                    for (FacetResult fr : allDimsInitial) {
+                        if (fr != null && fr.dim != null) {
+                            availableFacets.put(fr.dim, Arrays.asList(fr.labelValues));
+                        }
+                    }
+                }
+                
+                // Si hay categorías padre seleccionadas, necesitamos obtener TODAS las facetas del índice completo
+                // para poder expandir correctamente las categorías padre
+                Map<String, List<LabelAndValue>> allFacetsFromIndex = null;
+                if (activeFacets != null && activeFacets.containsKey("property_type")) {
+                    List<String> propertyTypeSelections = activeFacets.get("property_type");
+                    boolean hasParentCategory = false;
+                    for (String label : propertyTypeSelections) {
+                        if (!label.contains("/")) {
+                            // Es una categoría padre
+                            hasParentCategory = true;
+                            break;
+                        }
+                    }
                     
-                    // Si hay categorías padre seleccionadas, necesitamos obtener TODAS las facetas del índice completo
-                    // para poder expandir correctamente las categorías padre
-                    Map<String, List<LabelAndValue>> allFacetsFromIndex = null;
-                    if (activeFacets != null && activeFacets.containsKey("property_type")) {
-                        List<String> propertyTypeSelections = activeFacets.get("property_type");
-                        boolean hasParentCategory = false;
-                        for (String label : propertyTypeSelections) {
-                            if (!label.contains("/")) {
-                                // Es una categoría padre
-                                hasParentCategory = true;
-                                break;
+                    if (hasParentCategory) {
+                        // Obtener todas las facetas del índice completo (sin filtros)
+                        FacetsCollector fcAll = searcher.search(new MatchAllDocsQuery(),
+                                new FacetsCollectorManager());
+                        Facets facetsAll = vista.contar(fcAll);
+                        List<FacetResult> allDimsAll = facetsAll.getAllDims(FACET_DIMS_ALL_LIMIT); // Obtener muchas para asegurar que tenemos todas
+                        allFacetsFromIndex = new LinkedHashMap<>();
+                        if (allDimsAll != null) {
+                            for (FacetResult fr : allDimsAll) {
+                                if (fr != null && fr.dim != null) {
+                                    allFacetsFromIndex.put(fr.dim, Arrays.asList(fr.labelValues));
+                                }
                             }
                         }
+                    }
+                }
+                
+                now = System.nanoTime();
+                event.facetas = now - phaseStart;
+                facetsMillis = event.facetas / 1_000_000;
+
+                TopDocs topDocs;
+                
+                // Si hay facetas seleccionadas, usamos DrillSideways para mantener conteos de todas las facetas
+                if (activeFacets != null && !activeFacets.isEmpty()) {
+                    DrillDownQuery ddq = new DrillDownQuery(fconfig, baseQuery);
+                    for (Map.Entry<String, List<String>> entry : activeFacets.entrySet()) {
+                        String dim = entry.getKey();
                         
-                        if (hasParentCategory) {
-                            // Obtener todas las facetas del índice completo (sin filtros)
-                            FacetsCollector fcAll = new FacetsCollector();
-                            searcher.search(new MatchAllDocsQuery(), fcAll);
-                            Facets facetsAll = new FastTaxonomyFacetCounts(taxoReader, fconfig, fcAll);
-                            List<FacetResult> allDimsAll = facetsAll.getAllDims(FACET_DIMS_ALL_LIMIT); // Obtener muchas para asegurar que tenemos todas
-                            allFacetsFromIndex = new LinkedHashMap<>();
-                            if (allDimsAll != null) {
-                                for (FacetResult fr : allDimsAll) {
-                                    if (fr != null && fr.dim != null) {
-                                        allFacetsFromIndex.put(fr.dim, Arrays.asList(fr.labelValues));
+                        // Para property_type jerárquico, usar la API de jerarquía de Lucene correctamente
+                        if ("property_type".equals(dim)) {
+                            // Separar categorías principales de subfacetas
+                            Set<String> categoriesSelected = new HashSet<>();
+                            Map<String, List<String>> categoryGroups = new HashMap<>();
+                            
+                            for (String label : entry.getValue()) {
+                                if (label.contains("/")) {
+                                    // Path completo: "home/entire home"
+                                    String[] parts = label.split("/", 2);
+                                    if (parts.length == 2) {
+                                        String category = parts[0];
+                                        String subType = parts[1];
+                                        categoryGroups.computeIfAbsent(category, k -> new ArrayList<>()).add(subType);
                                     }
+                                } else {
+                                    // Categoría principal seleccionada directamente: "home"
+                                    categoriesSelected.add(label);
                                 }
                             }
-                        }
-                    }
-                    
-                    TopDocs topDocs;
-                    
-                    // Si hay facetas seleccionadas, usamos DrillSideways para mantener conteos de todas las facetas
-                    if (activeFacets != null && !activeFacets.isEmpty()) {
-                        DrillDownQuery ddq = new DrillDownQuery(fconfig, baseQuery);
-                        for (Map.Entry<String, List<String>> entry : activeFacets.entrySet()) {
-                            String dim = entry.getKey();
                             
-                            // Para property_type jerárquico, usar la API de jerarquía de Lucene correctamente
-                            if ("property_type".equals(dim)) {
-                                // Separar categorías principales de subfacetas
-                                Set<String> categoriesSelected = new HashSet<>();
-                                Map<String, List<String>> categoryGroups = new HashMap<>();
-                                
-                                for (String label : entry.getValue()) {
-                                    if (label.contains("/")) {
-                                        // Path completo: "home/entire home"
-                                        String[] parts = label.split("/", 2);
-                                        if (parts.length == 2) {
-                                            String category = parts[0];
-                                            String subType = parts[1];
-                                            categoryGroups.computeIfAbsent(category, k -> new ArrayList<>()).add(subType);
-                                        }
-                                    } else {
-                                        // Categoría principal seleccionada directamente: "home"
-                                        categoriesSelected.add(label);
+                            // Procesar cada categoría:
+                            // - Si tiene hijos específicos seleccionados, usar solo esos hijos
+                            // - Si NO tiene hijos específicos pero está seleccionada como padre, usar TODOS sus hijos
+                            for (String category : categoriesSelected) {
+                                if (categoryGroups.containsKey(category)) {
+                                    // La categoría padre está seleccionada Y tiene hijos específicos seleccionados
+                                    // Usar SOLO los hijos específicos seleccionados (no todos los hijos del padre)
+                                    List<String> subTypes = categoryGroups.get(category);
+                                    for (String subType : subTypes) {
+                                        String fullPath = category + "/" + subType;
+                                        ddq.add(dim.trim(), fullPath);
                                     }
-                                }
-                                
-                                // Procesar cada categoría:
-                                // - Si tiene hijos específicos seleccionados, usar solo esos hijos
-                                // - Si NO tiene hijos específicos pero está seleccionada como padre, usar TODOS sus hijos
-                                for (String category : categoriesSelected) {
-                                    if (categoryGroups.containsKey(category)) {
-                                        // La categoría padre está seleccionada Y tiene hijos específicos seleccionados
-                                        // Usar SOLO los hijos específicos seleccionados (no todos los hijos del padre)
-                                        List<String> subTypes = categoryGroups.get(category);
-                                        for (String subType : subTypes) {
-                                            String fullPath = category + "/" + subType;
-                                            ddq.add(dim.trim(), fullPath);
-                                        }
-                                    } else {
-                                        // La categoría padre está seleccionada pero NO tiene hijos específicos seleccionados
-                                        // Usar TODOS los hijos del padre del índice completo
-                                        List<LabelAndValue> propertyTypeFacets = (allFacetsFromIndex != null) 
-                                            ? allFacetsFromIndex.get("property_type") 
-                                            : availableFacets.get("property_type");
-                                        
-                                        if (propertyTypeFacets != null) {
-                                            for (LabelAndValue lv : propertyTypeFacets) {
-                                                String path = lv.label;
-                                                if (path.startsWith(category + "/")) {
-                                                    // Esta es una subfaceta de la categoría seleccionada
-                                                    // Agregar el path completo como un solo string (como en BusquedasLucene)
-                                                    ddq.add(dim.trim(), path);
-                                                }
+                                } else {
+                                    // La categoría padre está seleccionada pero NO tiene hijos específicos seleccionados
+                                    // Usar TODOS los hijos del padre del índice completo
+                                    List<LabelAndValue> propertyTypeFacets = (allFacetsFromIndex != null) 
+                                        ? allFacetsFromIndex.get("property_type") 
+                                        : availableFacets.get("property_type");
+                                    
+                                    if (propertyTypeFacets != null) {
+                                        for (LabelAndValue lv : propertyTypeFacets) {
+                                            String path = lv.label;
+                                            if (path.startsWith(category + "/")) {
+                                                // Esta es una subfaceta de la categoría seleccionada
+                                                // Agregar el path completo como un solo string (como en BusquedasLucene)
+                                                ddq.add(dim.trim(), path);
                                             }
                                         }
                                     }
                                 }
-                                
-                                // Agregar subfacetas específicas de categorías que NO están seleccionadas como padre
-                                // (solo hijos específicos sin el padre)
-                                for (Map.Entry<String, List<String>> catEntry : categoryGroups.entrySet()) {
-                                    String category = catEntry.getKey();
-                                    // Solo agregar si la categoría NO está en categoriesSelected (solo hijos, sin padre)
-                                    if (!categoriesSelected.contains(category)) {
-                                        List<String> subTypes = catEntry.getValue();
-                                        for (String subType : subTypes) {
-                                            // Construir el path completo y agregarlo como un solo string
-                                            String fullPath = category + "/" + subType;
-                                            ddq.add(dim.trim(), fullPath);
-                                        }
+                            }
+                            
+                            // Agregar subfacetas específicas de categorías que NO están seleccionadas como padre
+                            // (solo hijos específicos sin el padre)
+                            for (Map.Entry<String, List<String>> catEntry : categoryGroups.entrySet()) {
+                                String category = catEntry.getKey();
+                                // Solo agregar si la categoría NO está en categoriesSelected (solo hijos, sin padre)
+                                if (!categoriesSelected.contains(category)) {
+                                    List<String> subTypes = catEntry.getValue();
+                                    for (String subType : subTypes) {
+                                        // Construir el path completo y agregarlo como un solo string
+                                        String fullPath = category + "/" + subType;
+                                        ddq.add(dim.trim(), fullPath);
                                     }
                                 }
-                            } else {
-                                // Faceta plana (no jerárquica): pasar el valor directamente
-                                for (String label : entry.getValue()) {
-                                    ddq.add(dim.trim(), label.trim());
-                                }
                             }
-                        }
-                        
-                        // Usar DrillSideways para mantener conteos de facetas relacionadas
-                        DrillSideways drillSideways = new DrillSideways(searcher, fconfig, taxoReader);
-                        DrillSideways.DrillSidewaysResult dsResult = drillSideways.search(ddq, MAX_RESULTS);
-                        
-                        topDocs = dsResult.hits;
-                        // Obtener el total de resultados usando reflexión para acceder al campo value
-                        try {
-                            java.lang.reflect.Field valueField = topDocs.totalHits.getClass().getDeclaredField("value");
-                            valueField.setAccessible(true);
-                            totalHits = valueField.getLong(topDocs.totalHits);
-                        } catch (Exception e) {
-                            // Fallback: usar el número de resultados mostrados
-                            totalHits = topDocs.scoreDocs.length;
-                        }
-                        
-                        // Obtener facetas del resultado de DrillSideways (mantiene conteos de todas las facetas)
-                        Facets facets = dsResult.facets;
-                        List<FacetResult> allDims = facets.getAllDims(FACET_DIMS_INITIAL_LIMIT);
-                        if (allDims != null) {
-                            for (FacetResult fr : allDims) {
-                                if (fr != null && fr.dim != null) {
-                                    facetsData.put(fr.dim, Arrays.asList(fr.labelValues));
-                                }
+                        } else {
+                            // Faceta plana (no jerárquica): pasar el valor directamente
+                            for (String label : entry.getValue()) {
+                                ddq.add(dim.trim(), label.trim());
                             }
                         }
-                    } else {
-                        // Sin facetas activas: búsqueda normal y recolección de facetas estándar
-                        topDocs = searcher.search(baseQuery, MAX_RESULTS);
-                        // Obtener el total de resultados usando reflexión para acceder al campo value
-                        try {
-                            java.lang.reflect.Field valueField = topDocs.totalHits.getClass().getDeclaredField("value");
-                            valueField.setAccessible(true);
-                            totalHits = valueField.getLong(topDocs.totalHits);
-                        } catch (Exception e) {
-                            // Fallback: usar el número de resultados mostrados
-                            totalHits = topDocs.scoreDocs.length;
-                        }
-                        facetsData = availableFacets;
                     }
-
-                    // Crear query para highlighting (solo si hay texto de búsqueda)
-                    Query highlightQuery = null;
-                    if (queryText != null && !queryText.isEmpty()) {
-                        try {
-                            QueryParser descriptionParser = new QueryParser("description", analyzer);
-                            highlightQuery = descriptionParser.parse(queryText);
-                        } catch (Exception e) {
-                            // Si falla el parseo, no aplicar highlighting
-                            highlightQuery = null;
+                    
+                    // Usar DrillSideways para mantener conteos de facetas relacionadas
+                    DrillSideways drillSideways = vista.drillSideways(searcher);
+                    long hitsStart = System.nanoTime();
+                    DrillSideways.DrillSidewaysResult dsResult = sort != null
+                            ? drillSideways.search(ddq, null, null, MAX_RESULTS, sort, false)
+                            : drillSideways.search(ddq, MAX_RESULTS);
+                    event.hits = System.nanoTime() - hitsStart;
+                    hitsMillis = event.hits / 1_000_000;
+                    
+                    topDocs = dsResult.hits;
+                    // Obtener el total de resultados usando reflexión para acceder al campo value
+                    try {
+                        java.lang.reflect.Field valueField = topDocs.totalHits.getClass().getDeclaredField("value");
+                        valueField.setAccessible(true);
+                        totalHits = valueField.getLong(topDocs.totalHits);
+                    } catch (Exception e) {
+                        // Fallback: usar el número de resultados mostrados
+                        totalHits = topDocs.scoreDocs.length;
+                    }
+                    
+                    // Obtener facetas del resultado de DrillSideways (mantiene conteos de todas las facetas)
+                    Facets facets = dsResult.facets;
+                    List<FacetResult> allDims = facets.getAllDims(FACET_DIMS_INITIAL_LIMIT);
+                    if (allDims != null) {
+                        for (FacetResult fr : allDims) {
+                            if (fr != null && fr.dim != null) {
+                                facetsData.put(fr.dim, Arrays.asList(fr.labelValues));
+                            }
                         }
                     }
+                } else {
+                    // Sin facetas activas: búsqueda normal y recolección de facetas estándar
+                    long hitsStart = System.nanoTime();
+                    topDocs = sort != null
+                            ? searcher.search(baseQuery, MAX_RESULTS, sort)
+                            : searcher.search(baseQuery, MAX_RESULTS);
+                    event.hits = System.nanoTime() - hitsStart;
+                    hitsMillis = event.hits / 1_000_000;
+                    // Obtener el total de resultados usando reflexión para acceder al campo value
+                    try {
+                        java.lang.reflect.Field valueField = topDocs.totalHits.getClass().getDeclaredField("value");
+                        valueField.setAccessible(true);
+                        totalHits = valueField.getLong(topDocs.totalHits);
+                    } catch (Exception e) {
+                        // Fallback: usar el número de resultados mostrados
+                        totalHits = topDocs.scoreDocs.length;
+                    }
+                    facetsData = availableFacets;
+                }
 
-                    // Procesar resultados de documentos
-                    for (ScoreDoc sd : topDocs.scoreDocs) {
-                        Document doc = searcher.storedFields().document(sd.doc);
+                // El total es una cota inferior también en búsquedas por relevancia con
+                // más de 1000 coincidencias, o si un orden ajeno al del índice descarta
+                // coincidencias no competitivas: solo hay terminación anticipada por
+                // orden del índice si el orden usado es un prefijo suyo
+                totalHitsLowerBound = topDocs.totalHits.relation() == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO;
+                earlyTerminated = sortedByIndex && totalHitsLowerBound;
+                phaseStart = System.nanoTime();
 
-                        String name = doc.get("name");
-                        String neigh = doc.get("neighbourhood_cleansed_original");
-                        String type = doc.get("property_type_original");
-                        String description = doc.get("description");
+                // Crear query para highlighting (solo si hay texto de búsqueda)
+                Query highlightQuery = null;
+                if (queryText != null && !queryText.isEmpty()) {
+                    try {
+                        QueryParser descriptionParser = new QueryParser("description", analyzer);
+                        highlightQuery = descriptionParser.parse(queryText);
+                    } catch (Exception e) {
+                        // Si falla el parseo, no aplicar highlighting
+                        highlightQuery = null;
+                    }
+                }
 
-                        // Aplicar highlighting a la descripción si hay query de texto
-                        String descriptionHighlighted = description;
-                        if (highlightQuery != null && description != null && !description.isEmpty()) {
-                            descriptionHighlighted = applyHighlighting(description, highlightQuery, analyzer, "description");
-                        }
+                // Con offsets en los postings (AirbnbIndexador --offsets) se resaltan
+                // todos los resultados de una vez sin volver a analizar las descripciones
+                String[] descripcionesResaltadas = null;
+                if (highlightQuery != null && vista.offsets) {
+                    descripcionesResaltadas = highlightWithOffsets(searcher, analyzer, highlightQuery, topDocs);
+                }
 
-                        Double price = null;
-                        String priceStr = doc.get("price");
-                        if (priceStr != null) {
-                            try {
-                                price = Double.parseDouble(priceStr);
-                            } catch (NumberFormatException ignored) {
-                            }
+                // Procesar resultados de documentos
+                for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                    ScoreDoc sd = topDocs.scoreDocs[i];
+                    Document doc = searcher.storedFields().document(sd.doc);
+
+                    String name = doc.get("name");
+                    String neigh = doc.get("neighbourhood_cleansed_original");
+                    String type = doc.get("property_type_original");
+                    String description = doc.get("description");
+
+                    // Aplicar highlighting a la descripción si hay query de texto
+                    String descriptionHighlighted = description;
+                    if (descripcionesResaltadas != null) {
+                        if (descripcionesResaltadas[i] != null) {
+                            descriptionHighlighted = descripcionesResaltadas[i];
                         }
+                    } else if (highlightQuery != null && description != null && !description.isEmpty()) {
+                        descriptionHighlighted = applyHighlighting(description, highlightQuery, analyzer, "description");
+                    }
 
-                        Double rating = null;
-                        String ratingStr = doc.get("review_scores_rating");
-                        if (ratingStr != null) {
-                            try {
-                                rating = Double.parseDouble(ratingStr);
-                            } catch (NumberFormatException ignored) {
-                            }
+                    Double price = null;
+                    String priceStr = doc.get("price");
+                    if (priceStr != null) {
+                        try {
+                            price = Double.parseDouble(priceStr);
+                        } catch (NumberFormatException ignored) {
                         }
+                    }
 
-                        Integer reviews = null;
-                        String reviewsStr = doc.get("number_of_reviews");
-                        if (reviewsStr != null) {
-                            try {
-                                reviews = Integer.parseInt(reviewsStr);
-                            } catch (NumberFormatException ignored) {
-                            }
+                    Double rating = null;
+                    String ratingStr = doc.get("review_scores_rating");
+                    if (ratingStr != null) {
+                        try {
+                            rating = Double.parseDouble(ratingStr);
+                        } catch (NumberFormatException ignored) {
                         }
+                    }
 
-                        Integer bedrooms = null;
-                        String bedroomsStr = doc.get("bedrooms");
-                        if (bedroomsStr != null) {
-                            try {
-                                bedrooms = Integer.parseInt(bedroomsStr);
-                            } catch (NumberFormatException ignored) {
-                            }
+                    Integer reviews = null;
+                    String reviewsStr = doc.get("number_of_reviews");
+                    if (reviewsStr != null) {
+                        try {
+                            reviews = Integer.parseInt(reviewsStr);
+                        } catch (NumberFormatException ignored) {
                         }
+                    }
 
-                        Integer bathrooms = null;
-                        String bathroomsStr = doc.get("bathrooms");
-                        if (bathroomsStr != null) {
-                            try {
-                                // bathrooms puede ser decimal, pero lo tratamos como entero para la tabla
-                                double bathroomsDouble = Double.parseDouble(bathroomsStr);
-                                bathrooms = (int) Math.round(bathroomsDouble);
-                            } catch (NumberFormatException ignored) {
-                            }
+                    Integer bedrooms = null;
+                    String bedroomsStr = doc.get("bedrooms");
+                    if (bedroomsStr != null) {
+                        try {
+                            bedrooms = Integer.parseInt(bedroomsStr);
+                        } catch (NumberFormatException ignored) {
                         }
+                    }
 
-                        String listingUrl = doc.get("listing_url");
-
-                        // Extraer todas las amenidades (campo multivaluado)
-                        String[] amenityValues = doc.getValues("amenity");
-                        String amenitiesStr = "";
-                        if (amenityValues != null && amenityValues.length > 0) {
-                            amenitiesStr = String.join(", ", amenityValues);
+                    Integer bathrooms = null;
+                    String bathroomsStr = doc.get("bathrooms");
+                    if (bathroomsStr != null) {
+                        try {
+                            // bathrooms puede ser decimal, pero lo tratamos como entero para la tabla
+                            double bathroomsDouble = Double.parseDouble(bathroomsStr);
+                            bathrooms = (int) Math.round(bathroomsDouble);
+                        } catch (NumberFormatException ignored) {
                         }
+                    }
+
+                    String listingUrl = doc.get("listing_url");
 
-                        results.add(new PropertyResult(0, name, neigh, type, price, rating, reviews, bedrooms, bathrooms, listingUrl, amenitiesStr, description, descriptionHighlighted));
+                    // Extraer todas las amenidades (campo multivaluado)
+                    String[] amenityValues = doc.getValues("amenity");
+                    String amenitiesStr = "";
+                    if (amenityValues != null && amenityValues.length > 0) {
+                        amenitiesStr = String.join(", ", amenityValues);
                     }
+
+                    results.add(new PropertyResult(0, name, neigh, type, price, rating, reviews, bedrooms, bathrooms, listingUrl, amenitiesStr, description, descriptionHighlighted));
                 }
+                event.resultados = System.nanoTime() - phaseStart;
 
                 // Construir texto de query para mostrar
                 if (activeFacets != null && !activeFacets.isEmpty()) {
@@ -1263,10 +1366,28 @@ public class AirbnbSearchApp extends Application {
                     luceneQueryText = baseQuery.toString();
                 }
 
-                reader.close();
-
             } catch (Exception e) {
                 errorMessage = e.getMessage();
+            } finally {
+                if (vista != null) {
+                    try {
+                        vista.close();
+                    } catch (IOException e) {
+                        // La vista ya no se usa
+                    }
+                }
+            }
+
+            // Evento JFR con la duración de cada fase (alineado con GC y CPU en la grabación)
+            if (event.shouldCommit()) {
+                event.consulta = queryText;
+                event.orden = sortSpec;
+                event.conFacetas = activeFacets != null && !activeFacets.isEmpty();
+                event.totalHits = totalHits;
+                event.devueltos = results.size();
+                event.terminacionTemprana = earlyTerminated;
+                event.error = errorMessage;
+                event.commit();
             }
 
             final String errorFinal = errorMessage;
@@ -1275,6 +1396,10 @@ public class AirbnbSearchApp extends Application {
             final List<PropertyResult> resultsFinal = results;
             final Map<String, List<LabelAndValue>> facetsFinal = facetsData;
             final long totalHitsFinal = totalHits;
+            final boolean totalHitsLowerBoundFinal = totalHitsLowerBound;
+            final boolean earlyTerminatedFinal = earlyTerminated;
+            final long hitsMillisFinal = hitsMillis;
+            final long facetsMillisFinal = facetsMillis;
 
             Platform.runLater(() -> {
                 resultsData.setAll(resultsFinal);
@@ -1293,9 +1418,18 @@ public class AirbnbSearchApp extends Application {
                         queryLabel.setText("");
                     }
                 } else {
-                    String resultsText = totalHitsFinal > resultsFinal.size() 
+                    String resultsText = totalHitsLowerBoundFinal
+                        ? "Encontrados al menos " + totalHitsFinal + " resultados (mostrando " + resultsFinal.size() + ") en " + elapsed + " ms."
+                        : totalHitsFinal > resultsFinal.size() 
                         ? "Encontrados " + totalHitsFinal + " resultados (mostrando " + resultsFinal.size() + ") en " + elapsed + " ms."
                         : "Encontrados " + resultsFinal.size() + " resultados en " + elapsed + " ms.";
+                    if (sortSpec != null) {
+                        // La terminación anticipada solo acorta la recogida de resultados: el
+                        // conteo de facetas sigue recorriendo todas las coincidencias
+                        resultsText += " Orden: " + sortCombo.getValue() + " (resultados en " + hitsMillisFinal + " ms"
+                                + (earlyTerminatedFinal ? ", terminación anticipada por orden del índice" : "")
+                                + "; facetas sobre todas las coincidencias en " + facetsMillisFinal + " ms)";
+                    }
                     statusLabel.setText(resultsText);
                     if (queryLabel != null) {
                         queryLabel.setText("Query Lucene: " + luceneQueryFinal);
@@ -1305,6 +1439,83 @@ public class AirbnbSearchApp extends Application {
         }, "lucene-search-thread").start();
     }
 
+    /**
+     * Especificación de orden (formato de AirbnbIndexador.parseIndexSort) de la
+     * opción elegida, o null para relevancia
+     */
+    private String selectedSortSpec() {
+        return sortCombo != null ? SORT_OPTIONS.get(sortCombo.getValue()) : null;
+    }
+
+    /**
+     * Orden del índice si todos los segmentos lo tienen y es el mismo, o null. Con
+     * varios shards en un MultiReader cada uno puede tener su propio --index-sort
+     * (o ninguno), y mirar solo el primer segmento no basta.
+     */
+    private static Sort commonIndexSort(IndexReader reader) {
+        Sort common = null;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Sort sort = leaf.reader().getMetaData().sort();
+            if (sort == null || (common != null && !common.equals(sort))) {
+                return null;
+            }
+            common = sort;
+        }
+        return common;
+    }
+
+    /**
+     * Si el índice está ordenado (--index-sort) y el orden pedido coincide con el
+     * del índice una vez descontados sus primeros campos que ya son constantes
+     * por los filtros (p. ej. un único barrio), devuelve el orden completo del
+     * índice: ordena igual los resultados y permite a Lucene dejar de recorrer
+     * cada segmento en cuanto tiene los primeros. Si no, devuelve el pedido.
+     */
+    private static Sort alignWithIndexSort(Sort requested, IndexReader reader, Set<String> fixedFields) {
+        Sort indexSort = commonIndexSort(reader);
+        if (indexSort == null) {
+            return requested;
+        }
+        SortField[] index = indexSort.getSort();
+        SortField[] wanted = requested.getSort();
+        for (int prefix = 0; prefix <= index.length - wanted.length; prefix++) {
+            if (prefix > 0 && !fixedFields.contains(index[prefix - 1].getField())) {
+                break;
+            }
+            boolean matches = true;
+            for (int i = 0; i < wanted.length && matches; i++) {
+                matches = index[prefix + i].equals(wanted[i]);
+            }
+            if (matches) {
+                SortField[] aligned = Arrays.copyOf(index, prefix + wanted.length);
+                return new Sort(aligned);
+            }
+        }
+        return requested;
+    }
+
+    /**
+     * true si el índice está ordenado y 'sort' es un prefijo de su orden: solo
+     * entonces Lucene puede terminar cada segmento en cuanto tiene los primeros
+     */
+    private static boolean isIndexSortPrefix(Sort sort, IndexReader reader) {
+        Sort indexSort = commonIndexSort(reader);
+        if (indexSort == null) {
+            return false;
+        }
+        SortField[] index = indexSort.getSort();
+        SortField[] used = sort.getSort();
+        if (used.length > index.length) {
+            return false;
+        }
+        for (int i = 0; i < used.length; i++) {
+            if (!index[i].equals(used[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static Double parseDoubleOrNull(String text) {
         if (text == null || text.isBlank()) {
             return null;
@@ -1499,26 +1710,49 @@ public class AirbnbSearchApp extends Application {
             TokenStream tokenStream = analyzer.tokenStream(fieldName, new StringReader(text));
             String highlighted = highlighter.getBestFragment(tokenStream, text);
             
-            // Si no hay fragmentos resaltados, retornar el texto original
-            if (highlighted == null) {
-                return text;
-            }
-            
-            // Limpiar el texto resaltado: eliminar <br> tags y normalizar espacios
-            // Esto previene que las filas se hagan excesivamente altas
-            highlighted = highlighted
-                .replaceAll("(?i)<br\\s*/?>", " ")  // Eliminar <br>, <br/>, <br />
-                .replaceAll("\\s+", " ")             // Normalizar múltiples espacios a uno solo
-                .replaceAll("\\n+", " ")             // Reemplazar newlines con espacios
-                .trim();                             // Eliminar espacios al inicio/final
-            
-            return highlighted;
+            // Si no hay fragmentos resaltados, retornar el texto original.
+            // No hace falta limpiar el resultado: el indexador guarda la descripción
+            // ya normalizada (HtmlTexto: sin etiquetas, entidades ni saltos de línea)
+            return highlighted != null ? highlighted : text;
         } catch (Exception e) {
             // En caso de error, retornar el texto original
             return text;
         }
     }
 
+    /**
+     * Resalta la descripción de todos los resultados con UnifiedHighlighter,
+     * que toma las posiciones de los términos de los offsets indexados en los
+     * postings. Devuelve la descripción completa con etiquetas <mark> (como
+     * applyHighlighting), en el orden de topDocs.
+     *
+     * @return una descripción por resultado (null si el documento no tiene), o
+     *         null si hay error (se vuelve a applyHighlighting)
+     */
+    private String[] highlightWithOffsets(IndexSearcher searcher, Analyzer analyzer, Query query,
+            TopDocs topDocs) {
+        try {
+            UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+                    .withFormatter(new DefaultPassageFormatter("<mark>", "</mark>", " ", false))
+                    .withBreakIterator(WholeBreakIterator::new)
+                    .withMaxLength(Integer.MAX_VALUE - 1)
+                    // Sin Matches API: con términos y frases sueltos marca lo mismo y
+                    // evita crear un Weight por documento
+                    .withWeightMatches(false)
+                    .build();
+            return highlighter.highlight(AirbnbIndexador.FIELD_DESCRIPTION, query, topDocs, 1);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (lectorFacetas != null) {
+            lectorFacetas.close();
+        }
+    }
+
     public static void main(String[] args) {
         // Pasamos args directamente a JavaFX; esto permite usar --index-root también aquí.
         launch(args);
@@ -1844,20 +2078,7 @@ public class AirbnbSearchApp extends Application {
      * Maneja tanto facetas simples como jerárquicas anidadas.
      */
     private void applyFacetSelection() {
-        Map<String, List<String>> selectedFacets = new LinkedHashMap<>();
-        if (facetsContainer != null) {
-            for (javafx.scene.Node node : facetsContainer.getChildren()) {
-                if (node instanceof TitledPane) {
-                    TitledPane pane = (TitledPane) node;
-                    javafx.scene.Node content = pane.getContent();
-                    if (content instanceof VBox) {
-                        VBox vbox = (VBox) content;
-                        // Recursivamente buscar checkboxes en VBoxes anidados (para facetas jerárquicas)
-                        collectCheckboxesFromVBox(vbox, selectedFacets);
-                    }
-                }
-            }
-        }
+        Map<String, List<String>> selectedFacets = selectedFacets();
 
         final String queryText = simpleQueryField.getText() != null
                 ? simpleQueryField.getText().trim()
@@ -1902,7 +2123,28 @@ public class AirbnbSearchApp extends Application {
         statusLabel.setText("Aplicando filtros por facetas...");
         runSearchInBackground(queryText, neighbourhood, minPriceText, maxPriceText, 
                 ratingText, reviewsText, bedroomsText, bathroomsText,
-                amenityText, propertyTypeText, latText, lonText, radiusText, selectedFacets);
+                amenityText, propertyTypeText, latText, lonText, radiusText, selectedFacets, selectedSortSpec());
+    }
+
+    /**
+     * Facetas marcadas en el sidebar, por dimensión (vacío si no hay ninguna)
+     */
+    private Map<String, List<String>> selectedFacets() {
+        Map<String, List<String>> selectedFacets = new LinkedHashMap<>();
+        if (facetsContainer != null) {
+            for (javafx.scene.Node node : facetsContainer.getChildren()) {
+                if (node instanceof TitledPane) {
+                    TitledPane pane = (TitledPane) node;
+                    javafx.scene.Node content = pane.getContent();
+                    if (content instanceof VBox) {
+                        VBox vbox = (VBox) content;
+                        // Recursivamente buscar checkboxes en VBoxes anidados (para facetas jerárquicas)
+                        collectCheckboxesFromVBox(vbox, selectedFacets);
+                    }
+                }
+            }
+        }
+        return selectedFacets;
     }
 
     /**
@@ -1966,7 +2208,7 @@ public class AirbnbSearchApp extends Application {
         statusLabel.setText("Filtros de facetas limpiados.");
         runSearchInBackground(queryText, neighbourhood, minPriceText, maxPriceText, 
                 ratingText, reviewsText, bedroomsText, bathroomsText,
-                amenityText, propertyTypeText, latText, lonText, radiusText, null);
+                amenityText, propertyTypeText, latText, lonText, radiusText, null, selectedSortSpec());
     }
 
     /**
@@ -0,0 +1,173 @@
+/**
+ * Conjunto concurrente de long primitivos con direccionamiento abierto.
+ *
+ * Pensado para deduplicar host_id durante la indexación: cada elemento ocupa 8
+ * bytes en un long[] (más el hueco por factor de carga), sin objetos Long ni
+ * nodos de HashMap. Con unos pocos millones de hosts ocupa decenas de MB.
+ *
+ * El espacio se reparte en segmentos (potencia de dos) con su propio lock y su
+ * propia tabla, de modo que los workers rara vez compiten y cada segmento crece
+ * por separado. Dentro de un segmento se usa sondeo lineal; el 0 marca hueco
+ * libre y se guarda aparte con un flag.
+ */
+public class ConcurrentLongHashSet {
+
+    private static final float CARGA_MAX = 0.75f;
+    private static final int CAPACIDAD_MIN_SEGMENTO = 16;
+
+    private final Segmento[] segmentos;
+    private final int desplazamiento; // bits altos del hash que eligen segmento
+
+    /**
+     * @param capacidadEsperada número de elementos esperado (orientativo)
+     * @param numSegmentos      segmentos independientes (se redondea a potencia
+     *                          de dos)
+     */
+    public ConcurrentLongHashSet(int capacidadEsperada, int numSegmentos) {
+        int n = 1;
+        while (n < numSegmentos) {
+            n <<= 1;
+        }
+        segmentos = new Segmento[n];
+        int porSegmento = (int) Math.min(1 << 30, (long) (capacidadEsperada / CARGA_MAX) / n + 1);
+        for (int i = 0; i < n; i++) {
+            segmentos[i] = new Segmento(Math.max(CAPACIDAD_MIN_SEGMENTO, Integer.highestOneBit(porSegmento - 1) << 1));
+        }
+        desplazamiento = 64 - Integer.numberOfTrailingZeros(n);
+    }
+
+    /**
+     * Añade un valor
+     *
+     * @return true si no estaba en el conjunto
+     */
+    public boolean add(long valor) {
+        long h = mezclar(valor);
+        Segmento s = segmento(h);
+        synchronized (s) {
+            return s.add(valor, h);
+        }
+    }
+
+    /**
+     * Indica si el valor está en el conjunto
+     */
+    public boolean contains(long valor) {
+        long h = mezclar(valor);
+        Segmento s = segmento(h);
+        synchronized (s) {
+            return s.contains(valor, h);
+        }
+    }
+
+    /**
+     * Número de elementos
+     */
+    public long size() {
+        long total = 0;
+        for (Segmento s : segmentos) {
+            synchronized (s) {
+                total += s.tamano + (s.contieneCero ? 1 : 0);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Memoria aproximada ocupada por las tablas (bytes)
+     */
+    public long ramBytesUsed() {
+        long total = 16L + 16L + 4L * segmentos.length;
+        for (Segmento s : segmentos) {
+            synchronized (s) {
+                total += 32L + 16L + 8L * s.tabla.length;
+            }
+        }
+        return total;
+    }
+
+    private Segmento segmento(long h) {
+        return segmentos.length == 1 ? segmentos[0] : segmentos[(int) (h >>> desplazamiento)];
+    }
+
+    /**
+     * Finalizador de MurmurHash3 (64 bits): reparte bien ids consecutivos
+     */
+    private static long mezclar(long v) {
+        v ^= v >>> 33;
+        v *= 0xff51afd7ed558ccdL;
+        v ^= v >>> 33;
+        v *= 0xc4ceb9fe1a85ec53L;
+        v ^= v >>> 33;
+        return v;
+    }
+
+    private static final class Segmento {
+        long[] tabla;
+        int tamano;
+        boolean contieneCero;
+
+        Segmento(int capacidad) {
+            tabla = new long[capacidad];
+        }
+
+        boolean add(long valor, long h) {
+            if (valor == 0) {
+                if (contieneCero) {
+                    return false;
+                }
+                contieneCero = true;
+                return true;
+            }
+            int mascara = tabla.length - 1;
+            int i = (int) h & mascara;
+            while (true) {
+                long actual = tabla[i];
+                if (actual == 0) {
+                    tabla[i] = valor;
+                    if (++tamano > tabla.length * CARGA_MAX) {
+                        crecer();
+                    }
+                    return true;
+                }
+                if (actual == valor) {
+                    return false;
+                }
+                i = (i + 1) & mascara;
+            }
+        }
+
+        boolean contains(long valor, long h) {
+            if (valor == 0) {
+                return contieneCero;
+            }
+            int mascara = tabla.length - 1;
+            int i = (int) h & mascara;
+            while (true) {
+                long actual = tabla[i];
+                if (actual == 0) {
+                    return false;
+                }
+                if (actual == valor) {
+                    return true;
+                }
+                i = (i + 1) & mascara;
+            }
+        }
+
+        private void crecer() {
+            long[] anterior = tabla;
+            tabla = new long[anterior.length << 1];
+            int mascara = tabla.length - 1;
+            for (long valor : anterior) {
+                if (valor != 0) {
+                    int i = (int) mezclar(valor) & mascara;
+                    while (tabla[i] != 0) {
+                        i = (i + 1) & mascara;
+                    }
+                    tabla[i] = valor;
+                }
+            }
+        }
+    }
+}
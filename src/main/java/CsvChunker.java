@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Divide un CSV en rangos de bytes que pueden parsearse en paralelo, cada uno
+ * con su propio CsvMappedReader.
+ *
+ * Un salto de línea no es necesariamente un fin de fila: description y
+ * host_about contienen saltos de línea dentro de comillas, y desde un punto
+ * arbitrario del archivo no se sabe si se está dentro o fuera de comillas. Para
+ * cada punto de corte nominal se prueban los saltos de línea siguientes como
+ * candidatos a inicio de fila: un candidato es válido si las siguientes
+ * FILAS_VALIDACION filas parseadas desde él tienen exactamente el número de
+ * columnas de la cabecera. Empezar dentro de un campo entrecomillado invierte la
+ * paridad de comillas y descuadra las columnas casi de inmediato.
+ *
+ * Si no aparece ningún candidato válido en BUSQUEDA_MAX bytes el corte se
+ * descarta (el rango anterior absorbe al siguiente) y se informa en
+ * Division.cortesDescartados.
+ */
+public class CsvChunker {
+
+    private static final int FILAS_VALIDACION = 16;
+    private static final long BUSQUEDA_MAX = 8L << 20; // bytes a explorar por corte
+    private static final long VENTANA_VALIDACION = 4L << 20; // bytes leídos para validar un candidato
+    private static final int TAMANO_LECTURA = 64 << 10;
+
+    /**
+     * Rango [inicio, fin) del archivo que empieza en un inicio de fila
+     */
+    public static class Bloque {
+        public final int indice;
+        public final long inicio;
+        public final long fin;
+
+        Bloque(int indice, long inicio, long fin) {
+            this.indice = indice;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        @Override
+        public String toString() {
+            return "bloque " + indice + " [" + inicio + ", " + fin + ")";
+        }
+    }
+
+    /**
+     * Resultado de la división: bloques contiguos y cortes que no se pudieron
+     * resincronizar
+     */
+    public static class Division {
+        public final List<Bloque> bloques = new ArrayList<>();
+        public final List<Long> cortesDescartados = new ArrayList<>();
+    }
+
+    private CsvChunker() {
+    }
+
+    /**
+     * Divide [inicio, tamaño del archivo) en hasta numBloques rangos de al menos
+     * tamanoMinimo bytes.
+     *
+     * @param inicio       offset del primer byte de datos (tras la cabecera)
+     * @param numColumnas  columnas de la cabecera, usadas para validar candidatos
+     */
+    public static Division dividir(Path path, Charset charset, String delimiter, long inicio, int numColumnas,
+            int numBloques, long tamanoMinimo) throws IOException {
+        Division division = new Division();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fin = channel.size();
+            long datos = fin - inicio;
+            int n = (int) Math.max(1, Math.min(numBloques, datos / Math.max(1, tamanoMinimo)));
+
+            long inicioBloque = inicio;
+            for (int k = 1; k < n; k++) {
+                long nominal = inicio + datos * k / n;
+                if (nominal <= inicioBloque) {
+                    continue;
+                }
+                long corte = resincronizar(channel, path, charset, delimiter, nominal, fin, numColumnas);
+                if (corte < 0) {
+                    division.cortesDescartados.add(nominal);
+                    continue;
+                }
+                if (corte <= inicioBloque || corte >= fin) {
+                    continue;
+                }
+                division.bloques.add(new Bloque(division.bloques.size(), inicioBloque, corte));
+                inicioBloque = corte;
+            }
+            if (inicioBloque < fin || division.bloques.isEmpty()) {
+                division.bloques.add(new Bloque(division.bloques.size(), inicioBloque, fin));
+            }
+        }
+        return division;
+    }
+
+    /**
+     * Busca el primer inicio de fila válido a partir de 'desde'
+     *
+     * @return offset del inicio de fila, o -1 si no se encuentra en BUSQUEDA_MAX
+     *         bytes
+     */
+    private static long resincronizar(FileChannel channel, Path path, Charset charset, String delimiter, long desde,
+            long fin, int numColumnas) throws IOException {
+        long limite = Math.min(fin, desde + BUSQUEDA_MAX);
+        ByteBuffer buf = ByteBuffer.allocate(TAMANO_LECTURA);
+        long pos = desde;
+        while (pos < limite) {
+            buf.clear();
+            if (limite - pos < buf.capacity()) {
+                buf.limit((int) (limite - pos));
+            }
+            int leidos = channel.read(buf, pos);
+            if (leidos <= 0) {
+                break;
+            }
+            for (int i = 0; i < leidos; i++) {
+                if (buf.get(i) == '\n') {
+                    long candidato = pos + i + 1;
+                    if (candidato >= fin) {
+                        return -1;
+                    }
+                    if (esInicioDeFila(path, charset, delimiter, candidato, fin, numColumnas)) {
+                        return candidato;
+                    }
+                }
+            }
+            pos += leidos;
+        }
+        return -1;
+    }
+
+    /**
+     * Comprueba si las filas parseadas desde 'candidato' tienen el número de
+     * columnas esperado
+     */
+    private static boolean esInicioDeFila(Path path, Charset charset, String delimiter, long candidato, long fin,
+            int numColumnas) throws IOException {
+        long finVentana = Math.min(fin, candidato + VENTANA_VALIDACION);
+        boolean hastaFinal = finVentana == fin;
+        try (CsvMappedReader reader = new CsvMappedReader(path, charset, delimiter, candidato, finVentana)) {
+            int validas = 0;
+            boolean pendiente = false; // fila leída que puede estar cortada por la ventana
+            CsvMappedReader.Row row;
+            while (validas < FILAS_VALIDACION && (row = reader.next()) != null) {
+                if (pendiente) {
+                    return false;
+                }
+                if (row.size() != numColumnas) {
+                    if (hastaFinal || reader.position() < finVentana) {
+                        return false;
+                    }
+                    // Última fila de la ventana: solo es inválida si le siguen más filas
+                    pendiente = true;
+                    continue;
+                }
+                validas++;
+            }
+            return validas > 0;
+        }
+    }
+}
@@ -0,0 +1,628 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lector CSV sobre FileChannel + MappedByteBuffer.
+ *
+ * Recorre los bytes del archivo una sola vez: en la misma pasada detecta el
+ * fin de fila (salto de línea fuera de comillas, por lo que las filas
+ * multi-línea de description/host_about no necesitan reensamblarse) y los
+ * límites de cada campo. Los campos solo se decodifican a String cuando se leen
+ * con Row.get(i); las columnas que nadie consulta nunca se convierten.
+ *
+ * El archivo se mapea por ventanas (máx. VENTANA_MAX bytes) para soportar CSV de
+ * varios GB. Las filas guardan una referencia a su ventana, así que pueden
+ * leerse desde otro hilo después de que el lector haya avanzado.
+ *
+ * También puede leer de un InputStream (entrada comprimida, ver
+ * EntradaComprimida): las ventanas son entonces buffers en heap de TROZO_STREAM
+ * bytes que se van leyendo en orden; una fila que cruza el final de una
+ * ventana se copia al comienzo de la siguiente. Los offsets son posiciones en
+ * el flujo descomprimido.
+ *
+ * Requiere un charset compatible con ASCII (UTF-8, ISO-8859-x...): comillas,
+ * delimitador y saltos de línea se buscan como bytes.
+ */
+public class CsvMappedReader implements Closeable {
+
+    private static final long VENTANA_MAX = 1L << 30; // 1 GB por mapeo
+    private static final int TROZO_STREAM = 4 << 20; // bytes leídos del InputStream por ventana
+    private static final byte COMILLA = '"';
+    private static final byte SALTO = '\n';
+    private static final byte RETORNO = '\r';
+
+    // Marca en el límite final de un campo que contiene comillas (requiere
+    // decodificación lenta: quitar comillas y desescapar "")
+    private static final int CON_COMILLAS = 1 << 31;
+
+    // Parseo numérico rápido: mantisa y potencia de 10 exactas en double
+    private static final long MANTISA_EXACTA = 1L << 53;
+    private static final double[] POTENCIAS_10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final FileChannel channel; // null si se lee de un InputStream
+    private final InputStream entrada;
+    private final Charset charset;
+    private final byte delimiter;
+    private long fin; // con InputStream, Long.MAX_VALUE hasta llegar al final
+
+    private ByteBuffer ventana;
+    private long ventanaInicio;
+    private long posicion;
+
+    /**
+     * Abre el archivo completo
+     */
+    public CsvMappedReader(Path path, Charset charset, String delimiter) throws IOException {
+        this(path, charset, delimiter, 0, -1);
+    }
+
+    /**
+     * Abre el rango [inicio, fin) del archivo. fin = -1 significa hasta el final.
+     * inicio debe coincidir con el comienzo de una fila.
+     */
+    public CsvMappedReader(Path path, Charset charset, String delimiter, long inicio, long fin) throws IOException {
+        validar(charset, delimiter);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.entrada = null;
+        this.charset = charset;
+        this.delimiter = (byte) delimiter.charAt(0);
+        long size = channel.size();
+        this.fin = fin < 0 ? size : Math.min(fin, size);
+        this.posicion = inicio;
+
+        // Saltar BOM UTF-8 al comienzo del archivo
+        if (inicio == 0 && this.fin >= 3 && StandardCharsets.UTF_8.equals(charset)) {
+            ByteBuffer bom = ByteBuffer.allocate(3);
+            channel.read(bom, 0);
+            if (bom.get(0) == (byte) 0xEF && bom.get(1) == (byte) 0xBB && bom.get(2) == (byte) 0xBF) {
+                this.posicion = 3;
+            }
+        }
+    }
+
+    /**
+     * Lee secuencialmente un InputStream a partir del byte 'inicio' (los
+     * anteriores se descartan), que debe coincidir con el comienzo de una fila.
+     * El lector cierra el stream.
+     */
+    public CsvMappedReader(InputStream entrada, Charset charset, String delimiter, long inicio) throws IOException {
+        validar(charset, delimiter);
+        this.channel = null;
+        this.entrada = entrada;
+        this.charset = charset;
+        this.delimiter = (byte) delimiter.charAt(0);
+        this.fin = Long.MAX_VALUE;
+        entrada.skipNBytes(inicio);
+        this.ventanaInicio = inicio;
+        this.posicion = inicio;
+
+        // Saltar BOM UTF-8 al comienzo del flujo
+        if (inicio == 0 && StandardCharsets.UTF_8.equals(charset)) {
+            mapear(0);
+            if (ventana.limit() >= 3 && ventana.get(0) == (byte) 0xEF && ventana.get(1) == (byte) 0xBB
+                    && ventana.get(2) == (byte) 0xBF) {
+                this.posicion = 3;
+            }
+        }
+    }
+
+    private static void validar(Charset charset, String delimiter) {
+        if (!esCompatibleAscii(charset)) {
+            throw new IllegalArgumentException("Codificación no soportada por el lector CSV (requiere un charset "
+                    + "compatible con ASCII, ej: utf-8): " + charset);
+        }
+        if (delimiter == null || delimiter.length() != 1 || delimiter.charAt(0) > 0x7F) {
+            throw new IllegalArgumentException("El delimitador debe ser un único carácter ASCII: " + delimiter);
+        }
+    }
+
+    /**
+     * Offset (en bytes) donde empieza la siguiente fila
+     */
+    public long position() {
+        return posicion;
+    }
+
+    /**
+     * Lee la siguiente fila completa en una Row nueva.
+     *
+     * @return la fila, o null al llegar al final del rango
+     */
+    public Row next() throws IOException {
+        Row row = new Row(charset);
+        return next(row) ? row : null;
+    }
+
+    /**
+     * Lee la siguiente fila completa reutilizando 'row' (sus arrays internos se
+     * conservan entre filas, así que en régimen estable no se reserva memoria).
+     *
+     * @return false al llegar al final del rango
+     */
+    public boolean next(Row row) throws IOException {
+        if (posicion >= fin) {
+            return false;
+        }
+        while (true) {
+            if (ventana == null || posicion < ventanaInicio || posicion >= ventanaInicio + ventana.limit()) {
+                mapear(posicion);
+                if (posicion >= fin) {
+                    return false; // fin del InputStream justo en un límite de ventana
+                }
+            }
+            boolean ultimaVentana = ventanaInicio + ventana.limit() >= fin;
+            row.reset(ventana, posicion);
+            int finFila = escanearFila(ventana, (int) (posicion - ventanaInicio), ventana.limit(), delimiter,
+                    ultimaVentana, row);
+            if (finFila >= 0) {
+                row.finFila = finFila;
+                posicion = ventanaInicio + finFila;
+                return true;
+            }
+            // La fila continúa más allá de la ventana: remapear desde su comienzo
+            if (channel != null ? posicion == ventanaInicio : ventana.limit() >= VENTANA_MAX) {
+                throw new IOException("Fila CSV mayor que la ventana de mapeo (" + VENTANA_MAX
+                        + " bytes) en offset " + posicion);
+            }
+            mapear(posicion);
+        }
+    }
+
+    private void mapear(long desde) throws IOException {
+        if (channel != null) {
+            long tam = Math.min(VENTANA_MAX, fin - desde);
+            ventana = channel.map(FileChannel.MapMode.READ_ONLY, desde, tam);
+            ventanaInicio = desde;
+            return;
+        }
+        // InputStream: nueva ventana con el resto de la actual (fila incompleta)
+        // seguido del siguiente trozo. No se reutiliza la anterior: las filas ya
+        // leídas siguen apuntando a ella.
+        int resto = ventana == null ? 0 : (int) (ventanaInicio + ventana.limit() - desde);
+        byte[] bytes = new byte[resto + TROZO_STREAM];
+        if (resto > 0) {
+            ventana.get((int) (desde - ventanaInicio), bytes, 0, resto);
+        }
+        int leidos = entrada.readNBytes(bytes, resto, TROZO_STREAM);
+        ventana = ByteBuffer.wrap(bytes, 0, resto + leidos);
+        ventanaInicio = desde;
+        if (leidos < TROZO_STREAM) {
+            fin = desde + resto + leidos;
+        }
+    }
+
+    /**
+     * Recorre una fila desde 'inicio' registrando los límites de cada campo en
+     * 'row'.
+     *
+     * @return posición justo después del fin de fila, o -1 si la fila no termina
+     *         antes de 'limite' y no es la última ventana
+     */
+    private static int escanearFila(ByteBuffer buf, int inicio, int limite, byte delimiter, boolean ultimaVentana,
+            Row row) {
+        boolean inQuotes = false;
+        boolean campoConComillas = false;
+        int inicioCampo = inicio;
+        for (int p = inicio; p < limite; p++) {
+            byte b = buf.get(p);
+            if (b == COMILLA) {
+                // "" dentro de comillas alterna dos veces: la paridad se mantiene
+                inQuotes = !inQuotes;
+                campoConComillas = true;
+            } else if (!inQuotes) {
+                if (b == delimiter) {
+                    row.addField(inicioCampo, p, campoConComillas);
+                    inicioCampo = p + 1;
+                    campoConComillas = false;
+                } else if (b == SALTO) {
+                    int finCampo = p;
+                    if (finCampo > inicioCampo && buf.get(finCampo - 1) == RETORNO) {
+                        finCampo--;
+                    }
+                    row.addField(inicioCampo, finCampo, campoConComillas);
+                    return p + 1;
+                }
+            }
+        }
+        if (!ultimaVentana) {
+            return -1;
+        }
+        // Última fila sin salto de línea final (o comillas sin cerrar: se devuelve lo
+        // que haya)
+        int finCampo = limite;
+        if (finCampo > inicioCampo && buf.get(finCampo - 1) == RETORNO) {
+            finCampo--;
+        }
+        row.addField(inicioCampo, finCampo, campoConComillas);
+        return limite;
+    }
+
+    private static boolean esCompatibleAscii(Charset charset) {
+        byte[] esperado = { '"', '\n', '\r', ',', ';', '\t', '|', 'a' };
+        return Arrays.equals(new String(esperado, StandardCharsets.US_ASCII).getBytes(charset), esperado);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ventana = null;
+        if (channel != null) {
+            channel.close();
+        } else {
+            entrada.close();
+        }
+    }
+
+    /**
+     * Fila CSV: límites de sus campos dentro de la ventana mapeada. La
+     * decodificación de cada campo se hace bajo demanda. Una Row puede
+     * reutilizarse con next(Row); no es thread-safe.
+     */
+    public static class Row implements CsvSchema.Valores {
+        /** Valor inicial para encadenar llamadas a hash(i, h) */
+        public static final long HASH_INICIAL = 0xcbf29ce484222325L;
+        private static final long FNV_PRIMO = 0x100000001b3L;
+
+        private final Charset charset;
+        private ByteBuffer buf;
+        private long offset;
+        private int finFila; // posición en buf tras el fin de línea
+        private int[] bounds = new int[32];
+        private int numFields;
+        private byte[] scratch = new byte[256]; // copia de bytes previa a decodificar
+
+        public Row(Charset charset) {
+            this.charset = charset;
+        }
+
+        void reset(ByteBuffer buf, long offset) {
+            this.buf = buf;
+            this.offset = offset;
+            this.numFields = 0;
+        }
+
+        void addField(int inicio, int fin, boolean conComillas) {
+            if (numFields * 2 + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[numFields * 2] = inicio;
+            bounds[numFields * 2 + 1] = conComillas ? fin | CON_COMILLAS : fin;
+            numFields++;
+        }
+
+        /**
+         * Offset absoluto (en bytes) del comienzo de la fila en el archivo
+         */
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * Número de campos de la fila
+         */
+        @Override
+        public int size() {
+            return numFields;
+        }
+
+        /**
+         * Copia de los bytes crudos de la fila tal como están en el archivo
+         * (comillas y fin de línea incluidos) a partir del comienzo del campo
+         * desdeCampo; 0 = la fila entera
+         */
+        public byte[] bytes(int desdeCampo) {
+            if (desdeCampo >= numFields) {
+                return new byte[0];
+            }
+            int inicio = bounds[desdeCampo * 2];
+            byte[] bytes = new byte[finFila - inicio];
+            buf.get(inicio, bytes, 0, bytes.length);
+            return bytes;
+        }
+
+        /**
+         * true si el campo i está vacío en el archivo (sin decodificarlo)
+         */
+        @Override
+        public boolean isEmpty(int i) {
+            return bounds[i * 2] == bounds[i * 2 + 1];
+        }
+
+        /**
+         * Decodifica el campo i (sin comillas y con "" desescapadas)
+         */
+        @Override
+        public String get(int i) {
+            int inicio = bounds[i * 2];
+            int fin = bounds[i * 2 + 1];
+            if ((fin & CON_COMILLAS) == 0) {
+                byte[] bytes = scratch(fin - inicio);
+                buf.get(inicio, bytes, 0, fin - inicio);
+                return new String(bytes, 0, fin - inicio, charset);
+            }
+            fin &= ~CON_COMILLAS;
+
+            // Mismas reglas que el parser original: una comilla abre/cierra, "" dentro de
+            // comillas es una comilla literal; \r\n dentro de un campo se normaliza a \n
+            byte[] bytes = scratch(fin - inicio);
+            int n = 0;
+            boolean inQuotes = false;
+            for (int p = inicio; p < fin; p++) {
+                byte b = buf.get(p);
+                if (b == COMILLA) {
+                    if (inQuotes && p + 1 < fin && buf.get(p + 1) == COMILLA) {
+                        bytes[n++] = COMILLA;
+                        p++;
+                    } else {
+                        inQuotes = !inQuotes;
+                    }
+                } else if (b == RETORNO && p + 1 < fin && buf.get(p + 1) == SALTO) {
+                    continue;
+                } else {
+                    bytes[n++] = b;
+                }
+            }
+            return new String(bytes, 0, n, charset);
+        }
+
+        // ===================== Accesores primitivos (ver CsvSchema) =====================
+
+        /**
+         * Parsea el campo i como número decimal directamente desde los bytes. Acepta
+         * espacios alrededor, signo, dígitos y un punto decimal; con precio=true
+         * ignora además '$' y ','. Mantisas de hasta 2^53 con hasta 22 decimales se
+         * calculan como mantisa / 10^decimales, que con ambos operandos exactos da
+         * el mismo double (correctamente redondeado) que Double.parseDouble; el resto
+         * (exponentes, mantisas largas) pasa por Double.parseDouble.
+         *
+         * @return el valor, o NaN si el campo está vacío o mal formado
+         */
+        @Override
+        public double parseDecimal(int i, boolean precio) {
+            int p = bounds[i * 2];
+            int fin = bounds[i * 2 + 1] & ~CON_COMILLAS;
+            while (p < fin && esRelleno(buf.get(p), precio)) {
+                p++;
+            }
+            while (fin > p && esRelleno(buf.get(fin - 1), precio)) {
+                fin--;
+            }
+            if (p == fin) {
+                return Double.NaN;
+            }
+
+            boolean negativo = false;
+            byte b = buf.get(p);
+            if (b == '-' || b == '+') {
+                negativo = b == '-';
+                p++;
+            }
+            long mantisa = 0;
+            int digitos = 0;
+            int decimales = 0;
+            boolean punto = false;
+            for (int q = p; q < fin; q++) {
+                b = buf.get(q);
+                if (b >= '0' && b <= '9') {
+                    mantisa = mantisa * 10 + (b - '0');
+                    if (mantisa > MANTISA_EXACTA) {
+                        return parseDecimalLento(i, precio);
+                    }
+                    digitos++;
+                    if (punto) {
+                        decimales++;
+                    }
+                } else if (b == '.' && !punto) {
+                    punto = true;
+                } else if (b == COMILLA || (precio && (b == '$' || b == ','))) {
+                    continue;
+                } else if (b == 'e' || b == 'E') {
+                    return parseDecimalLento(i, precio);
+                } else {
+                    return Double.NaN;
+                }
+            }
+            if (digitos == 0) {
+                return Double.NaN;
+            }
+            if (decimales >= POTENCIAS_10.length) {
+                return parseDecimalLento(i, precio);
+            }
+            double v = decimales == 0 ? (double) mantisa : mantisa / POTENCIAS_10[decimales];
+            return negativo ? -v : v;
+        }
+
+        private double parseDecimalLento(int i, boolean precio) {
+            int inicio = bounds[i * 2];
+            int fin = bounds[i * 2 + 1] & ~CON_COMILLAS;
+            byte[] bytes = scratch(fin - inicio);
+            int n = 0;
+            for (int p = inicio; p < fin; p++) {
+                byte b = buf.get(p);
+                if (b != COMILLA && !(precio && (b == '$' || b == ','))) {
+                    bytes[n++] = b;
+                }
+            }
+            try {
+                return Double.parseDouble(new String(bytes, 0, n, StandardCharsets.ISO_8859_1).trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        /**
+         * Combina los bytes crudos del campo i (tal como aparecen en el archivo,
+         * sin decodificar) con el hash h usando FNV-1a de 64 bits. Un slot que no
+         * existe en la fila también altera el hash, para distinguir "vacío" de
+         * "ausente".
+         *
+         * @param h hash acumulado (HASH_INICIAL para empezar)
+         */
+        public long hash(int i, long h) {
+            if (i < 0 || i >= numFields) {
+                return (h ^ 0xFF) * FNV_PRIMO;
+            }
+            int p = bounds[i * 2];
+            int fin = bounds[i * 2 + 1] & ~CON_COMILLAS;
+            h = (h ^ (fin - p)) * FNV_PRIMO;
+            for (; p < fin; p++) {
+                h = (h ^ (buf.get(p) & 0xFF)) * FNV_PRIMO;
+            }
+            return h;
+        }
+
+        /**
+         * Parsea el campo i como entero largo en forma canónica (p. ej. host_id o el
+         * id del listing): dígitos sin ceros a la izquierda, con '-' opcional y
+         * espacios alrededor. Así Long.toString(valor) reproduce exactamente el
+         * texto, y el id puede guardarse como long sin perder el término original.
+         *
+         * @return el valor, o sinValor si está vacío, no es canónico o puede
+         *         desbordar
+         */
+        @Override
+        public long parseLong(int i, long sinValor) {
+            int p = bounds[i * 2];
+            int fin = bounds[i * 2 + 1] & ~CON_COMILLAS;
+            while (p < fin && esRelleno(buf.get(p), false)) {
+                p++;
+            }
+            while (fin > p && esRelleno(buf.get(fin - 1), false)) {
+                fin--;
+            }
+            boolean negativo = p < fin && buf.get(p) == '-';
+            if (negativo) {
+                p++;
+            }
+            int digitos = fin - p;
+            if (digitos == 0 || digitos > 18) {
+                return sinValor; // vacío o puede desbordar: tratar como no numérico
+            }
+            if (buf.get(p) == '0' && (digitos > 1 || negativo)) {
+                return sinValor; // "007", "-0": no canónicos
+            }
+            long v = 0;
+            for (; p < fin; p++) {
+                byte b = buf.get(p);
+                if (b < '0' || b > '9') {
+                    return sinValor;
+                }
+                v = v * 10 + (b - '0');
+            }
+            return negativo ? -v : v;
+        }
+
+        private static boolean esRelleno(byte b, boolean precio) {
+            return (b >= 0 && b <= ' ') || b == COMILLA || (precio && (b == '$' || b == ','));
+        }
+
+        /**
+         * Parsea el campo i como fecha yyyy-MM-dd (el resto del campo se ignora,
+         * como hace SimpleDateFormat.parse). Mes y día fuera de rango se desbordan
+         * al siguiente mes/año igual que un SimpleDateFormat tolerante.
+         *
+         * @return días desde 1970-01-01, o sinValor si no tiene forma de fecha
+         */
+        @Override
+        public int parseEpochDay(int i, int sinValor) {
+            int p = bounds[i * 2];
+            int fin = bounds[i * 2 + 1] & ~CON_COMILLAS;
+            while (p < fin && esRelleno(buf.get(p), false)) {
+                p++;
+            }
+            int anio = 0;
+            int mes = 0;
+            int dia = 0;
+            for (int k = 0; k < 3; k++) {
+                int valor = 0;
+                int digitos = 0;
+                while (p < fin && digitos < 9) {
+                    byte b = buf.get(p);
+                    if (b < '0' || b > '9') {
+                        break;
+                    }
+                    valor = valor * 10 + (b - '0');
+                    digitos++;
+                    p++;
+                }
+                if (digitos == 0) {
+                    return sinValor;
+                }
+                if (k < 2) {
+                    if (p >= fin || buf.get(p) != '-') {
+                        return sinValor;
+                    }
+                    p++;
+                }
+                if (k == 0) {
+                    anio = valor;
+                } else if (k == 1) {
+                    mes = valor;
+                } else {
+                    dia = valor;
+                }
+            }
+            long anioNormalizado = anio + Math.floorDiv(mes - 1, 12);
+            int mesNormalizado = Math.floorMod(mes - 1, 12) + 1;
+            return (int) (diasDesdeEpoch(anioNormalizado, mesNormalizado) + dia - 1);
+        }
+
+        /**
+         * Días desde 1970-01-01 hasta el día 1 del mes dado (calendario gregoriano
+         * proléptico)
+         */
+        private static long diasDesdeEpoch(long anio, int mes) {
+            long y = mes <= 2 ? anio - 1 : anio;
+            long era = Math.floorDiv(y, 400);
+            long yoe = y - era * 400;
+            long doy = (153 * (mes + (mes > 2 ? -3 : 9)) + 2) / 5;
+            long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+            return era * 146097 + doe - 719468;
+        }
+
+        /**
+         * Parsea el campo i como flag t/f
+         *
+         * @return 1 si es "t" o "true" (sin distinguir mayúsculas), 0 si tiene otro
+         *         valor, -1 si está vacío
+         */
+        @Override
+        public int parseFlag(int i) {
+            int p = bounds[i * 2];
+            int fin = bounds[i * 2 + 1] & ~CON_COMILLAS;
+            while (p < fin && esRelleno(buf.get(p), false)) {
+                p++;
+            }
+            while (fin > p && esRelleno(buf.get(fin - 1), false)) {
+                fin--;
+            }
+            int len = fin - p;
+            if (len == 0) {
+                return -1;
+            }
+            if ((buf.get(p) | 0x20) != 't') {
+                return 0;
+            }
+            if (len == 1) {
+                return 1;
+            }
+            return len == 4 && (buf.get(p + 1) | 0x20) == 'r' && (buf.get(p + 2) | 0x20) == 'u'
+                    && (buf.get(p + 3) | 0x20) == 'e' ? 1 : 0;
+        }
+
+        private byte[] scratch(int n) {
+            if (scratch.length < n) {
+                scratch = new byte[Math.max(n, scratch.length * 2)];
+            }
+            return scratch;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Esquema de columnas compilado a partir de la cabecera del CSV.
+ *
+ * Los nombres de columna se resuelven una sola vez a posiciones (slots) y se
+ * envuelven en accesores tipados que leen directamente los bytes de la fila
+ * (CsvMappedReader.Row) sin crear String, sin boxing y sin excepciones. Los
+ * accesores solo dependen de Valores, que implementan tanto la fila del CSV
+ * como la de un snapshot (SnapshotColumnar.Fila):
+ *
+ * - Texto: String o null si está vacío
+ * - Entero: int truncado (mismas reglas que (int) Double.parseDouble), o
+ * Entero.SIN_VALOR
+ * - Largo: long exacto en forma canónica (para ids), o Largo.SIN_VALOR
+ * - Decimal: double, o NaN si está vacío o mal formado
+ * - Precio: como Decimal pero ignorando '$' y ',' ("$1,200.00" -> 1200.0)
+ * - Fecha: yyyy-MM-dd como días desde epoch (tolerante como SimpleDateFormat:
+ * el mes 13 pasa al año siguiente), o Fecha.SIN_VALOR
+ * - Flag: 1 (t/true), 0 (otro valor) o -1 (vacío)
+ *
+ * Una columna que no existe en la cabecera tiene slot -1 y siempre devuelve el
+ * valor "vacío" de su tipo.
+ *
+ * El esquema recuerda qué columnas se han pedido y con qué tipo (usadas()):
+ * son las que SnapshotColumnar guarda ya extraídas.
+ */
+public class CsvSchema {
+
+    /**
+     * Valores de una fila por posición, tal como los leen los accesores. Los
+     * métodos parse* reciben un slot existente (menor que size())
+     */
+    public interface Valores {
+
+        /**
+         * Número de columnas de la fila
+         */
+        int size();
+
+        /**
+         * true si la columna i está vacía
+         */
+        boolean isEmpty(int i);
+
+        /**
+         * Texto de la columna i ("" si está vacía)
+         */
+        String get(int i);
+
+        /**
+         * Número decimal (con precio=true, ignorando '$' y ','), o NaN si está
+         * vacío o mal formado
+         */
+        double parseDecimal(int i, boolean precio);
+
+        /**
+         * Entero largo en forma canónica, o sinValor
+         */
+        long parseLong(int i, long sinValor);
+
+        /**
+         * Fecha yyyy-MM-dd como días desde 1970-01-01, o sinValor
+         */
+        int parseEpochDay(int i, int sinValor);
+
+        /**
+         * 1 si es t/true, 0 si tiene otro valor, -1 si está vacía
+         */
+        int parseFlag(int i);
+    }
+
+    /**
+     * Forma en que un accesor lee una columna (Entero se lee como DECIMAL)
+     */
+    public enum Tipo {
+        TEXTO, DECIMAL, PRECIO, LARGO, FECHA, FLAG
+    }
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final String[] nombres;
+    private final List<Columna> usadas = new ArrayList<>();
+
+    public CsvSchema(CsvMappedReader.Row header) {
+        this(nombres(header));
+    }
+
+    public CsvSchema(String[] nombres) {
+        this.nombres = nombres.clone();
+        for (int i = 0; i < nombres.length; i++) {
+            slots.put(nombres[i], i);
+        }
+    }
+
+    private static String[] nombres(CsvMappedReader.Row header) {
+        String[] res = new String[header.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = header.get(i);
+        }
+        return res;
+    }
+
+    /**
+     * Número de columnas de la cabecera
+     */
+    public int size() {
+        return nombres.length;
+    }
+
+    /**
+     * Nombres de las columnas de la cabecera, en orden
+     */
+    public String[] nombres() {
+        return nombres.clone();
+    }
+
+    /**
+     * Posición de una columna, o -1 si no existe
+     */
+    public int slot(String nombre) {
+        Integer idx = slots.get(nombre);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * Columnas (existentes) para las que se ha creado algún accesor, una vez por
+     * combinación de slot y tipo, en orden de creación
+     */
+    public List<Columna> usadas() {
+        return new ArrayList<>(usadas);
+    }
+
+    private int usar(String nombre, Tipo tipo) {
+        int slot = slot(nombre);
+        if (slot >= 0) {
+            Columna c = new Columna(slot, tipo);
+            if (!usadas.contains(c)) {
+                usadas.add(c);
+            }
+        }
+        return slot;
+    }
+
+    public Texto texto(String nombre) {
+        return new Texto(usar(nombre, Tipo.TEXTO));
+    }
+
+    public Entero entero(String nombre) {
+        return new Entero(usar(nombre, Tipo.DECIMAL));
+    }
+
+    public Largo largo(String nombre) {
+        return new Largo(usar(nombre, Tipo.LARGO));
+    }
+
+    public Decimal decimal(String nombre) {
+        return new Decimal(usar(nombre, Tipo.DECIMAL));
+    }
+
+    public Precio precio(String nombre) {
+        return new Precio(usar(nombre, Tipo.PRECIO));
+    }
+
+    public Fecha fecha(String nombre) {
+        return new Fecha(usar(nombre, Tipo.FECHA));
+    }
+
+    public Flag flag(String nombre) {
+        return new Flag(usar(nombre, Tipo.FLAG));
+    }
+
+    /**
+     * Columna leída con un tipo concreto
+     */
+    public static final class Columna {
+        public final int slot;
+        public final Tipo tipo;
+
+        public Columna(int slot, Tipo tipo) {
+            this.slot = slot;
+            this.tipo = tipo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Columna && ((Columna) o).slot == slot && ((Columna) o).tipo == tipo;
+        }
+
+        @Override
+        public int hashCode() {
+            return slot * 31 + tipo.ordinal();
+        }
+    }
+
+    /**
+     * Columna de texto
+     */
+    public static final class Texto {
+        public final int slot;
+
+        Texto(int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * Valor decodificado, o null si está vacío
+         */
+        public String get(Valores row) {
+            if (slot < 0 || slot >= row.size() || row.isEmpty(slot))
+                return null;
+            String v = row.get(slot);
+            return v.isEmpty() ? null : v;
+        }
+    }
+
+    /**
+     * Columna entera
+     */
+    public static final class Entero {
+        public static final int SIN_VALOR = Integer.MIN_VALUE;
+
+        public final int slot;
+
+        Entero(int slot) {
+            this.slot = slot;
+        }
+
+        public int get(Valores row) {
+            if (slot < 0 || slot >= row.size())
+                return SIN_VALOR;
+            double v = row.parseDecimal(slot, false);
+            return Double.isNaN(v) ? SIN_VALOR : (int) v;
+        }
+    }
+
+    /**
+     * Columna de identificadores enteros largos en forma canónica (solo dígitos,
+     * sin ceros a la izquierda): Long.toString(get(row)) reproduce el texto
+     */
+    public static final class Largo {
+        public static final long SIN_VALOR = Long.MIN_VALUE;
+
+        public final int slot;
+
+        Largo(int slot) {
+            this.slot = slot;
+        }
+
+        public long get(Valores row) {
+            if (slot < 0 || slot >= row.size())
+                return SIN_VALOR;
+            return row.parseLong(slot, SIN_VALOR);
+        }
+    }
+
+    /**
+     * Columna decimal
+     */
+    public static final class Decimal {
+        public final int slot;
+
+        Decimal(int slot) {
+            this.slot = slot;
+        }
+
+        public double get(Valores row) {
+            if (slot < 0 || slot >= row.size())
+                return Double.NaN;
+            return row.parseDecimal(slot, false);
+        }
+    }
+
+    /**
+     * Columna de precio con símbolo de moneda y separador de miles
+     */
+    public static final class Precio {
+        public final int slot;
+
+        Precio(int slot) {
+            this.slot = slot;
+        }
+
+        public double get(Valores row) {
+            if (slot < 0 || slot >= row.size())
+                return Double.NaN;
+            return row.parseDecimal(slot, true);
+        }
+    }
+
+    /**
+     * Columna de fecha yyyy-MM-dd
+     */
+    public static final class Fecha {
+        public static final int SIN_VALOR = Integer.MIN_VALUE;
+
+        public final int slot;
+
+        Fecha(int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * Días desde 1970-01-01, o SIN_VALOR
+         */
+        public int get(Valores row) {
+            if (slot < 0 || slot >= row.size())
+                return SIN_VALOR;
+            return row.parseEpochDay(slot, SIN_VALOR);
+        }
+    }
+
+    /**
+     * Columna booleana t/f
+     */
+    public static final class Flag {
+        public final int slot;
+
+        Flag(int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * 1 si es t/true, 0 si tiene otro valor, -1 si está vacía
+         */
+        public int get(Valores row) {
+            if (slot < 0 || slot >= row.size())
+                return -1;
+            return row.parseFlag(slot);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Entrada CSV comprimida (gzip o zstd), detectada por los primeros bytes del
+ * archivo, no por la extensión.
+ *
+ * La descompresión corre en un hilo propio que deja trozos de TAMANO_TROZO
+ * bytes en una cola acotada (TROZOS_EN_COLA): el lector CSV consume bytes ya
+ * descomprimidos mientras se descomprime el siguiente trozo, y si el parseo va
+ * por detrás el hilo de descompresión se bloquea en lugar de acumular memoria.
+ * Los gzip multi-miembro (varios .gz concatenados) se leen como un solo flujo.
+ *
+ * zstd usa zstd-jni (com.github.luben.zstd.ZstdInputStream) por reflexión, así
+ * que solo hace falta si se indexan archivos .zst: basta con añadir el jar al
+ * classpath.
+ */
+public class EntradaComprimida extends InputStream {
+
+    public enum Formato {
+        GZIP, ZSTD
+    }
+
+    private static final int TAMANO_TROZO = 1 << 20;
+    private static final int TROZOS_EN_COLA = 8;
+    private static final int BUFFER_GZIP = 64 << 10;
+    private static final byte[] FIN = new byte[0];
+    private static final String CLASE_ZSTD = "com.github.luben.zstd.ZstdInputStream";
+
+    private final InputStream origen;
+    private final BlockingQueue<byte[]> cola = new ArrayBlockingQueue<>(TROZOS_EN_COLA);
+    private final Thread descompresor;
+    private volatile Throwable fallo;
+    private volatile boolean cerrado;
+
+    private byte[] trozo = null;
+    private int posicion;
+
+    /**
+     * Formato de compresión del archivo, o null si no está comprimido
+     */
+    public static Formato formato(Path path) throws IOException {
+        byte[] magia = new byte[4];
+        int n;
+        try (InputStream in = Files.newInputStream(path)) {
+            n = in.readNBytes(magia, 0, magia.length);
+        }
+        if (n >= 2 && magia[0] == (byte) 0x1F && magia[1] == (byte) 0x8B) {
+            return Formato.GZIP;
+        }
+        if (n == 4 && magia[0] == (byte) 0x28 && magia[1] == (byte) 0xB5 && magia[2] == (byte) 0x2F
+                && magia[3] == (byte) 0xFD) {
+            return Formato.ZSTD;
+        }
+        return null;
+    }
+
+    /**
+     * Abre el archivo y arranca el hilo de descompresión
+     */
+    public static EntradaComprimida abrir(Path path, Formato formato) throws IOException {
+        InputStream archivo = Files.newInputStream(path);
+        try {
+            InputStream origen = formato == Formato.GZIP
+                    ? new GZIPInputStream(archivo, BUFFER_GZIP)
+                    : abrirZstd(new BufferedInputStream(archivo, BUFFER_GZIP));
+            return new EntradaComprimida(origen, path.getFileName().toString());
+        } catch (IOException | RuntimeException e) {
+            archivo.close();
+            throw e;
+        }
+    }
+
+    private static InputStream abrirZstd(InputStream in) throws IOException {
+        try {
+            return (InputStream) Class.forName(CLASE_ZSTD).getConstructor(InputStream.class).newInstance(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Entrada zstd: falta zstd-jni (" + CLASE_ZSTD + ") en el classpath");
+        } catch (InvocationTargetException e) {
+            throw new IOException("Entrada zstd: " + e.getCause().getMessage(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Entrada zstd: " + e.getMessage(), e);
+        }
+    }
+
+    private EntradaComprimida(InputStream origen, String nombre) {
+        this.origen = origen;
+        this.descompresor = new Thread(this::descomprimir, "indexador-descompresion-" + nombre);
+        descompresor.setDaemon(true);
+        descompresor.start();
+    }
+
+    /**
+     * Hilo de descompresión: llena trozos completos y los encola
+     */
+    private void descomprimir() {
+        try {
+            while (!cerrado) {
+                byte[] bytes = new byte[TAMANO_TROZO];
+                int n = origen.readNBytes(bytes, 0, bytes.length);
+                if (n > 0) {
+                    cola.put(n == bytes.length ? bytes : Arrays.copyOf(bytes, n));
+                }
+                if (n < bytes.length) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            return; // close()
+        } catch (Throwable t) {
+            fallo = t;
+        }
+        try {
+            cola.put(FIN);
+        } catch (InterruptedException e) {
+            // close()
+        }
+    }
+
+    /**
+     * Siguiente trozo descomprimido, o false al final del flujo
+     */
+    private boolean siguienteTrozo() throws IOException {
+        if (trozo == FIN) {
+            return false;
+        }
+        try {
+            trozo = cola.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lectura de entrada comprimida interrumpida");
+        }
+        posicion = 0;
+        if (trozo == FIN) {
+            Throwable t = fallo;
+            if (t != null) {
+                throw t instanceof IOException ? (IOException) t : new IOException("Error descomprimiendo", t);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((trozo == null || posicion == trozo.length) && !siguienteTrozo()) {
+            return -1;
+        }
+        return trozo[posicion++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if ((trozo == null || posicion == trozo.length) && !siguienteTrozo()) {
+            return -1;
+        }
+        int n = Math.min(len, trozo.length - posicion);
+        System.arraycopy(trozo, posicion, b, off, n);
+        posicion += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // El hilo termina el trozo en curso y sale al intentar encolarlo: el
+        // descompresor no se cierra mientras otro hilo lo usa
+        cerrado = true;
+        descompresor.interrupt();
+        try {
+            descompresor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        origen.close();
+    }
+}
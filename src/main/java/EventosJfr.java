@@ -0,0 +1,165 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Eventos propios de Java Flight Recorder para indexación, búsqueda y
+ * clasificación. En una grabación JFR (-XX:StartFlightRecording o jcmd
+ * JFR.start) aparecen bajo la categoría Airbnb junto a los eventos de GC y las
+ * muestras de CPU, con su hilo y su intervalo, de modo que se ve qué carga,
+ * commit o consulta coincide con cada pico.
+ *
+ * Con JFR inactivo, begin/commit de un evento cuestan prácticamente nada; los
+ * campos caros de calcular se rellenan solo si shouldCommit(). DocumentBuilt
+ * (uno por documento) está desactivado por defecto: se activa en un .jfc con
+ * airbnb.DocumentBuilt#enabled=true.
+ */
+public final class EventosJfr {
+
+    private EventosJfr() {
+    }
+
+    @Name("airbnb.IndexingRun")
+    @Label("Indexación")
+    @Category({ "Airbnb", "Indexación" })
+    @Description("Ejecución completa de AirbnbIndexador.ejecutar")
+    @StackTrace(false)
+    public static final class IndexacionEjecutada extends Event {
+        @Label("Input")
+        public String input;
+
+        @Label("Modo")
+        public String modo;
+
+        @Label("Propiedades")
+        public long propiedades;
+
+        @Label("Hosts")
+        public long hosts;
+
+        @Label("Errores")
+        public long errores;
+    }
+
+    @Name("airbnb.CsvChunkParsed")
+    @Label("Bloque CSV leído")
+    @Category({ "Airbnb", "Indexación" })
+    @Description("Un hilo lector ha recorrido un bloque del CSV y encolado sus filas")
+    @StackTrace(false)
+    public static final class BloqueCsvParseado extends Event {
+        @Label("Bloque")
+        public int bloque;
+
+        @Label("Offset inicial")
+        public long inicio;
+
+        @Label("Offset final")
+        public long fin;
+
+        @Label("Filas")
+        public long filas;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("airbnb.DocumentBuilt")
+    @Label("Documento construido")
+    @Category({ "Airbnb", "Indexación" })
+    @Description("Construcción de un documento (campos + facetas) antes de escribirlo")
+    @StackTrace(false)
+    @Enabled(false)
+    public static final class DocumentoConstruido extends Event {
+        @Label("Tipo")
+        public String tipo;
+
+        @Label("Id")
+        public String id;
+    }
+
+    @Name("airbnb.CommitPerformed")
+    @Label("Commit")
+    @Category({ "Airbnb", "Indexación" })
+    @Description("Commit de taxonomías e índices con checkpoint")
+    @StackTrace(false)
+    public static final class CommitRealizado extends Event {
+        @Label("Final")
+        public boolean completo;
+
+        @Label("Propiedades")
+        public long propiedades;
+
+        @Label("Hosts")
+        public long hosts;
+    }
+
+    @Name("airbnb.SearchExecuted")
+    @Label("Búsqueda")
+    @Category({ "Airbnb", "Búsqueda" })
+    @Description("Búsqueda de AirbnbSearchApp con la duración de cada fase")
+    @StackTrace(false)
+    public static final class BusquedaEjecutada extends Event {
+        @Label("Consulta")
+        public String consulta;
+
+        @Label("Orden")
+        public String orden;
+
+        @Label("Con facetas")
+        public boolean conFacetas;
+
+        @Label("Apertura y construcción de la query")
+        @Timespan(Timespan.NANOSECONDS)
+        public long preparacion;
+
+        @Label("Conteo de facetas")
+        @Timespan(Timespan.NANOSECONDS)
+        public long facetas;
+
+        @Label("Recolección de hits")
+        @Timespan(Timespan.NANOSECONDS)
+        public long hits;
+
+        @Label("Carga de resultados")
+        @Timespan(Timespan.NANOSECONDS)
+        public long resultados;
+
+        @Label("Total de hits")
+        public long totalHits;
+
+        @Label("Resultados devueltos")
+        public int devueltos;
+
+        @Label("Terminación temprana")
+        public boolean terminacionTemprana;
+
+        @Label("Error")
+        public String error;
+    }
+
+    @Name("airbnb.ClassifierEvaluated")
+    @Label("Clasificador evaluado")
+    @Category({ "Airbnb", "Clasificación" })
+    @Description("Evaluación de un clasificador sobre el conjunto de test")
+    @StackTrace(false)
+    public static final class ClasificadorEvaluado extends Event {
+        @Label("Clasificador")
+        public String clasificador;
+
+        @Label("Campo de clase")
+        public String campoClase;
+
+        @Label("Documentos de test")
+        public int documentos;
+
+        @Label("Accuracy")
+        public double accuracy;
+    }
+}
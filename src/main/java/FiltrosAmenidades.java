@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Filtros por amenidad sobre un IndexReader concreto (una vista de
+ * LectorFacetas). Para las AMENIDADES_EN_CACHE amenidades con más documentos
+ * se guarda un FixedBitSet por segmento, construido una vez desde los postings
+ * de amenity_key; una consulta como "=Pool AND =Wifi AND =Free parking" se
+ * resuelve copiando el bitset de la primera y haciendo AND con las demás,
+ * unas pocas palabras de 64 bits por cada 64 documentos, sin recorrer
+ * postings ni analizar texto.
+ *
+ * Solo las partes marcadas con '=' piden la amenidad exacta (las que no están
+ * en la caché se filtran con un TermQuery sobre amenity_key). El texto sin
+ * '=' se analiza como antes con QueryParser sobre "amenity" y su operador por
+ * defecto (OR): "pool" encuentra también "Private pool" y "pool, wifi"
+ * cualquiera de las dos.
+ */
+public class FiltrosAmenidades {
+
+    public static final int AMENIDADES_EN_CACHE = 256;
+
+    // Prefijo de amenidad exacta ("=Pool"). No es sintaxis de QueryParser: sin
+    // amenity_key en el índice se analiza y el '=' se descarta
+    private static final char EXACTA = '=';
+    // Conjunción de amenidades exactas separadas por AND ("and" en minúsculas es
+    // parte del nombre: "Dishes and silverware"). Operadores de QueryParser ('-'
+    // solo al principio de palabra: "Self check-in" es una amenidad)
+    private static final Pattern SEPARADOR = Pattern.compile("\\s+AND\\s+");
+    private static final Pattern SINTAXIS_QUERYPARSER = Pattern
+            .compile("\\bOR\\b|\\bNOT\\b|(^|\\s)[+-]|[()\"*?~^:\\[\\]{}]");
+
+    private final IndexReader reader;
+    private final boolean conClaves; // índice con amenity_key
+    private final Map<String, FixedBitSet[]> bitsets = new HashMap<>(); // clave -> bitset por segmento
+
+    public FiltrosAmenidades(IndexReader reader, int maxAmenidades) throws IOException {
+        this.reader = reader;
+        Terms terms = MultiTerms.getTerms(reader, AirbnbIndexador.FIELD_AMENITY_KEY);
+        this.conClaves = terms != null;
+        if (terms == null) {
+            return; // índice anterior a amenity_key: todo va por QueryParser
+        }
+
+        // Las maxAmenidades más frecuentes
+        PriorityQueue<Frecuencia> top = new PriorityQueue<>(maxAmenidades) {
+            @Override
+            protected boolean lessThan(Frecuencia a, Frecuencia b) {
+                return a.docFreq < b.docFreq;
+            }
+        };
+        TermsEnum te = terms.iterator();
+        for (BytesRef t = te.next(); t != null; t = te.next()) {
+            top.insertWithOverflow(new Frecuencia(t.utf8ToString(), te.docFreq()));
+        }
+
+        List<LeafReaderContext> hojas = reader.leaves();
+        for (Frecuencia f : top) {
+            bitsets.put(f.clave, new FixedBitSet[hojas.size()]);
+        }
+        PostingsEnum postings = null;
+        for (LeafReaderContext hoja : hojas) {
+            Terms hojaTerms = hoja.reader().terms(AirbnbIndexador.FIELD_AMENITY_KEY);
+            TermsEnum hojaTe = hojaTerms == null ? null : hojaTerms.iterator();
+            for (Map.Entry<String, FixedBitSet[]> e : bitsets.entrySet()) {
+                FixedBitSet bits = new FixedBitSet(hoja.reader().maxDoc());
+                if (hojaTe != null && hojaTe.seekExact(new BytesRef(e.getKey()))) {
+                    postings = hojaTe.postings(postings, PostingsEnum.NONE);
+                    int doc;
+                    while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                        bits.set(doc);
+                    }
+                }
+                e.getValue()[hoja.ord] = bits;
+            }
+        }
+    }
+
+    /**
+     * Amenidades con bitset en caché
+     */
+    public int size() {
+        return bitsets.size();
+    }
+
+    public long ramBytesUsed() {
+        long total = 0;
+        for (FixedBitSet[] porHoja : bitsets.values()) {
+            for (FixedBitSet bits : porHoja) {
+                total += bits.ramBytesUsed();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Consulta para el texto del filtro de amenidades. Sin '=' es el QueryParser
+     * de siempre; con "=Nombre" en alguna de las partes separadas por AND, esas
+     * partes son amenidades exactas y el resto se vuelve a unir con AND para
+     * QueryParser
+     */
+    public Query consulta(String texto, Analyzer analyzer) throws ParseException, IOException {
+        QueryParser parser = new QueryParser("amenity", analyzer); // OR por defecto, como antes
+        if (!conClaves || texto.indexOf(EXACTA) < 0 || SINTAXIS_QUERYPARSER.matcher(texto).find()) {
+            return parser.parse(texto);
+        }
+        List<String> enCache = new ArrayList<>();
+        List<String> libres = new ArrayList<>();
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        for (String parte : SEPARADOR.split(texto.trim())) {
+            parte = parte.trim();
+            if (parte.isEmpty()) {
+                continue;
+            }
+            if (parte.charAt(0) != EXACTA) {
+                libres.add(parte);
+                continue;
+            }
+            String clave = AirbnbIndexador.normalizarAmenidad(parte.substring(1));
+            if (clave.isEmpty()) {
+                continue;
+            }
+            if (bitsets.containsKey(clave)) {
+                enCache.add(clave);
+            } else {
+                bq.add(new TermQuery(new Term(AirbnbIndexador.FIELD_AMENITY_KEY, clave)), BooleanClause.Occur.FILTER);
+            }
+        }
+        if (!libres.isEmpty()) {
+            bq.add(parser.parse(String.join(" AND ", libres)), BooleanClause.Occur.MUST);
+        }
+        if (!enCache.isEmpty()) {
+            bq.add(interseccion(enCache), BooleanClause.Occur.FILTER);
+        }
+        return bq.build();
+    }
+
+    /**
+     * Documentos que tienen todas las amenidades indicadas (todas en caché)
+     */
+    public Query interseccion(List<String> claves) {
+        FixedBitSet[] primera = bitsets.get(claves.get(0));
+        FixedBitSet[] res = new FixedBitSet[primera.length];
+        int[] cardinalidades = new int[primera.length];
+        for (int h = 0; h < res.length; h++) {
+            res[h] = primera[h].clone();
+            for (int i = 1; i < claves.size(); i++) {
+                res[h].and(bitsets.get(claves.get(i))[h]);
+            }
+            cardinalidades[h] = res[h].cardinality();
+        }
+        return new ConsultaBitSet(res, cardinalidades, reader, String.join(" AND ", claves));
+    }
+
+    private static final class Frecuencia {
+        final String clave;
+        final int docFreq;
+
+        Frecuencia(String clave, int docFreq) {
+            this.clave = clave;
+            this.docFreq = docFreq;
+        }
+    }
+
+    /**
+     * Query de puntuación constante sobre un bitset ya calculado por segmento (y
+     * su número de bits a 1, para no recontarlo en cada búsqueda). Solo vale
+     * para el reader con el que se construyó
+     */
+    private static final class ConsultaBitSet extends Query {
+        private final FixedBitSet[] porHoja;
+        private final int[] cardinalidades;
+        private final IndexReader reader;
+        private final String descripcion;
+
+        ConsultaBitSet(FixedBitSet[] porHoja, int[] cardinalidades, IndexReader reader, String descripcion) {
+            this.porHoja = porHoja;
+            this.cardinalidades = cardinalidades;
+            this.reader = reader;
+            this.descripcion = descripcion;
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+            if (searcher.getIndexReader().getContext().id() != reader.getContext().id()) {
+                throw new IllegalStateException("Filtro de amenidades de otro reader");
+            }
+            return new ConstantScoreWeight(this, boost) {
+                @Override
+                public ScorerSupplier scorerSupplier(LeafReaderContext context) {
+                    int cardinalidad = cardinalidades[context.ord];
+                    if (cardinalidad == 0) {
+                        return null;
+                    }
+                    return new DefaultScorerSupplier(new ConstantScoreScorer(score(), scoreMode,
+                            new BitSetIterator(porHoja[context.ord], cardinalidad)));
+                }
+
+                @Override
+                public boolean isCacheable(LeafReaderContext ctx) {
+                    return false; // ya es un bitset
+                }
+            };
+        }
+
+        @Override
+        public void visit(QueryVisitor visitor) {
+            visitor.visitLeaf(this);
+        }
+
+        @Override
+        public String toString(String field) {
+            return "amenidades(" + descripcion + ")";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
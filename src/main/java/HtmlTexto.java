@@ -0,0 +1,246 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Normalizador de HTML a texto plano para description, neighborhood_overview y
+ * host_about, en una sola pasada sobre la cadena:
+ *
+ * - Etiquetas (<br />, <p>, <li>...) y comentarios se eliminan. Las de bloque
+ * separan palabras (se sustituyen por un espacio); las de formato en línea
+ * (<b>, <i>, <span>, <a>...) no. Un '<' que no va seguido de un nombre de
+ * etiqueta y su '>' (cerca y sin otro '<' antes) se deja tal cual: "near
+ * <beach 5 min<br />" conserva "<beach 5 min".
+ * - Entidades con nombre habituales (&amp; &nbsp; &eacute; &rsquo;...) y
+ * numéricas (&#233; &#xE9;) se decodifican; una entidad desconocida o mal
+ * formada se deja tal cual. &lt; y &gt; (y &#60; &#62;) se decodifican como
+ * '‹' y '›', no como '<' y '>': un "&lt;b&gt;" escapado no vuelve a parecer
+ * una etiqueta en el índice ni en el resaltado (que marca con <mark>).
+ * - Cualquier secuencia de espacios, tabuladores, saltos de línea o &nbsp; se
+ * reduce a un espacio, y se recortan los extremos.
+ *
+ * El resultado no contiene etiquetas ni saltos de línea, así que el texto
+ * guardado se puede mostrar (y resaltar) sin más limpieza. Cada instancia
+ * reutiliza su buffer entre llamadas: no es thread-safe (una por worker).
+ */
+public class HtmlTexto {
+
+    private static final int LONGITUD_MAX_ENTIDAD = 10; // "&thetasym;"
+    // Hasta dónde se busca el cierre de una etiqueta o comentario: los '<' y '&'
+    // sueltos no recorren el resto del texto, así que la pasada sigue siendo lineal
+    private static final int LONGITUD_MAX_ETIQUETA = 1024;
+    // Sustitutos de '<' y '>' para las entidades que los escapan
+    private static final char MENOR_QUE = '\u2039';
+    private static final char MAYOR_QUE = '\u203A';
+
+    private static final Map<String, Integer> ENTIDADES = new HashMap<>();
+    static {
+        String[] pares = { "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", " ",
+                "copy", "©", "reg", "®", "trade", "™", "deg", "°", "middot", "·",
+                "bull", "•", "hellip", "…", "ndash", "–", "mdash", "—", "lsquo", "‘",
+                "rsquo", "’", "ldquo", "“", "rdquo", "”", "laquo", "«", "raquo", "»",
+                "euro", "€", "pound", "£", "cent", "¢", "times", "×", "frac12", "½",
+                "aacute", "á", "eacute", "é", "iacute", "í", "oacute", "ó", "uacute", "ú",
+                "Aacute", "Á", "Eacute", "É", "Iacute", "Í", "Oacute", "Ó", "Uacute", "Ú",
+                "ntilde", "ñ", "Ntilde", "Ñ", "uuml", "ü", "Uuml", "Ü", "ouml", "ö",
+                "auml", "ä", "egrave", "è", "agrave", "à", "ccedil", "ç", "iexcl", "¡",
+                "iquest", "¿" };
+        for (int i = 0; i < pares.length; i += 2) {
+            ENTIDADES.put(pares[i], (int) pares[i + 1].charAt(0));
+        }
+    }
+
+    // Etiquetas de formato en línea: no separan palabras
+    private static final String[] EN_LINEA = { "a", "b", "i", "u", "s", "em", "strong", "span", "font", "small",
+            "big", "sup", "sub", "mark", "abbr", "code", "strike" };
+
+    private final StringBuilder buffer = new StringBuilder(1024);
+
+    /**
+     * Convierte s a texto plano normalizado
+     *
+     * @return el texto, o null si s es null. Si s ya estaba normalizado se
+     *         devuelve la misma instancia.
+     */
+    public String convertir(String s) {
+        if (s == null) {
+            return null;
+        }
+        StringBuilder out = buffer;
+        out.setLength(0);
+        boolean cambiado = false;
+        boolean espacioPendiente = false; // separador a emitir antes del siguiente carácter visible
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            int codigo = -1; // carácter visible a emitir
+            if (c == '<') {
+                int fin = finEtiqueta(s, i);
+                if (fin < 0) {
+                    codigo = c;
+                    i++;
+                } else {
+                    if (!esEnLinea(s, i, fin)) {
+                        espacioPendiente = true;
+                    }
+                    cambiado = true;
+                    i = fin;
+                    continue;
+                }
+            } else if (c == '&') {
+                int fin = indexOf(s, ';', i + 1, i + 2 + LONGITUD_MAX_ENTIDAD);
+                int valor = fin > i + 1 && fin - i - 1 <= LONGITUD_MAX_ENTIDAD ? entidad(s, i + 1, fin) : -1;
+                if (valor < 0) {
+                    codigo = c;
+                    i++;
+                } else {
+                    cambiado = true;
+                    i = fin + 1;
+                    if (valor == '\u00A0' || Character.isWhitespace(valor)) {
+                        espacioPendiente = true;
+                        continue;
+                    }
+                    codigo = valor == '<' ? MENOR_QUE : valor == '>' ? MAYOR_QUE : valor;
+                }
+            } else if (c == ' ' || c == '\u00A0' || Character.isWhitespace(c)) {
+                if (c != ' ' || espacioPendiente || out.length() == 0) {
+                    cambiado = true; // espacio repetido, inicial o distinto de ' '
+                }
+                espacioPendiente = true;
+                i++;
+                continue;
+            } else {
+                codigo = c;
+                i++;
+            }
+            if (espacioPendiente && out.length() > 0) {
+                out.append(' ');
+            }
+            espacioPendiente = false;
+            if (codigo > Character.MAX_VALUE) {
+                out.appendCodePoint(codigo);
+            } else {
+                out.append((char) codigo);
+            }
+        }
+        if (espacioPendiente) {
+            cambiado = true; // espacio final recortado
+        }
+        return cambiado ? out.toString() : s;
+    }
+
+    /**
+     * Posición tras el final de la etiqueta o comentario que empieza en 'inicio',
+     * o -1 si el '<' no abre una etiqueta (p. ej. "precio < 100")
+     */
+    private static int finEtiqueta(String s, int inicio) {
+        if (inicio + 1 >= s.length()) {
+            return -1;
+        }
+        int limite = Math.min(s.length(), inicio + LONGITUD_MAX_ETIQUETA);
+        char c = s.charAt(inicio + 1);
+        if (c == '!' && s.startsWith("<!--", inicio)) {
+            for (int p = inicio + 4; p + 3 <= limite; p++) {
+                if (s.startsWith("-->", p)) {
+                    return p + 3;
+                }
+            }
+            return -1;
+        }
+        int p = inicio + 1;
+        if (c == '!' || c == '?') {
+            p++; // <!DOCTYPE ...>, <?xml ...?>
+        } else {
+            if (c == '/') {
+                p++;
+            }
+            // Nombre de etiqueta: letra y luego letras o dígitos, terminado en
+            // espacio, '/' o '>'
+            if (p >= limite || !Character.isLetter(s.charAt(p))) {
+                return -1;
+            }
+            while (p < limite && Character.isLetterOrDigit(s.charAt(p))) {
+                p++;
+            }
+            if (p < limite && !(Character.isWhitespace(s.charAt(p)) || s.charAt(p) == '/' || s.charAt(p) == '>')) {
+                return -1;
+            }
+        }
+        for (; p < limite; p++) {
+            char d = s.charAt(p);
+            if (d == '>') {
+                return p + 1;
+            }
+            if (d == '<') {
+                return -1; // "<beach 5 min<br />": el primer '<' es texto
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Posición de c en s[desde, min(hasta, s.length())), o -1
+     */
+    private static int indexOf(String s, char c, int desde, int hasta) {
+        int fin = Math.min(hasta, s.length());
+        for (int p = desde; p < fin; p++) {
+            if (s.charAt(p) == c) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * true si la etiqueta [inicio, fin) es de formato en línea
+     */
+    private static boolean esEnLinea(String s, int inicio, int fin) {
+        int p = inicio + 1;
+        if (p < fin && s.charAt(p) == '/') {
+            p++;
+        }
+        int q = p;
+        while (q < fin && Character.isLetterOrDigit(s.charAt(q))) {
+            q++;
+        }
+        int longitud = q - p;
+        for (String nombre : EN_LINEA) {
+            if (nombre.length() == longitud && s.regionMatches(true, p, nombre, 0, longitud)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Valor de la entidad s[inicio, fin) (sin '&' ni ';'), o -1 si no se reconoce
+     */
+    private static int entidad(String s, int inicio, int fin) {
+        if (s.charAt(inicio) == '#') {
+            int radix = 10;
+            int p = inicio + 1;
+            if (p < fin && (s.charAt(p) == 'x' || s.charAt(p) == 'X')) {
+                radix = 16;
+                p++;
+            }
+            if (p == fin) {
+                return -1;
+            }
+            int valor = 0;
+            for (; p < fin; p++) {
+                int d = Character.digit(s.charAt(p), radix);
+                if (d < 0) {
+                    return -1;
+                }
+                valor = valor * radix + d;
+                if (valor > Character.MAX_CODE_POINT) {
+                    return -1;
+                }
+            }
+            return valor == 0 || (valor >= Character.MIN_SURROGATE && valor <= Character.MAX_SURROGATE) ? -1
+                    : valor;
+        }
+        Integer valor = ENTIDADES.get(s.substring(inicio, fin));
+        return valor == null ? -1 : valor;
+    }
+}
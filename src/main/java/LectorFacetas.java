@@ -0,0 +1,180 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.facet.DrillSideways;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * index_properties abierto una vez y compartido entre búsquedas, junto con lo
+ * necesario para contar sus facetas según el modo con que se indexó
+ * (AirbnbIndexador --facets):
+ * - taxonomy: un DirectoryTaxonomyReader de taxo_properties y
+ * FastTaxonomyFacetCounts
+ * - sortedset: un DefaultSortedSetDocValuesReaderState (etiquetas de cada
+ * dimensión y, con varios segmentos o shards, su OrdinalMap global) y
+ * SortedSetDocValuesFacetCounts. Construir el estado recorre todos los
+ * términos del campo de facetas, así que se hace al abrir la vista y no por
+ * búsqueda
+ *
+ * Cada vista guarda también, si se filtra por amenidad, los bitsets de
+ * FiltrosAmenidades, que dependen de los docIDs de su reader.
+ *
+ * adquirir() devuelve la vista actual y solo reabre si algún commit del índice
+ * (o el conjunto de shards del manifiesto) ha cambiado desde que se abrió. Las
+ * vistas cuentan referencias: una vista sustituida se cierra cuando termina la
+ * última búsqueda que la usaba.
+ */
+public class LectorFacetas implements Closeable {
+
+    private final String indexRoot;
+    private final FacetsConfig config = AirbnbIndexador.createFacetsConfig();
+    private Vista actual;
+
+    public LectorFacetas(String indexRoot) {
+        this.indexRoot = indexRoot;
+    }
+
+    public FacetsConfig config() {
+        return config;
+    }
+
+    /**
+     * Vista del índice para una búsqueda; hay que cerrarla al terminar
+     */
+    public synchronized Vista adquirir() throws IOException {
+        String version = version(indexRoot);
+        if (actual == null || !actual.version.equals(version)) {
+            Vista nueva = abrir(version);
+            if (actual != null) {
+                actual.close();
+            }
+            actual = nueva;
+        }
+        actual.referencias.incrementAndGet();
+        return actual;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (actual != null) {
+            actual.close();
+            actual = null;
+        }
+    }
+
+    private Vista abrir(String version) throws IOException {
+        IndexReader reader = AirbnbIndexador.abrirIndicePropiedades(indexRoot);
+        try {
+            if (AirbnbIndexador.FACETAS_SORTEDSET.equals(AirbnbIndexador.modoFacetas(reader))) {
+                return new Vista(reader, config, null, new DefaultSortedSetDocValuesReaderState(reader, config),
+                        version);
+            }
+            TaxonomyReader taxoReader = new DirectoryTaxonomyReader(
+                    FSDirectory.open(AirbnbIndexador.getTaxoPropertiesIndexPath(indexRoot)));
+            return new Vista(reader, config, taxoReader, null, version);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Generación del último commit de cada índice de propiedades (el de
+     * index_root o el de cada shard)
+     */
+    private static String version(String indexRoot) throws IOException {
+        List<Path> indices = new ArrayList<>();
+        Map<String, Path> shards = AirbnbIndexador.getShardPaths(indexRoot);
+        if (shards == null) {
+            indices.add(AirbnbIndexador.getPropertiesIndexPath(indexRoot));
+        } else {
+            for (Path shard : shards.values()) {
+                indices.add(shard.resolve(AirbnbIndexador.INDEX_PROPERTIES));
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Path indice : indices) {
+            try (Directory dir = FSDirectory.open(indice)) {
+                sb.append(indice).append('@').append(SegmentInfos.getLastCommitGeneration(dir)).append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reader de propiedades con su taxonomía o su estado de SortedSet
+     */
+    public static final class Vista implements Closeable {
+        public final IndexReader reader;
+        public final boolean offsets; // description con offsets (AirbnbIndexador --offsets)
+        private final FacetsConfig config;
+        private final TaxonomyReader taxoReader; // null con sortedset
+        private final SortedSetDocValuesReaderState estado; // null con taxonomía
+        private final String version;
+        private FiltrosAmenidades amenidades; // perezoso: primer filtro por amenidad
+        private final AtomicInteger referencias = new AtomicInteger(1); // la del LectorFacetas
+
+        private Vista(IndexReader reader, FacetsConfig config, TaxonomyReader taxoReader,
+                SortedSetDocValuesReaderState estado, String version) {
+            this.reader = reader;
+            this.offsets = AirbnbIndexador.conOffsets(reader);
+            this.config = config;
+            this.taxoReader = taxoReader;
+            this.estado = estado;
+            this.version = version;
+        }
+
+        public boolean sortedSet() {
+            return estado != null;
+        }
+
+        /**
+         * Conteo de facetas de los documentos recogidos en fc
+         */
+        public Facets contar(FacetsCollector fc) throws IOException {
+            return estado != null ? new SortedSetDocValuesFacetCounts(estado, fc)
+                    : new FastTaxonomyFacetCounts(taxoReader, config, fc);
+        }
+
+        public DrillSideways drillSideways(IndexSearcher searcher) {
+            return estado != null ? new DrillSideways(searcher, config, estado)
+                    : new DrillSideways(searcher, config, taxoReader);
+        }
+
+        /**
+         * Filtros por amenidad de este reader (se construyen la primera vez)
+         */
+        public synchronized FiltrosAmenidades amenidades() throws IOException {
+            if (amenidades == null) {
+                amenidades = new FiltrosAmenidades(reader, FiltrosAmenidades.AMENIDADES_EN_CACHE);
+            }
+            return amenidades;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (referencias.decrementAndGet() == 0) {
+                IOUtils.close(reader, taxoReader);
+            }
+        }
+    }
+}
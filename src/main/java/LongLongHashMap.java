@@ -0,0 +1,131 @@
+import java.util.function.LongConsumer;
+
+/**
+ * Mapa long -> long con direccionamiento abierto (sondeo lineal), sin boxing.
+ *
+ * Se llena en un solo hilo (carga de huellas de hosts existentes en modo
+ * update) y después solo se consulta, por lo que puede leerse desde varios
+ * workers sin sincronización una vez publicado (p. ej. antes de arrancar los
+ * hilos). La clave 0 marca hueco libre y se guarda aparte.
+ */
+public class LongLongHashMap {
+
+    private static final float CARGA_MAX = 0.75f;
+
+    private long[] claves;
+    private long[] valores;
+    private int tamano;
+    private boolean contieneCero;
+    private long valorCero;
+
+    public LongLongHashMap(int capacidadEsperada) {
+        int capacidad = 16;
+        while (capacidad * CARGA_MAX < capacidadEsperada) {
+            capacidad <<= 1;
+        }
+        claves = new long[capacidad];
+        valores = new long[capacidad];
+    }
+
+    /**
+     * Asocia valor a clave (sustituye el anterior si existía)
+     */
+    public void put(long clave, long valor) {
+        if (clave == 0) {
+            contieneCero = true;
+            valorCero = valor;
+            return;
+        }
+        int mascara = claves.length - 1;
+        int i = (int) mezclar(clave) & mascara;
+        while (claves[i] != 0) {
+            if (claves[i] == clave) {
+                valores[i] = valor;
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+        claves[i] = clave;
+        valores[i] = valor;
+        if (++tamano > claves.length * CARGA_MAX) {
+            crecer();
+        }
+    }
+
+    /**
+     * Valor asociado a clave, o porDefecto si no está
+     */
+    public long get(long clave, long porDefecto) {
+        if (clave == 0) {
+            return contieneCero ? valorCero : porDefecto;
+        }
+        int mascara = claves.length - 1;
+        int i = (int) mezclar(clave) & mascara;
+        while (true) {
+            long actual = claves[i];
+            if (actual == 0) {
+                return porDefecto;
+            }
+            if (actual == clave) {
+                return valores[i];
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    /**
+     * Recorre todas las claves
+     */
+    public void forEachKey(LongConsumer accion) {
+        if (contieneCero) {
+            accion.accept(0);
+        }
+        for (long clave : claves) {
+            if (clave != 0) {
+                accion.accept(clave);
+            }
+        }
+    }
+
+    public int size() {
+        return tamano + (contieneCero ? 1 : 0);
+    }
+
+    /**
+     * Memoria aproximada ocupada (bytes)
+     */
+    public long ramBytesUsed() {
+        return 48L + 2 * (16L + 8L * claves.length);
+    }
+
+    private void crecer() {
+        long[] clavesAnteriores = claves;
+        long[] valoresAnteriores = valores;
+        claves = new long[clavesAnteriores.length << 1];
+        valores = new long[clavesAnteriores.length << 1];
+        int mascara = claves.length - 1;
+        for (int j = 0; j < clavesAnteriores.length; j++) {
+            long clave = clavesAnteriores[j];
+            if (clave != 0) {
+                int i = (int) mezclar(clave) & mascara;
+                while (claves[i] != 0) {
+                    i = (i + 1) & mascara;
+                }
+                claves[i] = clave;
+                valores[i] = valoresAnteriores[j];
+            }
+        }
+    }
+
+    /**
+     * Finalizador de MurmurHash3 (64 bits)
+     */
+    private static long mezclar(long v) {
+        v ^= v >>> 33;
+        v *= 0xff51afd7ed558ccdL;
+        v ^= v >>> 33;
+        v *= 0xc4ceb9fe1a85ec53L;
+        v ^= v >>> 33;
+        return v;
+    }
+}
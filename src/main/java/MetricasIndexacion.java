@@ -0,0 +1,286 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de la indexación por etapa del pipeline: número de llamadas, tiempo
+ * acumulado e histograma de latencias (cubetas log2 de nanosegundos), más
+ * contadores de filas, bytes y documentos.
+ *
+ * Las etapas son:
+ * - lectura: CsvMappedReader.next (detección de fin de fila y límites de campos
+ * en la misma pasada sobre los bytes), en los hilos lectores. Con un snapshot
+ * columnar como input solo se apunta la fila al grupo mapeado
+ * - parseo: decodificación del id, deduplicación y huella de la fila
+ * - documento: construcción de los Document (incluye decodificar y convertir
+ * las columnas, que se hace bajo demanda)
+ * - facetas: facetsConfig.build (ordinales de la taxonomía)
+ * - escritura: addDocument(s)/updateDocument (análisis e inversión en el
+ * IndexWriter)
+ * - commit: commits intermedios y final
+ *
+ * Todo se acumula en LongAdder, así que los workers no compiten por una misma
+ * línea de caché. Un hilo de muestreo calcula cada pocos segundos las tasas de
+ * la última ventana y escribe una línea de progreso con la ocupación de cada
+ * etapa (hilos ocupados de media), que indica cuál es el cuello de botella. Se
+ * publica por JMX como AirbnbIndexador:type=Metricas.
+ */
+public class MetricasIndexacion implements MetricasIndexacionMBean {
+
+    public static final String NOMBRE_JMX = "AirbnbIndexador:type=Metricas";
+
+    public enum Etapa {
+        LECTURA("lectura"), PARSEO("parseo"), DOCUMENTO("documento"), FACETAS("facetas"), ESCRITURA("escritura"),
+        COMMIT("commit");
+
+        final String nombre;
+
+        Etapa(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    private final Histograma[] etapas = new Histograma[Etapa.values().length];
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder documentos = new LongAdder();
+
+    // Última muestra (solo la escribe el hilo de muestreo)
+    private long muestraNs;
+    private long muestraFilas;
+    private long muestraBytes;
+    private long muestraDocumentos;
+    private final long[] muestraEtapasNs = new long[etapas.length];
+    private volatile double filasPorSegundo;
+    private volatile double bytesPorSegundo;
+    private volatile double documentosPorSegundo;
+
+    private Thread muestreo;
+    private ObjectName nombreJmx;
+
+    public MetricasIndexacion() {
+        for (int i = 0; i < etapas.length; i++) {
+            etapas[i] = new Histograma();
+        }
+        muestraNs = System.nanoTime();
+    }
+
+    /**
+     * Registra la duración de una etapa que empezó en 'inicio' (System.nanoTime)
+     *
+     * @return el instante actual, inicio de la etapa siguiente
+     */
+    public long medir(Etapa etapa, long inicio) {
+        long ahora = System.nanoTime();
+        etapas[etapa.ordinal()].registrar(ahora - inicio);
+        return ahora;
+    }
+
+    public void bytes(long n) {
+        bytes.add(n);
+    }
+
+    public void documentos(int n) {
+        documentos.add(n);
+    }
+
+    /**
+     * Arranca el hilo que cada intervaloS segundos muestrea las tasas y entrega
+     * la línea de progreso a 'salida'
+     */
+    public void iniciarMuestreo(int intervaloS, Consumer<String> salida) {
+        long intervaloMs = TimeUnit.SECONDS.toMillis(intervaloS);
+        muestreo = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(intervaloMs);
+                    salida.accept(muestrear());
+                }
+            } catch (InterruptedException e) {
+                // detenerMuestreo()
+            }
+        }, "indexador-progreso");
+        muestreo.setDaemon(true);
+        muestreo.start();
+    }
+
+    public void detenerMuestreo() throws InterruptedException {
+        if (muestreo != null) {
+            muestreo.interrupt();
+            muestreo.join();
+            muestreo = null;
+        }
+    }
+
+    /**
+     * Registra el MBean en el servidor JMX de la plataforma
+     */
+    public void registrarJmx() throws JMException {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        ObjectName nombre = new ObjectName(NOMBRE_JMX);
+        servidor.registerMBean(this, nombre);
+        nombreJmx = nombre;
+    }
+
+    public void desregistrarJmx() throws JMException {
+        if (nombreJmx != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nombreJmx);
+            nombreJmx = null;
+        }
+    }
+
+    /**
+     * Calcula las tasas desde la muestra anterior
+     *
+     * @return línea de progreso
+     */
+    synchronized String muestrear() {
+        long ahora = System.nanoTime();
+        double segundos = Math.max(1, ahora - muestraNs) / 1e9;
+        long filas = getFilasLeidas();
+        long b = bytes.sum();
+        long docs = documentos.sum();
+        filasPorSegundo = (filas - muestraFilas) / segundos;
+        bytesPorSegundo = (b - muestraBytes) / segundos;
+        documentosPorSegundo = (docs - muestraDocumentos) / segundos;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Progreso: ").append(filas).append(" filas (").append(Math.round(filasPorSegundo))
+                .append("/s), ").append(docs).append(" docs (").append(Math.round(documentosPorSegundo))
+                .append("/s), ").append(b >> 20).append(" MB (")
+                .append(String.format("%.1f", bytesPorSegundo / (1 << 20))).append(" MB/s) | ocupación:");
+        for (Etapa etapa : Etapa.values()) {
+            long total = etapas[etapa.ordinal()].totalNs.sum();
+            double hilos = (total - muestraEtapasNs[etapa.ordinal()]) / 1e9 / segundos;
+            muestraEtapasNs[etapa.ordinal()] = total;
+            sb.append(' ').append(etapa.nombre).append(' ').append(String.format("%.2f", hilos));
+        }
+        muestraNs = ahora;
+        muestraFilas = filas;
+        muestraBytes = b;
+        muestraDocumentos = docs;
+        return sb.append(" hilos").toString();
+    }
+
+    /**
+     * Resumen de una etapa: llamadas, tiempo total y percentiles
+     */
+    public String resumen(Etapa etapa) {
+        Histograma h = etapas[etapa.ordinal()];
+        return etapa.nombre + ": " + h.llamadas.sum() + " llamadas, " + TimeUnit.NANOSECONDS.toMillis(h.totalNs.sum())
+                + " ms, p50 " + microsegundos(h.percentil(0.5)) + ", p99 " + microsegundos(h.percentil(0.99))
+                + ", máx " + microsegundos(h.maximo.get());
+    }
+
+    private static String microsegundos(long ns) {
+        return String.format("%.1f us", ns / 1e3);
+    }
+
+    // ===================== MBean =====================
+
+    @Override
+    public long getFilasLeidas() {
+        return etapas[Etapa.LECTURA.ordinal()].llamadas.sum();
+    }
+
+    @Override
+    public long getBytesLeidos() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getDocumentosEscritos() {
+        return documentos.sum();
+    }
+
+    @Override
+    public double getFilasPorSegundo() {
+        return filasPorSegundo;
+    }
+
+    @Override
+    public double getBytesPorSegundo() {
+        return bytesPorSegundo;
+    }
+
+    @Override
+    public double getDocumentosPorSegundo() {
+        return documentosPorSegundo;
+    }
+
+    @Override
+    public String[] getEtapas() {
+        String[] res = new String[etapas.length];
+        for (Etapa etapa : Etapa.values()) {
+            res[etapa.ordinal()] = resumen(etapa);
+        }
+        return res;
+    }
+
+    @Override
+    public long percentilNs(String etapa, double p) {
+        for (Etapa e : Etapa.values()) {
+            if (e.nombre.equals(etapa)) {
+                return etapas[e.ordinal()].percentil(p);
+            }
+        }
+        throw new IllegalArgumentException("Etapa desconocida: " + etapa);
+    }
+
+    /**
+     * Histograma de latencias con una cubeta por potencia de 2 de nanosegundos
+     * (la cubeta b cuenta duraciones en [2^b, 2^(b+1)))
+     */
+    private static final class Histograma {
+        final LongAdder[] cubetas = new LongAdder[64];
+        final LongAdder llamadas = new LongAdder();
+        final LongAdder totalNs = new LongAdder();
+        final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+        Histograma() {
+            for (int i = 0; i < cubetas.length; i++) {
+                cubetas[i] = new LongAdder();
+            }
+        }
+
+        void registrar(long ns) {
+            if (ns < 0) {
+                ns = 0;
+            }
+            cubetas[63 - Long.numberOfLeadingZeros(ns | 1)].increment();
+            llamadas.increment();
+            totalNs.add(ns);
+            maximo.accumulate(ns);
+        }
+
+        /**
+         * Límite superior de la cubeta que contiene el percentil p, acotado por
+         * el máximo observado (0 si no hay datos)
+         */
+        long percentil(double p) {
+            long[] cuentas = new long[cubetas.length];
+            long total = 0;
+            for (int i = 0; i < cuentas.length; i++) {
+                cuentas[i] = cubetas[i].sum();
+                total += cuentas[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(p * total));
+            long acumulado = 0;
+            for (int i = 0; i < cuentas.length; i++) {
+                acumulado += cuentas[i];
+                if (acumulado >= objetivo) {
+                    return Math.min(maximo.get(), i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+                }
+            }
+            return maximo.get();
+        }
+    }
+}
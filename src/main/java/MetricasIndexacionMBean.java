@@ -0,0 +1,34 @@
+/**
+ * Interfaz JMX de MetricasIndexacion (registrada como
+ * AirbnbIndexador:type=Metricas). Los contadores son acumulados desde el inicio
+ * de la carga; las tasas son las de la última ventana de muestreo.
+ */
+public interface MetricasIndexacionMBean {
+
+    long getFilasLeidas();
+
+    long getBytesLeidos();
+
+    long getDocumentosEscritos();
+
+    double getFilasPorSegundo();
+
+    double getBytesPorSegundo();
+
+    double getDocumentosPorSegundo();
+
+    /**
+     * Una línea por etapa: llamadas, tiempo total y percentiles aproximados
+     */
+    String[] getEtapas();
+
+    /**
+     * Percentil aproximado (límite superior de su cubeta log2) de la latencia de
+     * una etapa, en nanosegundos
+     *
+     * @param etapa nombre de la etapa (lectura, parseo, documento, facetas,
+     *              escritura, commit)
+     * @param p     percentil entre 0 y 1
+     */
+    long percentilNs(String etapa, double p);
+}
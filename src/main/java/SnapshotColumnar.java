@@ -0,0 +1,750 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot binario columnar de las filas de un CSV ya extraídas: solo las
+ * columnas que lee el indexador (CsvSchema.usadas()), cada una con el tipo con
+ * que se lee, más las huellas de listing y host de cada fila.
+ *
+ * Se escribe durante una carga desde CSV (--write-snapshot) y se usa como
+ * --input en las siguientes (se detecta por sus primeros bytes): el archivo se
+ * mapea en memoria y cada fila es una Fila, que implementa CsvSchema.Valores
+ * con los valores guardados en lugar de parsear bytes del CSV, así que la
+ * construcción de documentos no cambia. Las huellas se leen con
+ * Fila.huellaPropiedad() y Fila.huellaHost(): no hay bytes crudos que hashear.
+ *
+ * Formato (little-endian):
+ * - Cabecera: "AIRBSNAP", versión del formato, versiones de las huellas,
+ * nombres de las columnas del CSV original y columnas guardadas (slot, tipo)
+ * - Grupos de hasta FILAS_POR_GRUPO filas, cada uno con las huellas (long[]) y
+ * una sección por columna: double[] (DECIMAL, PRECIO), long[] (LARGO), int[]
+ * (FECHA), byte[] (FLAG) o texto UTF-8. El texto se guarda con diccionario
+ * (valores distintos + códigos de 1, 2 o 4 bytes) si tiene pocos valores
+ * distintos en el grupo, como property_type o neighbourhood_cleansed, y si no
+ * como offsets int[filas + 1] seguidos de los bytes
+ * - Pie: offset, longitud y filas de cada grupo, offset del pie y "AIRBSNAP"
+ * (sin él, el snapshot está incompleto)
+ *
+ * Cada hilo lector del CSV llena su propio Grupo y lo añade al archivo al
+ * completarlo, así que los grupos no siguen el orden del CSV. Al leer, cada
+ * grupo es un bloque que un hilo lector reparte en lotes.
+ */
+public class SnapshotColumnar {
+
+    private static final byte[] MAGIA = "AIRBSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION_FORMATO = 1;
+    static final int FILAS_POR_GRUPO = 1 << 16;
+    private static final int BYTES_MAX_GRUPO = 64 << 20; // el texto puede cerrar el grupo antes
+    private static final int LIMITE_DICCIONARIO = 4096; // valores distintos por grupo
+    private static final byte TEXTO_PLANO = 0;
+    private static final byte TEXTO_DICCIONARIO = 1;
+    private static final CsvSchema.Tipo[] TIPOS = CsvSchema.Tipo.values();
+
+    private SnapshotColumnar() {
+    }
+
+    /**
+     * true si el archivo empieza como un snapshot
+     */
+    public static boolean esSnapshot(Path path) throws IOException {
+        byte[] magia = new byte[MAGIA.length];
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.readNBytes(magia, 0, magia.length) == magia.length && Arrays.equals(magia, MAGIA);
+        }
+    }
+
+    // ===================== Escritura =====================
+
+    /**
+     * Escribe el snapshot en un archivo temporal junto al destino y lo renombra
+     * al cerrarlo; abortar() lo descarta. escribir() es thread-safe.
+     */
+    public static final class Escritor implements Closeable {
+        private final Path destino;
+        private final Path temporal;
+        private final FileChannel canal;
+        private final CsvSchema.Columna[] columnas;
+        private final List<long[]> grupos = new ArrayList<>(); // offset, longitud, filas
+        private long filas;
+        private long bytes;
+        private boolean cerrado;
+
+        public Escritor(Path destino, String[] cabecera, List<CsvSchema.Columna> columnas,
+                long versionHuellaPropiedad, long versionHuellaHost) throws IOException {
+            this.destino = destino;
+            this.temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+            this.columnas = columnas.toArray(new CsvSchema.Columna[0]);
+            canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+
+            List<byte[]> nombres = new ArrayList<>();
+            int longitud = MAGIA.length + 4 + 8 + 8 + 4 + 4 + this.columnas.length * 5;
+            for (String nombre : cabecera) {
+                byte[] b = nombre.getBytes(StandardCharsets.UTF_8);
+                nombres.add(b);
+                longitud += 4 + b.length;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(longitud).order(ByteOrder.LITTLE_ENDIAN);
+            buf.put(MAGIA).putInt(VERSION_FORMATO).putLong(versionHuellaPropiedad).putLong(versionHuellaHost);
+            buf.putInt(nombres.size());
+            for (byte[] b : nombres) {
+                buf.putInt(b.length).put(b);
+            }
+            buf.putInt(this.columnas.length);
+            for (CsvSchema.Columna c : this.columnas) {
+                buf.putInt(c.slot).put((byte) c.tipo.ordinal());
+            }
+            escribirTodo(buf.flip());
+        }
+
+        /**
+         * Grupo vacío para un hilo lector
+         */
+        public Grupo nuevoGrupo() {
+            return new Grupo(columnas);
+        }
+
+        /**
+         * Añade el grupo al archivo (si tiene filas) y lo vacía para reutilizarlo
+         */
+        public void escribir(Grupo grupo) throws IOException {
+            if (grupo.filas == 0) {
+                return;
+            }
+            ByteBuffer buf = grupo.serializar();
+            synchronized (this) {
+                long offset = canal.position();
+                escribirTodo(buf);
+                grupos.add(new long[] { offset, canal.position() - offset, grupo.filas });
+                filas += grupo.filas;
+                bytes += canal.position() - offset;
+            }
+            grupo.vaciar();
+        }
+
+        private void escribirTodo(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                canal.write(buf);
+            }
+        }
+
+        public synchronized long filas() {
+            return filas;
+        }
+
+        public synchronized long bytes() {
+            return bytes;
+        }
+
+        /**
+         * Escribe el pie, sincroniza y renombra el temporal al destino
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            try {
+                long offsetPie = canal.position();
+                ByteBuffer buf = ByteBuffer.allocate(4 + grupos.size() * 20 + 8 + MAGIA.length)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(grupos.size());
+                for (long[] g : grupos) {
+                    buf.putLong(g[0]).putLong(g[1]).putInt((int) g[2]);
+                }
+                buf.putLong(offsetPie).put(MAGIA);
+                escribirTodo(buf.flip());
+                canal.force(true);
+            } finally {
+                canal.close();
+            }
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Descarta el snapshot a medio escribir (carga fallida)
+         */
+        public synchronized void abortar() throws IOException {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            canal.close();
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    /**
+     * Filas en construcción de un hilo lector: los valores se extraen de la Row
+     * del CSV con los mismos métodos que usan los accesores de CsvSchema. No es
+     * thread-safe.
+     */
+    public static final class Grupo {
+        private final ColumnaEnConstruccion[] columnas;
+        private long[] huellasPropiedad = new long[1024];
+        private long[] huellasHost = new long[1024];
+        private int filas;
+
+        private Grupo(CsvSchema.Columna[] columnas) {
+            this.columnas = new ColumnaEnConstruccion[columnas.length];
+            for (int i = 0; i < columnas.length; i++) {
+                this.columnas[i] = new ColumnaEnConstruccion(columnas[i]);
+            }
+        }
+
+        public void anadir(CsvMappedReader.Row row, long huellaPropiedad, long huellaHost) {
+            if (filas == huellasPropiedad.length) {
+                huellasPropiedad = Arrays.copyOf(huellasPropiedad, filas * 2);
+                huellasHost = Arrays.copyOf(huellasHost, filas * 2);
+            }
+            huellasPropiedad[filas] = huellaPropiedad;
+            huellasHost[filas] = huellaHost;
+            for (ColumnaEnConstruccion c : columnas) {
+                c.anadir(row, filas);
+            }
+            filas++;
+        }
+
+        /**
+         * true si el grupo debe escribirse ya (por filas o por tamaño del texto)
+         */
+        public boolean lleno() {
+            if (filas >= FILAS_POR_GRUPO) {
+                return true;
+            }
+            long texto = 0;
+            for (ColumnaEnConstruccion c : columnas) {
+                texto += c.longitudTexto;
+            }
+            return texto >= BYTES_MAX_GRUPO;
+        }
+
+        public int filas() {
+            return filas;
+        }
+
+        private void vaciar() {
+            filas = 0;
+            for (ColumnaEnConstruccion c : columnas) {
+                c.vaciar();
+            }
+        }
+
+        private ByteBuffer serializar() {
+            int longitud = 4 + filas * 16;
+            for (ColumnaEnConstruccion c : columnas) {
+                longitud += 4 + c.longitud(filas);
+            }
+            ByteBuffer buf = ByteBuffer.allocate(longitud).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(filas);
+            for (int i = 0; i < filas; i++) {
+                buf.putLong(huellasPropiedad[i]);
+            }
+            for (int i = 0; i < filas; i++) {
+                buf.putLong(huellasHost[i]);
+            }
+            for (ColumnaEnConstruccion c : columnas) {
+                buf.putInt(c.longitud(filas));
+                c.serializar(buf, filas);
+            }
+            return buf.flip();
+        }
+    }
+
+    /**
+     * Valores de una columna en un grupo en construcción
+     */
+    private static final class ColumnaEnConstruccion {
+        final int slot;
+        final CsvSchema.Tipo tipo;
+        long[] valores = new long[1024]; // números (double como bits) o, en texto, el código de diccionario
+
+        // Texto: bytes UTF-8 concatenados y fin de cada valor
+        byte[] texto;
+        int[] fines;
+        int longitudTexto;
+        Map<String, Integer> diccionario; // null si hay demasiados valores distintos
+        List<byte[]> distintos;
+        int bytesDistintos;
+
+        ColumnaEnConstruccion(CsvSchema.Columna c) {
+            this.slot = c.slot;
+            this.tipo = c.tipo;
+            if (tipo == CsvSchema.Tipo.TEXTO) {
+                texto = new byte[1 << 16];
+                fines = new int[1024];
+                vaciar();
+            }
+        }
+
+        void anadir(CsvMappedReader.Row row, int fila) {
+            if (fila == valores.length) {
+                valores = Arrays.copyOf(valores, fila * 2);
+            }
+            boolean existe = slot < row.size();
+            switch (tipo) {
+                case DECIMAL:
+                case PRECIO:
+                    valores[fila] = Double.doubleToRawLongBits(
+                            existe ? row.parseDecimal(slot, tipo == CsvSchema.Tipo.PRECIO) : Double.NaN);
+                    break;
+                case LARGO:
+                    valores[fila] = existe ? row.parseLong(slot, Long.MIN_VALUE) : Long.MIN_VALUE;
+                    break;
+                case FECHA:
+                    valores[fila] = existe ? row.parseEpochDay(slot, Integer.MIN_VALUE) : Integer.MIN_VALUE;
+                    break;
+                case FLAG:
+                    valores[fila] = existe ? row.parseFlag(slot) : -1;
+                    break;
+                case TEXTO:
+                    anadirTexto(existe && !row.isEmpty(slot) ? row.get(slot) : "", fila);
+                    break;
+            }
+        }
+
+        private void anadirTexto(String valor, int fila) {
+            byte[] b = valor.getBytes(StandardCharsets.UTF_8);
+            if (longitudTexto + b.length > texto.length) {
+                texto = Arrays.copyOf(texto, Math.max(longitudTexto + b.length, texto.length * 2));
+            }
+            System.arraycopy(b, 0, texto, longitudTexto, b.length);
+            longitudTexto += b.length;
+            if (fila == fines.length) {
+                fines = Arrays.copyOf(fines, fila * 2);
+            }
+            fines[fila] = longitudTexto;
+            if (diccionario != null) {
+                Integer codigo = diccionario.get(valor);
+                if (codigo == null) {
+                    if (diccionario.size() == LIMITE_DICCIONARIO) {
+                        diccionario = null;
+                        distintos = null;
+                        return;
+                    }
+                    codigo = diccionario.size();
+                    diccionario.put(valor, codigo);
+                    distintos.add(b);
+                    bytesDistintos += b.length;
+                }
+                valores[fila] = codigo;
+            }
+        }
+
+        /**
+         * Diccionario solo si los valores se repiten (al menos dos filas por valor)
+         */
+        private boolean conDiccionario(int filas) {
+            return diccionario != null && diccionario.size() * 2 <= filas;
+        }
+
+        private int anchoCodigo() {
+            return distintos.size() <= 0x100 ? 1 : distintos.size() <= 0x10000 ? 2 : 4;
+        }
+
+        int longitud(int filas) {
+            switch (tipo) {
+                case DECIMAL:
+                case PRECIO:
+                case LARGO:
+                    return filas * 8;
+                case FECHA:
+                    return filas * 4;
+                case FLAG:
+                    return filas;
+                default:
+                    if (conDiccionario(filas)) {
+                        return 1 + 4 + (distintos.size() + 1) * 4 + bytesDistintos + 1 + filas * anchoCodigo();
+                    }
+                    return 1 + (filas + 1) * 4 + longitudTexto;
+            }
+        }
+
+        void serializar(ByteBuffer buf, int filas) {
+            switch (tipo) {
+                case DECIMAL:
+                case PRECIO:
+                case LARGO:
+                    for (int i = 0; i < filas; i++) {
+                        buf.putLong(valores[i]);
+                    }
+                    break;
+                case FECHA:
+                    for (int i = 0; i < filas; i++) {
+                        buf.putInt((int) valores[i]);
+                    }
+                    break;
+                case FLAG:
+                    for (int i = 0; i < filas; i++) {
+                        buf.put((byte) valores[i]);
+                    }
+                    break;
+                default:
+                    if (conDiccionario(filas)) {
+                        buf.put(TEXTO_DICCIONARIO).putInt(distintos.size());
+                        int fin = 0;
+                        buf.putInt(0);
+                        for (byte[] b : distintos) {
+                            fin += b.length;
+                            buf.putInt(fin);
+                        }
+                        for (byte[] b : distintos) {
+                            buf.put(b);
+                        }
+                        int ancho = anchoCodigo();
+                        buf.put((byte) ancho);
+                        for (int i = 0; i < filas; i++) {
+                            if (ancho == 1) {
+                                buf.put((byte) valores[i]);
+                            } else if (ancho == 2) {
+                                buf.putShort((short) valores[i]);
+                            } else {
+                                buf.putInt((int) valores[i]);
+                            }
+                        }
+                    } else {
+                        buf.put(TEXTO_PLANO).putInt(0);
+                        for (int i = 0; i < filas; i++) {
+                            buf.putInt(fines[i]);
+                        }
+                        buf.put(texto, 0, longitudTexto);
+                    }
+            }
+        }
+
+        void vaciar() {
+            if (tipo == CsvSchema.Tipo.TEXTO) {
+                longitudTexto = 0;
+                diccionario = new HashMap<>();
+                distintos = new ArrayList<>();
+                bytesDistintos = 0;
+            }
+        }
+    }
+
+    // ===================== Lectura =====================
+
+    /**
+     * Snapshot abierto para lectura: cabecera y directorio de grupos. Cada grupo
+     * se mapea en memoria al pedirlo (grupo(i)); el mapeo sigue siendo válido
+     * después de close().
+     */
+    public static final class Lector implements Closeable {
+        private final FileChannel canal;
+        private final long versionHuellaPropiedad;
+        private final long versionHuellaHost;
+        private final String[] cabecera;
+        private final List<CsvSchema.Columna> columnas = new ArrayList<>();
+        private final long[] offsets;
+        private final long[] longitudes;
+        private final int[] filasGrupo;
+        private final long[] primeraFila;
+        private final long filas;
+
+        public Lector(Path path) throws IOException {
+            canal = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                long tamano = canal.size();
+                ByteBuffer cola = leer(tamano - 8 - MAGIA.length, 8 + MAGIA.length);
+                long offsetPie = cola.getLong();
+                byte[] magia = new byte[MAGIA.length];
+                cola.get(magia);
+                if (!Arrays.equals(magia, MAGIA) || offsetPie < 0 || offsetPie > tamano - 8 - MAGIA.length) {
+                    throw new IOException("Snapshot incompleto o dañado (sin pie): " + path);
+                }
+                ByteBuffer pie = leer(offsetPie, (int) (tamano - 8 - MAGIA.length - offsetPie));
+                int numGrupos = pie.getInt();
+                offsets = new long[numGrupos];
+                longitudes = new long[numGrupos];
+                filasGrupo = new int[numGrupos];
+                primeraFila = new long[numGrupos];
+                long total = 0;
+                for (int g = 0; g < numGrupos; g++) {
+                    offsets[g] = pie.getLong();
+                    longitudes[g] = pie.getLong();
+                    filasGrupo[g] = pie.getInt();
+                    primeraFila[g] = total;
+                    total += filasGrupo[g];
+                }
+                filas = total;
+
+                DataInputStream in = new DataInputStream(Channels.newInputStream(canal.position(0)));
+                in.readFully(magia);
+                ByteBuffer fijo = ByteBuffer.wrap(in.readNBytes(4 + 8 + 8 + 4)).order(ByteOrder.LITTLE_ENDIAN);
+                int version = fijo.getInt();
+                if (version != VERSION_FORMATO) {
+                    throw new IOException("Versión de snapshot no soportada (" + version + "): " + path);
+                }
+                versionHuellaPropiedad = fijo.getLong();
+                versionHuellaHost = fijo.getLong();
+                cabecera = new String[fijo.getInt()];
+                for (int i = 0; i < cabecera.length; i++) {
+                    int n = Integer.reverseBytes(in.readInt());
+                    cabecera[i] = new String(in.readNBytes(n), StandardCharsets.UTF_8);
+                }
+                int numColumnas = Integer.reverseBytes(in.readInt());
+                for (int i = 0; i < numColumnas; i++) {
+                    int slot = Integer.reverseBytes(in.readInt());
+                    columnas.add(new CsvSchema.Columna(slot, TIPOS[in.readByte()]));
+                }
+            } catch (IOException | RuntimeException e) {
+                canal.close();
+                throw e;
+            }
+        }
+
+        private ByteBuffer leer(long offset, int n) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(n).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining()) {
+                if (canal.read(buf, offset + buf.position()) < 0) {
+                    throw new IOException("Snapshot truncado");
+                }
+            }
+            return buf.flip();
+        }
+
+        /**
+         * Nombres de las columnas del CSV del que se generó
+         */
+        public String[] cabecera() {
+            return cabecera.clone();
+        }
+
+        /**
+         * Columnas guardadas (slot en la cabecera y tipo)
+         */
+        public List<CsvSchema.Columna> columnas() {
+            return new ArrayList<>(columnas);
+        }
+
+        public long versionHuellaPropiedad() {
+            return versionHuellaPropiedad;
+        }
+
+        public long versionHuellaHost() {
+            return versionHuellaHost;
+        }
+
+        public int numGrupos() {
+            return offsets.length;
+        }
+
+        public long filas() {
+            return filas;
+        }
+
+        /**
+         * Número global (desde 0) de la primera fila del grupo
+         */
+        public long primeraFila(int grupo) {
+            return primeraFila[grupo];
+        }
+
+        public int filas(int grupo) {
+            return filasGrupo[grupo];
+        }
+
+        public long bytes(int grupo) {
+            return longitudes[grupo];
+        }
+
+        /**
+         * Mapea un grupo y lee su directorio de columnas
+         */
+        public GrupoMapeado grupo(int grupo) throws IOException {
+            ByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, offsets[grupo], longitudes[grupo])
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return new GrupoMapeado(buf, cabecera.length, columnas);
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    /**
+     * Grupo mapeado en memoria: posición de cada columna y diccionarios ya
+     * decodificados. Inmutable: lo comparten las Fila de varios workers.
+     */
+    public static final class GrupoMapeado {
+        private final ByteBuffer buf;
+        private final int filas;
+        private final int numCabecera;
+        private final int[] columnaPorSlot; // [tipo * numCabecera + slot] -> inicio de los datos, o -1
+        private final String[][] diccionarios; // por slot, solo columnas de texto con diccionario
+
+        private GrupoMapeado(ByteBuffer buf, int numCabecera, List<CsvSchema.Columna> columnas) {
+            this.buf = buf;
+            this.numCabecera = numCabecera;
+            this.filas = buf.getInt(0);
+            columnaPorSlot = new int[TIPOS.length * numCabecera];
+            Arrays.fill(columnaPorSlot, -1);
+            diccionarios = new String[numCabecera][];
+            int p = 4 + filas * 16;
+            for (CsvSchema.Columna c : columnas) {
+                int longitud = buf.getInt(p);
+                int inicio = p + 4;
+                columnaPorSlot[c.tipo.ordinal() * numCabecera + c.slot] = inicio;
+                if (c.tipo == CsvSchema.Tipo.TEXTO && buf.get(inicio) == TEXTO_DICCIONARIO) {
+                    diccionarios[c.slot] = leerDiccionario(inicio);
+                }
+                p = inicio + longitud;
+            }
+        }
+
+        private String[] leerDiccionario(int inicio) {
+            int n = buf.getInt(inicio + 1);
+            int base = inicio + 1 + 4 + (n + 1) * 4;
+            String[] valores = new String[n];
+            for (int i = 0; i < n; i++) {
+                int desde = buf.getInt(inicio + 5 + i * 4);
+                int hasta = buf.getInt(inicio + 5 + (i + 1) * 4);
+                byte[] b = new byte[hasta - desde];
+                buf.get(base + desde, b);
+                valores[i] = new String(b, StandardCharsets.UTF_8);
+            }
+            return valores;
+        }
+
+        public int filas() {
+            return filas;
+        }
+
+        private int columna(CsvSchema.Tipo tipo, int slot) {
+            return slot < 0 || slot >= numCabecera ? -1 : columnaPorSlot[tipo.ordinal() * numCabecera + slot];
+        }
+    }
+
+    /**
+     * Fila de un snapshot: los accesores de CsvSchema obtienen los valores
+     * guardados. No tiene bytes crudos; las huellas vienen guardadas.
+     * Reutilizable con apuntar(); no es thread-safe.
+     */
+    public static final class Fila implements CsvSchema.Valores {
+        private GrupoMapeado grupo;
+        private int fila;
+        private long numero;
+        private byte[] scratch = new byte[256];
+
+        /**
+         * Apunta a la fila i del grupo; 'numero' es su número global en el snapshot
+         */
+        public void apuntar(GrupoMapeado grupo, int i, long numero) {
+            this.grupo = grupo;
+            this.fila = i;
+            this.numero = numero;
+        }
+
+        public long huellaPropiedad() {
+            return grupo.buf.getLong(4 + fila * 8);
+        }
+
+        public long huellaHost() {
+            return grupo.buf.getLong(4 + grupo.filas * 8 + fila * 8);
+        }
+
+        /**
+         * Número de la fila en el snapshot (no hay offset en un CSV)
+         */
+        public long offset() {
+            return numero;
+        }
+
+        @Override
+        public int size() {
+            return grupo.numCabecera;
+        }
+
+        @Override
+        public boolean isEmpty(int i) {
+            int c = grupo.columna(CsvSchema.Tipo.TEXTO, i);
+            if (c < 0) {
+                return true;
+            }
+            ByteBuffer buf = grupo.buf;
+            if (buf.get(c) == TEXTO_DICCIONARIO) {
+                return grupo.diccionarios[i][codigo(c)].isEmpty();
+            }
+            return buf.getInt(c + 1 + fila * 4) == buf.getInt(c + 1 + (fila + 1) * 4);
+        }
+
+        @Override
+        public String get(int i) {
+            int c = grupo.columna(CsvSchema.Tipo.TEXTO, i);
+            if (c < 0) {
+                return "";
+            }
+            ByteBuffer buf = grupo.buf;
+            if (buf.get(c) == TEXTO_DICCIONARIO) {
+                return grupo.diccionarios[i][codigo(c)];
+            }
+            int desde = buf.getInt(c + 1 + fila * 4);
+            int hasta = buf.getInt(c + 1 + (fila + 1) * 4);
+            int n = hasta - desde;
+            if (scratch.length < n) {
+                scratch = new byte[Math.max(n, scratch.length * 2)];
+            }
+            buf.get(c + 1 + (grupo.filas + 1) * 4 + desde, scratch, 0, n);
+            return new String(scratch, 0, n, StandardCharsets.UTF_8);
+        }
+
+        private int codigo(int c) {
+            ByteBuffer buf = grupo.buf;
+            int n = buf.getInt(c + 1);
+            int p = c + 1 + 4 + (n + 1) * 4;
+            p += buf.getInt(p - 4); // tras los bytes de los valores
+            int ancho = buf.get(p);
+            p++;
+            if (ancho == 1) {
+                return buf.get(p + fila) & 0xFF;
+            } else if (ancho == 2) {
+                return buf.getShort(p + fila * 2) & 0xFFFF;
+            }
+            return buf.getInt(p + fila * 4);
+        }
+
+        @Override
+        public double parseDecimal(int i, boolean precio) {
+            int c = grupo.columna(precio ? CsvSchema.Tipo.PRECIO : CsvSchema.Tipo.DECIMAL, i);
+            return c < 0 ? Double.NaN : grupo.buf.getDouble(c + fila * 8);
+        }
+
+        @Override
+        public long parseLong(int i, long sinValor) {
+            int c = grupo.columna(CsvSchema.Tipo.LARGO, i);
+            long v = c < 0 ? Long.MIN_VALUE : grupo.buf.getLong(c + fila * 8);
+            return v == Long.MIN_VALUE ? sinValor : v;
+        }
+
+        @Override
+        public int parseEpochDay(int i, int sinValor) {
+            int c = grupo.columna(CsvSchema.Tipo.FECHA, i);
+            int v = c < 0 ? Integer.MIN_VALUE : grupo.buf.getInt(c + fila * 4);
+            return v == Integer.MIN_VALUE ? sinValor : v;
+        }
+
+        @Override
+        public int parseFlag(int i) {
+            int c = grupo.columna(CsvSchema.Tipo.FLAG, i);
+            return c < 0 ? -1 : grupo.buf.get(c + fila);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests del modo update sobre un índice real en disco: los listings y hosts
+ * sin cambios no se reescriben (huella), los modificados y nuevos sí, y los
+ * listings que faltan en el CSV se borran
+ */
+class AirbnbIndexadorTest {
+
+    private static final String CABECERA = "id,listing_url,name,description,host_id,host_name,price,"
+            + "neighbourhood_cleansed,property_type\n";
+
+    @TempDir
+    Path tmp;
+
+    private static String fila(int id, String nombre, int hostId, String precio) {
+        return fila(id, nombre, hostId, "Host " + hostId, precio);
+    }
+
+    private static String fila(int id, String nombre, int hostId, String host, String precio) {
+        return id + ",https://example.com/rooms/" + id + "," + nombre + ",\"Descripción del " + id
+                + ",\nen dos líneas\"," + hostId + "," + host + ",\"$" + precio + "\",Venice,Entire home\n";
+    }
+
+    private AirbnbIndexador indexar(String modo, String csv) throws Exception {
+        Path entrada = tmp.resolve("listings.csv");
+        Files.writeString(entrada, csv);
+        AirbnbIndexador.Config config = new AirbnbIndexador.Config();
+        config.input = entrada.toString();
+        config.indexRoot = tmp.resolve("index_root").toString();
+        config.mode = modo;
+        config.threads = 2;
+        config.parseThreads = 1;
+        AirbnbIndexador indexador = new AirbnbIndexador(config);
+        indexador.ejecutar();
+        return indexador;
+    }
+
+    private Directory propiedades() throws IOException {
+        return FSDirectory.open(tmp.resolve("index_root").resolve(AirbnbIndexador.INDEX_PROPERTIES));
+    }
+
+    private Directory hosts() throws IOException {
+        return FSDirectory.open(tmp.resolve("index_root").resolve(AirbnbIndexador.INDEX_HOSTS));
+    }
+
+    private static Document documento(DirectoryReader reader, String id) throws IOException {
+        return documento(reader, "id", id);
+    }
+
+    /**
+     * Documento vivo con el id dado, null si no está
+     */
+    private static Document documento(DirectoryReader reader, String campo, String id) throws IOException {
+        TopDocs hits = new IndexSearcher(reader).search(new TermQuery(new Term(campo, id)), 2);
+        if (hits.totalHits.value() == 0) {
+            return null;
+        }
+        assertEquals(1, hits.totalHits.value(), "id " + id + " duplicado");
+        return reader.storedFields().document(hits.scoreDocs[0].doc);
+    }
+
+    private static void assertResumen(AirbnbIndexador indexador, int hostsSinCambios, int sinCambios,
+            int modificados, int nuevos, int eliminados) {
+        assertEquals(hostsSinCambios, indexador.hostsSinCambios(), "hosts sin cambios");
+        assertEquals(sinCambios, indexador.listingsSinCambios(), "sin cambios");
+        assertEquals(modificados, indexador.listingsModificados(), "modificados");
+        assertEquals(nuevos, indexador.listingsNuevos(), "nuevos");
+        assertEquals(eliminados, indexador.listingsEliminados(), "eliminados");
+    }
+
+    @Test
+    void updateOmiteSinCambiosYBorraAusentes() throws Exception {
+        indexar("build", CABECERA + fila(1, "Loft", 10, "100.00") + fila(2, "Casa", 10, "200.00")
+                + fila(3, "Estudio", 20, "80.00"));
+        try (Directory dir = propiedades(); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(3, reader.numDocs());
+        }
+
+        // 1 igual, 2 cambia de nombre y precio, 3 desaparece, 4 es nuevo; el host
+        // 10 no cambia y el 20 sí
+        String v2 = CABECERA + fila(1, "Loft", 10, "100.00") + fila(2, "Casa reformada", 10, "250.00")
+                + fila(4, "Ático", 20, "Ana", "150.00");
+        assertResumen(indexar("update", v2), 1, 1, 1, 1, 1);
+        try (Directory dir = propiedades(); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(3, reader.numDocs());
+            assertEquals("Loft", documento(reader, "1").get("name"));
+            Document modificado = documento(reader, "2");
+            assertEquals("Casa reformada", modificado.get("name"));
+            assertEquals(250.0, modificado.getField("price").numericValue().doubleValue());
+            assertNull(documento(reader, "3"));
+            assertEquals("Ático", documento(reader, "4").get("name"));
+        }
+        try (Directory dir = hosts(); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(2, reader.numDocs());
+            assertEquals("Host 10", documento(reader, "host_id", "10").get("host_name"));
+            assertEquals("Ana", documento(reader, "host_id", "20").get("host_name"));
+        }
+
+        // El mismo CSV otra vez: nada que escribir
+        assertResumen(indexar("update", v2), 2, 3, 0, 0, 0);
+        try (Directory dir = propiedades(); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(3, reader.numDocs());
+        }
+    }
+
+    @Test
+    void updateMigraUnIndiceConIdSoloComoPunto() throws Exception {
+        // Índice de propiedades como lo escribía la versión anterior
+        Files.createDirectories(tmp.resolve("index_root"));
+        try (Directory dir = propiedades();
+                IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(AirbnbIndexador.crearAnalizador()))) {
+            for (int id : new int[] { 1, 2, 3 }) {
+                Document doc = new Document();
+                doc.add(new IntPoint("id", id));
+                doc.add(new StoredField("id", id));
+                doc.add(new TextField("name", "Antiguo " + id, Field.Store.YES));
+                writer.addDocument(doc);
+            }
+        }
+
+        assertResumen(indexar("update", CABECERA + fila(1, "Loft", 10, "100.00") + fila(4, "Ático", 20, "150.00")),
+                0, 0, 0, 2, 0);
+        try (Directory dir = propiedades(); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(2, reader.numDocs());
+            assertEquals("Loft", documento(reader, "1").get("name"));
+            assertEquals("Ático", documento(reader, "4").get("name"));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests de la división en bloques: cada corte debe resincronizarse en un inicio
+ * de fila real aunque el punto nominal caiga dentro de un campo entrecomillado
+ * multi-línea o en medio de una comilla escapada ("")
+ */
+class CsvChunkerTest {
+
+    private static final String CABECERA = "id,name,description,price\n";
+
+    @TempDir
+    Path tmp;
+
+    /**
+     * CSV cuyas descripciones tienen saltos de línea, comillas escapadas y
+     * líneas interiores que parecen filas (mismo número de comas que la cabecera)
+     */
+    private static String csv(int filas) {
+        StringBuilder sb = new StringBuilder(CABECERA);
+        for (int i = 0; i < filas; i++) {
+            sb.append(i).append(",Piso ").append(i).append(',');
+            switch (i % 4) {
+                case 0:
+                    sb.append("\"Luminoso,\ncon \"\"terraza\"\"\n").append(i + 1).append(",a,b,c\nfin\"");
+                    break;
+                case 1:
+                    sb.append("\"\"\"\"\"\"");
+                    break;
+                case 2:
+                    sb.append("\"línea 1\r\nlínea 2,\"\"x\"\",\r\n\"");
+                    break;
+                default:
+                    sb.append("sin comillas");
+            }
+            sb.append(",$").append(50 + i).append(".00\n");
+        }
+        return sb.toString();
+    }
+
+    private static List<String> leer(Path archivo, long inicio, long fin) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (CsvMappedReader reader = new CsvMappedReader(archivo, StandardCharsets.UTF_8, ",", inicio, -1)) {
+            CsvMappedReader.Row row = new CsvMappedReader.Row(StandardCharsets.UTF_8);
+            // Como el indexador: la última fila se lee entera aunque cruce 'fin'
+            while (reader.position() < fin && reader.next(row)) {
+                assertEquals(4, row.size(), "fila en offset " + row.offset());
+                ids.add(row.get(0) + "|" + row.get(2));
+            }
+        }
+        return ids;
+    }
+
+    private static Set<Long> iniciosDeFila(Path archivo) throws IOException {
+        Set<Long> inicios = new HashSet<>();
+        try (CsvMappedReader reader = new CsvMappedReader(archivo, StandardCharsets.UTF_8, ",")) {
+            CsvMappedReader.Row row = new CsvMappedReader.Row(StandardCharsets.UTF_8);
+            while (reader.next(row)) {
+                inicios.add(row.offset());
+            }
+        }
+        return inicios;
+    }
+
+    @Test
+    void cortesEnCadaByteSeResincronizanEnIniciosDeFila() throws IOException {
+        Path archivo = tmp.resolve("listings.csv");
+        Files.writeString(archivo, csv(80));
+        long inicio = CABECERA.length();
+        long tamano = Files.size(archivo);
+        Set<Long> inicios = iniciosDeFila(archivo);
+
+        // Un corte nominal por byte: cubre todas las posiciones dentro de comillas
+        CsvChunker.Division division = CsvChunker.dividir(archivo, StandardCharsets.UTF_8, ",", inicio, 4,
+                (int) (tamano - inicio), 1);
+
+        assertTrue(division.bloques.size() > 1);
+        List<String> esperadas = leer(archivo, inicio, tamano);
+        List<String> leidas = new ArrayList<>();
+        long anterior = inicio;
+        for (CsvChunker.Bloque bloque : division.bloques) {
+            assertEquals(anterior, bloque.inicio, "bloques contiguos");
+            assertTrue(inicios.contains(bloque.inicio), bloque + " no empieza en un inicio de fila");
+            leidas.addAll(leer(archivo, bloque.inicio, bloque.fin));
+            anterior = bloque.fin;
+        }
+        assertEquals(tamano, anterior);
+        assertEquals(esperadas, leidas);
+    }
+
+    @Test
+    void corteDentroDeComillasEscapadas() throws IOException {
+        Path archivo = tmp.resolve("comillas.csv");
+        StringBuilder sb = new StringBuilder(CABECERA);
+        for (int i = 0; i < 40; i++) {
+            // Descripción larga hecha solo de "" y saltos de línea
+            sb.append(i).append(",x,\"");
+            for (int k = 0; k < 20; k++) {
+                sb.append("\"\"\n");
+            }
+            sb.append("\",1\n");
+        }
+        Files.writeString(archivo, sb.toString());
+        long inicio = CABECERA.length();
+        long tamano = Files.size(archivo);
+        Set<Long> inicios = iniciosDeFila(archivo);
+
+        for (int n = 2; n <= 16; n++) {
+            CsvChunker.Division division = CsvChunker.dividir(archivo, StandardCharsets.UTF_8, ",", inicio, 4, n, 1);
+            List<String> leidas = new ArrayList<>();
+            for (CsvChunker.Bloque bloque : division.bloques) {
+                assertTrue(inicios.contains(bloque.inicio), bloque + " no empieza en un inicio de fila");
+                leidas.addAll(leer(archivo, bloque.inicio, bloque.fin));
+            }
+            assertEquals(leer(archivo, inicio, tamano), leidas, n + " bloques");
+        }
+    }
+
+    @Test
+    void sinCortesValidosUnSoloBloque() throws IOException {
+        Path archivo = tmp.resolve("una-fila.csv");
+        Files.writeString(archivo, CABECERA + "1,x,\"a\nb\nc\nd\ne\",2\n");
+        long inicio = CABECERA.length();
+        CsvChunker.Division division = CsvChunker.dividir(archivo, StandardCharsets.UTF_8, ",", inicio, 4, 4, 1);
+        assertEquals(1, division.bloques.size());
+        assertEquals(inicio, division.bloques.get(0).inicio);
+        assertEquals(Files.size(archivo), division.bloques.get(0).fin);
+    }
+}
@@ -0,0 +1,175 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests del parseo de campos de CsvMappedReader: límites de campos con
+ * comillas y accesores primitivos comparados con los parsers del JDK que
+ * sustituyen (Double.parseDouble y SimpleDateFormat tolerante)
+ */
+class CsvMappedReaderTest {
+
+    @TempDir
+    Path tmp;
+
+    /**
+     * Lee la primera fila de un CSV en memoria
+     */
+    private static CsvMappedReader.Row fila(String csv) throws IOException {
+        try (CsvMappedReader reader = new CsvMappedReader(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, ",", 0)) {
+            CsvMappedReader.Row row = reader.next();
+            assertNotNull(row);
+            return row;
+        }
+    }
+
+    /**
+     * Double.parseDouble sobre el texto recortado, NaN si vacío o mal formado
+     * (lo que hacía el parser original)
+     */
+    private static double parseDoubleJdk(String s) {
+        if (s.isBlank()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void assertMismoDecimal(String texto) throws IOException {
+        CsvMappedReader.Row row = fila(texto + "\n");
+        // assertEquals(double, double) compara los bits: distingue -0.0 de 0.0
+        assertEquals(parseDoubleJdk(texto), row.parseDecimal(0, false), "parseDecimal(\"" + texto + "\")");
+    }
+
+    @Test
+    void camposConComillasYSaltosDeLinea() throws IOException {
+        CsvMappedReader.Row row = fila("1,\"dice \"\"hola\"\",\nadiós\r\nfin\",,x\r\n2,b,c,d\n");
+        assertEquals(4, row.size());
+        assertEquals("1", row.get(0));
+        assertEquals("dice \"hola\",\nadiós\nfin", row.get(1));
+        assertTrue(row.isEmpty(2));
+        assertEquals("x", row.get(3));
+    }
+
+    @Test
+    void leeUnaFilaPorLineaLogica() throws IOException {
+        String csv = "id,texto\n1,\"a\nb\"\n2,\"\"\"\"\n3,c";
+        Path archivo = tmp.resolve("filas.csv");
+        Files.writeString(archivo, csv);
+        try (CsvMappedReader reader = new CsvMappedReader(archivo, StandardCharsets.UTF_8, ",")) {
+            CsvMappedReader.Row row = new CsvMappedReader.Row(StandardCharsets.UTF_8);
+            assertTrue(reader.next(row));
+            assertEquals("texto", row.get(1));
+            assertTrue(reader.next(row));
+            assertEquals("a\nb", row.get(1));
+            assertTrue(reader.next(row));
+            assertEquals("\"", row.get(1));
+            assertTrue(reader.next(row));
+            assertEquals("3", row.get(0));
+            assertEquals("c", row.get(1));
+            assertFalse(reader.next(row));
+        }
+    }
+
+    @Test
+    void parseDecimalCoincideConDoubleParseDouble() throws IOException {
+        String[] casos = { "0", "-0", "+0", "42", "-42", "+3.25", " 7.5 ", "0.1", ".5", "5.", "-.75", "1e5", "1E5",
+                "1.5e-3", "-2.5E+10", "1e400", "1e-400", "9007199254740992", "9007199254740993",
+                "123456789012345678901", "0.1234567890123456789012", "0.12345678901234567890123",
+                "3.14159265358979323846264338327950288", "1234567.000000000000000000000001", "", "   ", "-", "+", ".", "abc", "1.2.3", "12a", "0x10" };
+        for (String caso : casos) {
+            assertMismoDecimal(caso);
+        }
+    }
+
+    @Test
+    void parseDecimalAleatorioCoincideConDoubleParseDouble() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                sb.append('-');
+            }
+            int enteros = random.nextInt(10);
+            for (int k = 0; k < enteros; k++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            int decimales = random.nextInt(25);
+            if (decimales > 0 || enteros == 0) {
+                sb.append('.');
+                for (int k = 0; k < Math.max(1, decimales); k++) {
+                    sb.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            assertMismoDecimal(sb.toString());
+        }
+    }
+
+    @Test
+    void parseDecimalDePrecioIgnoraMonedaYMiles() throws IOException {
+        CsvMappedReader.Row row = fila("\"$1,200.50\",$85.00,\"-$3\",$\n");
+        assertEquals(1200.5, row.parseDecimal(0, true));
+        assertEquals(85.0, row.parseDecimal(1, true));
+        assertEquals(-3.0, row.parseDecimal(2, true));
+        assertTrue(Double.isNaN(row.parseDecimal(3, true)));
+        assertTrue(Double.isNaN(row.parseDecimal(0, false)));
+    }
+
+    @Test
+    void parseEpochDayCoincideConSimpleDateFormatTolerante() throws IOException, ParseException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String[] casos = { "1970-01-01", "1969-12-31", "2000-02-29", "1900-02-28", "1900-03-01", "2024-12-31",
+                "2023-13-01", "2023-00-15", "2023-03-00", "2023-02-31", "2023-1-5", " 2019-07-04", "2019-07-04 10:00",
+                "2019-07-04T10:00:00", "1600-01-01", "9999-12-31" };
+        for (String caso : casos) {
+            long esperado = Math.floorDiv(sdf.parse(caso).getTime(), 86_400_000L);
+            CsvMappedReader.Row row = fila(caso + "\n");
+            assertEquals(esperado, row.parseEpochDay(0, Integer.MIN_VALUE), "parseEpochDay(\"" + caso + "\")");
+        }
+    }
+
+    @Test
+    void parseEpochDaySinFormaDeFecha() throws IOException {
+        CsvMappedReader.Row row = fila(",2023/05/01,2023-05,abc,-2023-01-01,\"\"\n");
+        for (int i = 0; i < row.size(); i++) {
+            assertEquals(-1, row.parseEpochDay(i, -1), "campo " + i);
+        }
+    }
+
+    @Test
+    void parseLongSoloFormaCanonica() throws IOException {
+        CsvMappedReader.Row row = fila("123, 45 ,-7,007,-0,0,1a,,123456789012345678,1234567890123456789\n");
+        long[] esperados = { 123, 45, -7, -1, -1, 0, -1, -1, 123456789012345678L, -1 };
+        for (int i = 0; i < esperados.length; i++) {
+            assertEquals(esperados[i], row.parseLong(i, -1), "campo " + i);
+        }
+    }
+
+    @Test
+    void parseFlag() throws IOException {
+        CsvMappedReader.Row row = fila("t,TRUE,f,false,,tru,\"t\"\n");
+        int[] esperados = { 1, 1, 0, 0, -1, 0, 1 };
+        for (int i = 0; i < esperados.length; i++) {
+            assertEquals(esperados[i], row.parseFlag(i), "campo " + i);
+        }
+    }
+}
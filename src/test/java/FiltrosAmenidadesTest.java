@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests del filtro de amenidades sobre un índice en memoria de dos segmentos:
+ * el texto libre cuenta lo mismo que el QueryParser original (OR por defecto,
+ * comas incluidas) y solo "=Nombre" filtra por amenidad exacta, con bitset en
+ * caché o con TermQuery
+ */
+class FiltrosAmenidadesTest {
+
+    private static final String[][] LISTINGS = {
+            { "Pool", "Wifi" },
+            { "Private pool", "Wifi" },
+            { "Pool" },
+            { "Fast wifi – 300 Mbps", "Kitchen" },
+            { "Kitchen" },
+            { "Pool" } };
+
+    private final Analyzer analyzer = AirbnbIndexador.crearAnalizador();
+
+    private static Directory indice(boolean conClaves) throws IOException {
+        Directory dir = new ByteBuffersDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(AirbnbIndexador.crearAnalizador());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(dir, config)) {
+            for (int i = 0; i < LISTINGS.length; i++) {
+                Document doc = new Document();
+                for (String amenidad : LISTINGS[i]) {
+                    doc.add(new TextField("amenity", amenidad, Field.Store.YES));
+                    if (conClaves) {
+                        doc.add(new StringField(AirbnbIndexador.FIELD_AMENITY_KEY,
+                                AirbnbIndexador.normalizarAmenidad(amenidad), Field.Store.NO));
+                    }
+                }
+                writer.addDocument(doc);
+                if (i == LISTINGS.length / 2) {
+                    writer.commit(); // dos segmentos: un bitset por hoja
+                }
+            }
+        }
+        return dir;
+    }
+
+    private int contar(FiltrosAmenidades filtros, IndexSearcher searcher, String texto)
+            throws IOException, ParseException {
+        return searcher.count(filtros.consulta(texto, analyzer));
+    }
+
+    @Test
+    void textoLibreYAmenidadesExactas() throws IOException, ParseException {
+        try (Directory dir = indice(true); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(2, reader.leaves().size());
+            IndexSearcher searcher = new IndexSearcher(reader);
+            // Solo la más frecuente (pool) en caché
+            FiltrosAmenidades filtros = new FiltrosAmenidades(reader, 1);
+            assertEquals(1, filtros.size());
+
+            // Texto libre: QueryParser sobre "amenity", OR por defecto
+            assertEquals(4, contar(filtros, searcher, "pool"));
+            assertEquals(3, contar(filtros, searcher, "wifi"));
+            assertEquals(5, contar(filtros, searcher, "pool, wifi"));
+            assertEquals(5, contar(filtros, searcher, "pool OR wifi"));
+            assertEquals(2, contar(filtros, searcher, "pool AND wifi"));
+            assertEquals(0, contar(filtros, searcher, "sauna"));
+
+            // Exactas: pool con bitset, wifi con TermQuery
+            assertTrue(filtros.consulta("=Pool", analyzer).toString().contains("amenidades(pool)"));
+            assertEquals(3, contar(filtros, searcher, "=Pool"));
+            assertEquals(3, contar(filtros, searcher, "= pool "));
+            assertEquals(2, contar(filtros, searcher, "=Wifi"));
+            assertEquals(1, contar(filtros, searcher, "=Pool AND =Wifi"));
+            assertEquals(1, contar(filtros, searcher, "=Fast wifi – 300 Mbps"));
+            assertEquals(0, contar(filtros, searcher, "=Sauna"));
+            assertEquals(0, contar(filtros, searcher, "=Pool AND =Kitchen"));
+
+            // Mezcla: exactas como filtro y el resto por QueryParser
+            assertEquals(1, contar(filtros, searcher, "=Wifi AND private"));
+            assertEquals(2, contar(filtros, searcher, "=Wifi AND pool"));
+        }
+    }
+
+    @Test
+    void sinAmenityKeyTodoVaPorQueryParser() throws IOException, ParseException {
+        try (Directory dir = indice(false); DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            FiltrosAmenidades filtros = new FiltrosAmenidades(reader, 1);
+            assertEquals(0, filtros.size());
+            assertEquals(4, contar(filtros, searcher, "=Pool"));
+            assertEquals(2, contar(filtros, searcher, "=Pool AND =Wifi"));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests del normalizador HTML: etiquetas y entidades mal formadas se dejan como
+ * texto, y sobre descripciones que solo tienen saltos <br> y &nbsp; el resultado
+ * coincide con la limpieza original por expresiones regulares
+ */
+class HtmlTextoTest {
+
+    private final HtmlTexto html = new HtmlTexto();
+
+    /**
+     * Limpieza original: htmlToText del indexador seguida de la que hacía el
+     * buscador al mostrar cada resultado
+     */
+    private static String limpiezaOriginal(String s) {
+        String indexado = s.replace("<br />", " ").replace("<br>", " ").replace("&nbsp;", " ");
+        return indexado.replaceAll("(?i)<br\\s*/?>", " ").replaceAll("\\s+", " ").replaceAll("\\n+", " ").trim();
+    }
+
+    @Test
+    void coincideConLaLimpiezaOriginal() {
+        String[] descripciones = {
+                "Bright apartment in the center.<br /><br />The space<br />Two bedrooms and a terrace.",
+                "Cozy room&nbsp;near the beach.<br><br>Guest access<br>Whole flat",
+                "  Spacious loft\n\nwith   high ceilings\r\n<BR/>and a\tbalcony  ",
+                "<br /><br />Starts with breaks<br />and ends with them<br /><br />",
+                "Precio < 100 euros & sin comisiones",
+                "Near Sagrada Família, 5 min walk.<br/>Free Wi-Fi.",
+                "Already clean text" };
+        for (String d : descripciones) {
+            assertEquals(limpiezaOriginal(d), html.convertir(d), d);
+        }
+    }
+
+    @Test
+    void textoYaLimpioDevuelveLaMismaInstancia() {
+        String limpio = "Two bedrooms, one bath";
+        assertSame(limpio, html.convertir(limpio));
+        assertNull(html.convertir(null));
+    }
+
+    @Test
+    void etiquetasDeBloqueSeparanYLasDeLineaNo() {
+        assertEquals("The space Bright and quiet",
+                html.convertir("<p><b>The space</b></p><p>Bright and <i>qui</i>et</p>"));
+        assertEquals("uno dos", html.convertir("uno<!-- comentario -->dos"));
+        assertEquals("a b", html.convertir("a<li class=\"x\">b"));
+    }
+
+    @Test
+    void etiquetaSinCerrarSeQuedaComoTexto() {
+        assertEquals("near <beach 5 min", html.convertir("near <beach 5 min<br />"));
+        assertEquals("a <b", html.convertir("a <b"));
+        assertEquals("x <", html.convertir("x <"));
+        assertEquals("a <!-- sin cierre", html.convertir("a <!-- sin cierre"));
+        assertEquals("1 <2 y 3> 2", html.convertir("1 <2 y 3> 2"));
+    }
+
+    @Test
+    void etiquetaMasLargaQueElLimiteSeQuedaComoTexto() {
+        String atributo = "x".repeat(2000);
+        String s = "a <div title=\"" + atributo + "\"> b";
+        assertEquals(s, html.convertir(s));
+        String comentario = "a <!-- " + atributo + " --> b";
+        assertEquals(comentario, html.convertir(comentario));
+    }
+
+    @Test
+    void entidadSinCerrarODesconocidaSeQuedaComoTexto() {
+        assertEquals("Tom & Jerry", html.convertir("Tom & Jerry"));
+        assertEquals("A&B", html.convertir("A&B"));
+        assertEquals("&amp sin punto y coma", html.convertir("&amp sin punto y coma"));
+        assertEquals("&foo; &; &thisistoolongname;", html.convertir("&foo; &; &thisistoolongname;"));
+        assertEquals("fin &", html.convertir("fin &"));
+    }
+
+    @Test
+    void entidadesConNombre() {
+        assertEquals("Café & bar — “centro”",
+                html.convertir("Caf&eacute; &amp; bar &mdash; &ldquo;centro&rdquo;"));
+    }
+
+    @Test
+    void menorYMayorEscapadosNoFormanEtiquetas() {
+        assertEquals("‹b› no es etiqueta", html.convertir("&lt;b&gt; no es etiqueta"));
+        assertEquals("‹mark›pool‹/mark›", html.convertir("&#60;mark&#62;pool&#x3C;/mark&#x3e;"));
+        assertEquals("1 ‹ 2", html.convertir("1 &lt; 2"));
+        // Los '<' literales que no abren etiqueta siguen siendo texto
+        assertEquals("1 < 2", html.convertir("1 < 2"));
+        assertEquals("a b", html.convertir("a&nbsp;&nbsp; b"));
+    }
+
+    @Test
+    void entidadesNumericas() {
+        assertEquals("é é É", html.convertir("&#233; &#xE9; &#XC9;"));
+        assertEquals("emoji 😀", html.convertir("emoji &#128512;"));
+        assertEquals("a b", html.convertir("a&#10;b"));
+        // Nulo, sustitutos, fuera de rango o mal formadas: tal cual
+        assertEquals("&#0; &#xD800; &#1114112; &#x; &#12a; &#;",
+                html.convertir("&#0; &#xD800; &#1114112; &#x; &#12a; &#;"));
+    }
+}
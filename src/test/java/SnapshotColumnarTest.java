@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests de ida y vuelta del snapshot columnar: cada valor leído de una Fila
+ * coincide con el que da la Row del CSV del que se escribió, con texto vacío,
+ * multi-byte, con y sin diccionario, columnas numéricas con y sin valor, filas
+ * cortas y columnas que no se guardaron
+ */
+class SnapshotColumnarTest {
+
+    private static final String[] CABECERA = { "id", "name", "property_type", "price", "latitude", "host_since",
+            "host_is_superhost", "no_guardada" };
+    private static final List<CsvSchema.Columna> COLUMNAS = Arrays.asList(
+            new CsvSchema.Columna(0, CsvSchema.Tipo.LARGO),
+            new CsvSchema.Columna(1, CsvSchema.Tipo.TEXTO),
+            new CsvSchema.Columna(2, CsvSchema.Tipo.TEXTO),
+            new CsvSchema.Columna(3, CsvSchema.Tipo.PRECIO),
+            new CsvSchema.Columna(4, CsvSchema.Tipo.DECIMAL),
+            new CsvSchema.Columna(5, CsvSchema.Tipo.FECHA),
+            new CsvSchema.Columna(6, CsvSchema.Tipo.FLAG),
+            // La misma columna con dos tipos, como id (texto y largo)
+            new CsvSchema.Columna(0, CsvSchema.Tipo.TEXTO));
+
+    @TempDir
+    Path tmp;
+
+    /**
+     * CSV de prueba: name es distinto en cada fila (texto plano) y
+     * property_type se repite (diccionario; con más de 256 valores, códigos
+     * de 2 bytes)
+     */
+    private static String csv(int filas, int tipos) {
+        StringBuilder sb = new StringBuilder(String.join(",", CABECERA)).append('\n');
+        String[] nombres = { "", "Piso céntrico", "Ático con vistas 🌅", "\"Comillas \"\", y coma\"", "Плоский" };
+        for (int i = 0; i < filas; i++) {
+            if (i % 17 == 16) {
+                sb.append(i).append(",corta\n"); // sin el resto de columnas
+                continue;
+            }
+            sb.append(i % 11 == 0 ? "" : Integer.toString(i)).append(',');
+            sb.append(nombres[i % nombres.length]).append(i % 3 == 0 ? "" : " " + i).append(',');
+            sb.append(i % 7 == 0 ? "" : "Tipo ñ " + (i % tipos)).append(',');
+            sb.append(i % 5 == 0 ? "" : "\"$1," + i + ".50\"").append(',');
+            sb.append(i % 6 == 0 ? "abc" : Double.toString(34.0 + i / 1000.0)).append(',');
+            sb.append(i % 9 == 0 ? "" : "20" + (10 + i % 15) + "-0" + (1 + i % 9) + "-1" + (i % 10)).append(',');
+            sb.append(i % 4 == 0 ? "" : i % 2 == 0 ? "t" : "f").append(',');
+            sb.append("x").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escribe el snapshot de un CSV repartiendo las filas entre dos grupos,
+     * como dos hilos lectores; devuelve las filas del CSV en orden
+     */
+    private List<CsvMappedReader.Row> escribir(String texto, int total, Path snapshot) throws IOException {
+        Path archivo = tmp.resolve("listings.csv");
+        Files.writeString(archivo, texto);
+        List<CsvMappedReader.Row> filas = new ArrayList<>();
+        try (CsvMappedReader reader = new CsvMappedReader(archivo, StandardCharsets.UTF_8, ",");
+                SnapshotColumnar.Escritor escritor = new SnapshotColumnar.Escritor(snapshot, CABECERA, COLUMNAS,
+                        3, 2)) {
+            CsvMappedReader.Row cabecera = new CsvMappedReader.Row(StandardCharsets.UTF_8);
+            assertTrue(reader.next(cabecera));
+            SnapshotColumnar.Grupo[] grupos = { escritor.nuevoGrupo(), escritor.nuevoGrupo() };
+            int n = 0;
+            for (CsvMappedReader.Row row = reader.next(); row != null; row = reader.next()) {
+                grupos[n < total / 2 ? 0 : 1].anadir(row, 1000 + n, -n);
+                filas.add(row);
+                n++;
+            }
+            escritor.escribir(grupos[1]); // fuera de orden, como los hilos lectores
+            escritor.escribir(grupos[0]);
+        }
+        return filas;
+    }
+
+    private static void assertMismaFila(CsvMappedReader.Row row, SnapshotColumnar.Fila fila) {
+        String id = "fila " + row.get(0);
+        assertEquals(CABECERA.length, fila.size(), id);
+        for (int slot : new int[] { 0, 1, 2 }) {
+            boolean vacio = slot >= row.size() || row.isEmpty(slot);
+            assertEquals(vacio, fila.isEmpty(slot), id + " isEmpty(" + slot + ")");
+            assertEquals(vacio ? "" : row.get(slot), fila.get(slot), id + " get(" + slot + ")");
+        }
+        boolean completa = row.size() == CABECERA.length;
+        assertEquals(row.parseLong(0, -1), fila.parseLong(0, -1), id);
+        assertEquals(completa ? row.parseDecimal(3, true) : Double.NaN, fila.parseDecimal(3, true), id);
+        assertEquals(completa ? row.parseDecimal(4, false) : Double.NaN, fila.parseDecimal(4, false), id);
+        assertEquals(completa ? row.parseEpochDay(5, -1) : -1, fila.parseEpochDay(5, -1), id);
+        assertEquals(completa ? row.parseFlag(6) : -1, fila.parseFlag(6), id);
+
+        // Columna no guardada y tipos no guardados: sin valor
+        assertTrue(fila.isEmpty(7), id);
+        assertEquals("", fila.get(7), id);
+        assertTrue(Double.isNaN(fila.parseDecimal(1, false)), id);
+        assertTrue(Double.isNaN(fila.parseDecimal(4, true)), id);
+        assertEquals(-1, fila.parseLong(3, -1), id);
+        assertEquals(-1, fila.parseEpochDay(0, -1), id);
+        assertEquals(-1, fila.parseFlag(0), id);
+        assertEquals("", fila.get(CABECERA.length), id);
+    }
+
+    private void idaYVuelta(int filas, int tipos) throws IOException {
+        Path snapshot = tmp.resolve("listings.snap");
+        String texto = csv(filas, tipos);
+        List<CsvMappedReader.Row> esperadas = escribir(texto, filas, snapshot);
+        assertTrue(SnapshotColumnar.esSnapshot(snapshot));
+        assertFalse(Files.exists(tmp.resolve("listings.snap.tmp")));
+
+        try (SnapshotColumnar.Lector lector = new SnapshotColumnar.Lector(snapshot)) {
+            assertArrayEquals(CABECERA, lector.cabecera());
+            assertEquals(COLUMNAS, lector.columnas());
+            assertEquals(3, lector.versionHuellaPropiedad());
+            assertEquals(2, lector.versionHuellaHost());
+            assertEquals(filas, lector.filas());
+            assertEquals(2, lector.numGrupos());
+
+            // Los grupos se escribieron al revés: el primero del archivo es la
+            // segunda mitad del CSV
+            int mitad = filas / 2;
+            SnapshotColumnar.Fila fila = new SnapshotColumnar.Fila();
+            int leidas = 0;
+            for (int g = 0; g < lector.numGrupos(); g++) {
+                SnapshotColumnar.GrupoMapeado grupo = lector.grupo(g);
+                assertEquals(lector.filas(g), grupo.filas());
+                int base = g == 0 ? mitad : 0;
+                for (int i = 0; i < grupo.filas(); i++) {
+                    fila.apuntar(grupo, i, lector.primeraFila(g) + i);
+                    int n = base + i;
+                    assertEquals(1000 + n, fila.huellaPropiedad());
+                    assertEquals(-n, fila.huellaHost());
+                    assertEquals(lector.primeraFila(g) + i, fila.offset());
+                    assertMismaFila(esperadas.get(n), fila);
+                    leidas++;
+                }
+            }
+            assertEquals(filas, leidas);
+        }
+    }
+
+    @Test
+    void idaYVueltaConDiccionarioDeUnByte() throws IOException {
+        idaYVuelta(300, 5);
+    }
+
+    @Test
+    void idaYVueltaConDiccionarioDeDosBytes() throws IOException {
+        idaYVuelta(2000, 400);
+    }
+
+    @Test
+    void idaYVueltaSinDiccionario() throws IOException {
+        // Más valores distintos que la mitad de las filas: texto plano
+        idaYVuelta(200, 1000);
+    }
+
+    @Test
+    void snapshotSinPieNoSeAbre() throws IOException {
+        Path snapshot = tmp.resolve("listings.snap");
+        escribir(csv(50, 5), 50, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Path truncado = tmp.resolve("truncado.snap");
+        Files.write(truncado, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> new SnapshotColumnar.Lector(truncado).close());
+    }
+}